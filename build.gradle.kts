@@ -20,6 +20,85 @@ dependencies {
   testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine")
 }
 
+// Vector API kernels live in their own source set, as jdk.incubator.vector
+// has to be added explicitly. -Psimd puts them on the test and jar classpath;
+// without them the scalar kernels are used.
+val simd = project.hasProperty("simd")
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+
+sourceSets {
+  create("simd") {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+  }
+}
+
+tasks.named<JavaCompile>("compileSimdJava") {
+  options.compilerArgs.addAll(vectorModule)
+}
+
+if (simd) {
+  sourceSets.test {
+    runtimeClasspath += sourceSets["simd"].output
+  }
+
+  tasks.test {
+    jvmArgs(vectorModule)
+  }
+
+  tasks.named<ShadowJar>("shadowJar") {
+    from(sourceSets["simd"].output)
+  }
+}
+
+tasks.register<JavaExec>("simdBenchmark") {
+  description = "Compares the scalar and Vector API dense kernels."
+  classpath = sourceSets["simd"].runtimeClasspath
+  mainClass.set("pl.edu.mimuw.matrix.implementations.DenseKernelsBenchmark")
+  jvmArgs(vectorModule)
+}
+
+// JMH benchmarks, run with ./gradlew jmh. -PjmhInclude=<regex> selects
+// benchmarks, -PjmhArgs="..." passes further JMH options (e.g. "-p rows=1024
+// -p density=0.001") and -PjmhResults=<file> sets the JSON results file.
+val jmhVersion = "1.35"
+
+sourceSets {
+  create("jmh") {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+  }
+}
+
+dependencies {
+  "jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+  "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+tasks.register<JavaExec>("jmh") {
+  description = "Runs the JMH benchmarks and writes their results as JSON."
+  classpath = sourceSets["jmh"].runtimeClasspath
+  mainClass.set("org.openjdk.jmh.Main")
+
+  val results = file(
+    project.findProperty("jmhResults") ?: "$buildDir/reports/jmh/results.json"
+  )
+
+  args("-rf", "json", "-rff", results.absolutePath)
+  project.findProperty("jmhArgs")?.let {
+    args(it.toString().split(" ").filter(String::isNotBlank))
+  }
+  project.findProperty("jmhInclude")?.let { args(it.toString()) }
+
+  if (simd) {
+    classpath += sourceSets["simd"].output
+    jvmArgs(vectorModule)
+  }
+
+  outputs.file(results)
+  doFirst { results.parentFile.mkdirs() }
+}
+
 tasks.named<ShadowJar>("shadowJar") {
   mergeServiceFiles()
   manifest {
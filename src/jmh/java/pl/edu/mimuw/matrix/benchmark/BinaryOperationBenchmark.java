@@ -0,0 +1,108 @@
+package pl.edu.mimuw.matrix.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+
+// times, plus and minus for every pair of implementations, which walks the
+// whole timesLeft/plusLeft dispatch table.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryOperationBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Operands {
+
+    @Param
+    public MatrixKind left;
+
+    @Param
+    public MatrixKind right;
+
+    @Param("256")
+    public int rows;
+
+    @Param("256")
+    public int columns;
+
+    // For the sparse kinds
+    @Param("0.01")
+    public double density;
+
+    IDoubleMatrix l;
+    IDoubleMatrix timesRight;
+    IDoubleMatrix plusRight;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      Random random = new Random(42);
+
+      this.l = this.left.create(this.rows, this.columns, this.density, random);
+      this.timesRight =
+        this.right.create(
+            this.l.shape().columns,
+            this.columns,
+            this.density,
+            random
+          );
+      this.plusRight =
+        this.right.create(
+            this.l.shape().rows,
+            this.l.shape().columns,
+            this.density,
+            random
+          );
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class SameShapeOperands {
+
+    IDoubleMatrix l;
+    IDoubleMatrix r;
+
+    @Setup(Level.Trial)
+    public void setUp(Operands operands) {
+      // Vectors only add up with n x 1 matrices, and square-only kinds
+      // cannot be n x 1. Those pairs fail here and are left out.
+      if (!operands.l.shape().equals(operands.plusRight.shape())) {
+        throw new IllegalStateException(
+          operands.left + " and " + operands.right + " cannot have one shape"
+        );
+      }
+
+      this.l = operands.l;
+      this.r = operands.plusRight;
+    }
+  }
+
+  @Benchmark
+  public IDoubleMatrix times(Operands operands) {
+    return operands.l.times(operands.timesRight);
+  }
+
+  @Benchmark
+  public IDoubleMatrix plus(SameShapeOperands operands) {
+    return operands.l.plus(operands.r);
+  }
+
+  @Benchmark
+  public IDoubleMatrix minus(SameShapeOperands operands) {
+    return operands.l.minus(operands.r);
+  }
+}
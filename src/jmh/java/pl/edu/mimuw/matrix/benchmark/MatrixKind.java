@@ -0,0 +1,166 @@
+package pl.edu.mimuw.matrix.benchmark;
+
+import java.util.Random;
+import pl.edu.mimuw.matrix.DoubleMatrixFactory;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.MatrixCellValue;
+import pl.edu.mimuw.matrix.Shape;
+import pl.edu.mimuw.matrix.implementations.ColumnMatrix;
+import pl.edu.mimuw.matrix.implementations.OffHeapArena;
+import pl.edu.mimuw.matrix.implementations.RowMatrix;
+
+// Every implementation the benchmarks cover, built from a requested shape.
+// Square-only kinds use the row count as their size and a vector is always a
+// single column, so the built shape may differ from the requested one.
+public enum MatrixKind {
+  FULL {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      double[] values = new double[rows * columns];
+
+      for (int i = 0; i < values.length; i++) {
+        values[i] = nonZero(random);
+      }
+
+      return DoubleMatrixFactory.full(Shape.matrix(rows, columns), values);
+    }
+  },
+  OFF_HEAP {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      // Released with the benchmark's state, never closed explicitly
+      return new OffHeapArena()
+        .copyOf(FULL.create(rows, columns, density, random));
+    }
+  },
+  CSR {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      return DoubleMatrixFactory.sparse(
+        Shape.matrix(rows, columns),
+        cells(rows, columns, density, random)
+      );
+    }
+  },
+  CSC {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      return DoubleMatrixFactory.sparseColumns(
+        Shape.matrix(rows, columns),
+        cells(rows, columns, density, random)
+      );
+    }
+  },
+  DIAGONAL {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      return DoubleMatrixFactory.diagonal(dense(rows, random));
+    }
+  },
+  ANTI_DIAGONAL {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      return DoubleMatrixFactory.antiDiagonal(dense(rows, random));
+    }
+  },
+  PERMUTATION {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      int[] order = new int[rows];
+
+      for (int i = 0; i < rows; i++) {
+        int j = random.nextInt(i + 1);
+
+        order[i] = order[j];
+        order[j] = i;
+      }
+
+      return DoubleMatrixFactory.permutation(order);
+    }
+  },
+  IDENTITY {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      return DoubleMatrixFactory.identity(rows);
+    }
+  },
+  ZERO {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      return DoubleMatrixFactory.zero(Shape.matrix(rows, columns));
+    }
+  },
+  VECTOR {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      double[] values = new double[rows];
+
+      for (int i = 0; i < rows; i++) {
+        values[i] = random.nextDouble() < density ? nonZero(random) : 0;
+      }
+
+      return DoubleMatrixFactory.vector(values);
+    }
+  },
+  ROW {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      return new RowMatrix(Shape.matrix(rows, columns), dense(columns, random));
+    }
+  },
+  COLUMN {
+    @Override
+    IDoubleMatrix create(int rows, int columns, double density, Random random) {
+      return new ColumnMatrix(Shape.matrix(rows, columns), dense(rows, random));
+    }
+  };
+
+  // density only applies to CSR, CSC and VECTOR
+  abstract IDoubleMatrix create(
+    int rows,
+    int columns,
+    double density,
+    Random random
+  );
+
+  private static double nonZero(Random random) {
+    double value = 1 + random.nextDouble();
+
+    return random.nextBoolean() ? value : -value;
+  }
+
+  private static double[] dense(int length, Random random) {
+    double[] values = new double[length];
+
+    for (int i = 0; i < length; i++) {
+      values[i] = nonZero(random);
+    }
+
+    return values;
+  }
+
+  // About density * rows * columns cells at random positions, at least one
+  private static MatrixCellValue[] cells(
+    int rows,
+    int columns,
+    double density,
+    Random random
+  ) {
+    long count = Math.max(1, Math.round(density * rows * columns));
+
+    assert count <= Integer.MAX_VALUE;
+
+    MatrixCellValue[] cells = new MatrixCellValue[(int) count];
+
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] =
+        MatrixCellValue.cell(
+          random.nextInt(rows),
+          random.nextInt(columns),
+          nonZero(random)
+        );
+    }
+
+    return cells;
+  }
+}
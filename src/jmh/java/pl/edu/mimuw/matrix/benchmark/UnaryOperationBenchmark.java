@@ -0,0 +1,95 @@
+package pl.edu.mimuw.matrix.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+
+// Element access, materialisation and the norms of every implementation.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UnaryOperationBenchmark {
+
+  // Random cells read by every call of get
+  private static final int GETS = 1024;
+
+  @Param
+  public MatrixKind kind;
+
+  @Param("256")
+  public int rows;
+
+  @Param("256")
+  public int columns;
+
+  // For the sparse kinds
+  @Param("0.01")
+  public double density;
+
+  private IDoubleMatrix matrix;
+  private int[] getRows;
+  private int[] getColumns;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(42);
+
+    this.matrix =
+      this.kind.create(this.rows, this.columns, this.density, random);
+    this.getRows = new int[GETS];
+    this.getColumns = new int[GETS];
+
+    for (int i = 0; i < GETS; i++) {
+      this.getRows[i] = random.nextInt(this.matrix.shape().rows);
+      this.getColumns[i] = random.nextInt(this.matrix.shape().columns);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(GETS)
+  public double get() {
+    double sum = 0;
+
+    for (int i = 0; i < GETS; i++) {
+      sum += this.matrix.get(this.getRows[i], this.getColumns[i]);
+    }
+
+    return sum;
+  }
+
+  @Benchmark
+  public double[][] data() {
+    return this.matrix.data();
+  }
+
+  @Benchmark
+  public double normOne() {
+    return this.matrix.normOne();
+  }
+
+  @Benchmark
+  public double normInfinity() {
+    return this.matrix.normInfinity();
+  }
+
+  @Benchmark
+  public double frobeniusNorm() {
+    return this.matrix.frobeniusNorm();
+  }
+}
@@ -1,10 +1,14 @@
 package pl.edu.mimuw.matrix;
 
 import pl.edu.mimuw.matrix.implementations.AntiDiagonal;
+import pl.edu.mimuw.matrix.implementations.CSC;
 import pl.edu.mimuw.matrix.implementations.CSR;
+import pl.edu.mimuw.matrix.implementations.CSRBuilder;
 import pl.edu.mimuw.matrix.implementations.Diagonal;
 import pl.edu.mimuw.matrix.implementations.Full;
 import pl.edu.mimuw.matrix.implementations.Identity;
+import pl.edu.mimuw.matrix.implementations.LazyMatrix;
+import pl.edu.mimuw.matrix.implementations.Permutation;
 import pl.edu.mimuw.matrix.implementations.Vector;
 import pl.edu.mimuw.matrix.implementations.Zero;
 
@@ -16,10 +20,54 @@ public class DoubleMatrixFactory {
     return new CSR(shape, values);
   }
 
+  // Standard compressed rows: the entries of row r are
+  // columns/values[rowOffsets[r] .. rowOffsets[r + 1]), columns ascending.
+  public static IDoubleMatrix sparse(
+    Shape shape,
+    int[] rowOffsets,
+    int[] columns,
+    double[] values
+  ) {
+    assert shape != null;
+    assert rowOffsets != null && columns != null && values != null;
+    assert rowOffsets.length == shape.rows + 1;
+    assert columns.length == values.length;
+    assert rowOffsets[shape.rows] <= values.length;
+
+    CSRBuilder builder = new CSRBuilder(shape, rowOffsets[shape.rows]);
+
+    for (int r = 0; r < shape.rows; r++) {
+      assert rowOffsets[r] <= rowOffsets[r + 1];
+
+      for (int ptr = rowOffsets[r]; ptr < rowOffsets[r + 1]; ptr++) {
+        builder.add(r, columns[ptr], values[ptr]);
+      }
+    }
+
+    return builder.build();
+  }
+
+  // Stored by columns, for column access and products with a transpose
+  public static IDoubleMatrix sparseColumns(
+    Shape shape,
+    MatrixCellValue... values
+  ) {
+    return new CSC(shape, values);
+  }
+
   public static IDoubleMatrix full(double[][] values) {
     return new Full(values);
   }
 
+  // Row-major values, row r starting at r * shape.columns
+  public static IDoubleMatrix full(Shape shape, double... values) {
+    assert shape != null;
+    assert values != null;
+    assert values.length == shape.rows * shape.columns;
+
+    return new Full(shape, values);
+  }
+
   public static IDoubleMatrix identity(int size) {
     return new Identity(size);
   }
@@ -32,6 +80,18 @@ public class DoubleMatrixFactory {
     return new AntiDiagonal(antiDiagonalValues);
   }
 
+  // Row r holds a single 1, at column columns[r]
+  public static IDoubleMatrix permutation(int... columns) {
+    return new Permutation(columns);
+  }
+
+  // Row r holds scales[r], at column columns[r]
+  public static IDoubleMatrix permutation(int[] columns, double... scales) {
+    assert scales != null;
+
+    return new Permutation(columns, scales);
+  }
+
   public static IDoubleMatrix vector(double... values) {
     return new Vector(values);
   }
@@ -39,4 +99,11 @@ public class DoubleMatrixFactory {
   public static IDoubleMatrix zero(Shape shape) {
     return new Zero(shape);
   }
+
+  // Operations on the result build an expression, evaluated on first read
+  public static IDoubleMatrix lazy(IDoubleMatrix matrix) {
+    assert matrix != null;
+
+    return LazyMatrix.of(matrix);
+  }
 }
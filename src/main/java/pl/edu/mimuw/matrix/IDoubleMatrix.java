@@ -1,6 +1,8 @@
 package pl.edu.mimuw.matrix;
 
+import java.io.IOException;
 import pl.edu.mimuw.matrix.implementations.AntiDiagonal;
+import pl.edu.mimuw.matrix.implementations.CSC;
 import pl.edu.mimuw.matrix.implementations.CSR;
 import pl.edu.mimuw.matrix.implementations.Diagonal;
 import pl.edu.mimuw.matrix.implementations.Full;
@@ -15,6 +17,7 @@ public interface IDoubleMatrix {
   // other * this
   IDoubleMatrix timesLeft(Zero other);
   IDoubleMatrix timesLeft(CSR other);
+  IDoubleMatrix timesLeft(CSC other);
   IDoubleMatrix timesLeft(Full other);
   IDoubleMatrix timesLeft(Diagonal other);
   IDoubleMatrix timesLeft(Vector other);
@@ -26,12 +29,35 @@ public interface IDoubleMatrix {
   /* end: times */
 
 
+  /* start: multiply-add */
+
+  // alpha * this * other + beta * addend, without intermediate matrices
+  IDoubleMatrix multiplyAdd(
+    double alpha,
+    IDoubleMatrix other,
+    double beta,
+    IDoubleMatrix addend
+  );
+
+  // c = alpha * this * other + beta * c, c being the product's row-major
+  // buffer. With beta == 0 the previous contents of c are ignored.
+  void multiplyAddInto(
+    double alpha,
+    IDoubleMatrix other,
+    double beta,
+    double[] c
+  );
+
+  /* end: multiply-add */
+
+
   /* start: plus */ 
   
   // other + this
   IDoubleMatrix plusLeft(Identity other);
   IDoubleMatrix plusLeft(Zero other);
   IDoubleMatrix plusLeft(CSR other);
+  IDoubleMatrix plusLeft(CSC other);
   IDoubleMatrix plusLeft(Full other);
   IDoubleMatrix plusLeft(Diagonal other);
   IDoubleMatrix plusLeft(Vector other);
@@ -43,12 +69,39 @@ public interface IDoubleMatrix {
 
   /* end: plus */
 
-  IDoubleMatrix minus(IDoubleMatrix other);
+  /* start: minus */
+
+  // other - this
+  IDoubleMatrix minusLeft(Identity other);
+  IDoubleMatrix minusLeft(Zero other);
+  IDoubleMatrix minusLeft(CSR other);
+  IDoubleMatrix minusLeft(CSC other);
+  IDoubleMatrix minusLeft(Full other);
+  IDoubleMatrix minusLeft(Diagonal other);
+  IDoubleMatrix minusLeft(Vector other);
+  IDoubleMatrix minusLeft(AntiDiagonal other);
 
+  // this - other
+  IDoubleMatrix minus(IDoubleMatrix other);
   IDoubleMatrix minus(double scalar);
 
+  /* end: minus */
+
   double get(int row, int column);
 
+  /* start: traversal */
+
+  // Every non-zero cell, in no particular order
+  void forEachNonZero(IMatrixCellConsumer consumer);
+
+  // Non-zero cells of one row, by increasing column
+  void forEachInRow(int row, IMatrixCellConsumer consumer);
+
+  // Non-zero cells of one column, by increasing row
+  void forEachInColumn(int column, IMatrixCellConsumer consumer);
+
+  /* end: traversal */
+
   double[][] data();
 
   double normOne();
@@ -59,5 +112,18 @@ public interface IDoubleMatrix {
 
   String toString();
 
+  /* start: rendering */
+
+  // The text of toString(), streamed to out in time linear in its length
+  void writeTo(Appendable out) throws IOException;
+
+  // The header and at most the first and last k rows and columns, so that
+  // the output stays small whatever the shape
+  void writePreview(Appendable out, int k) throws IOException;
+
+  String preview(int k);
+
+  /* end: rendering */
+
   Shape shape();
 }
@@ -0,0 +1,7 @@
+package pl.edu.mimuw.matrix;
+
+// Receives matrix cells one at a time, without boxing them into
+// MatrixCellValue objects
+public interface IMatrixCellConsumer {
+  void accept(int row, int column, double value);
+}
@@ -39,6 +39,10 @@ public final class Shape {
     return Objects.hash(rows, columns);
   }
 
+  public Shape transposed() {
+    return new Shape(this.columns, this.rows);
+  }
+
   public static Shape vector(int size) {
     return Shape.matrix(size, 1);
   }
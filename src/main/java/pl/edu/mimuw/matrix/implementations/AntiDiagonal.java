@@ -17,6 +17,13 @@ public class AntiDiagonal extends Diagonal {
     return other.plusLeft(this);
   }
 
+  @Override
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
+
+    return other.minusLeft(this);
+  }
+
   @Override
   public IDoubleMatrix times(IDoubleMatrix other) {
     return other.timesLeft(this);
@@ -53,17 +60,33 @@ public class AntiDiagonal extends Diagonal {
     return other.plusLeft(this);
   }
 
+  // Diagonal's version would dispatch on the static type Diagonal
+  @Override
+  public IDoubleMatrix plusLeft(Identity other) {
+    assert other != null;
+
+    return other.plusLeft(this);
+  }
+
   @Override
   public IDoubleMatrix plusLeft(AntiDiagonal other) {
+    return this.merge(other, 1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(AntiDiagonal other) {
+    return this.merge(other, -1);
+  }
+
+  // other + sign * this
+  private IDoubleMatrix merge(AntiDiagonal other, double sign) {
     assert other != null;
     assert other.shape().equals(this.shape());
 
     double[] values = new double[this.size()];
 
     for (int i = 0; i < this.size(); i++) {
-      values[i] =
-        this.get(i, this.indexCompliment(i)) +
-        other.get(i, this.indexCompliment(i));
+      values[i] = other.values[i] + sign * this.values[i];
     }
 
     return new AntiDiagonal(values);
@@ -77,9 +100,7 @@ public class AntiDiagonal extends Diagonal {
     double[] values = new double[this.size()];
 
     for (int i = 0; i < this.size(); i++) {
-      values[i] =
-        this.get(i, this.indexCompliment(i)) *
-        other.get(i, other.indexCompliment(i));
+      values[i] = other.values[i] * this.values[i];
     }
 
     return new AntiDiagonal(values);
@@ -90,20 +111,11 @@ public class AntiDiagonal extends Diagonal {
     assert other != null;
     assert other.size() == this.size();
 
-    int zeroCount = 0, oneCount = 0;
+    // Two reversals cancel out, row i is scaled by both of its cells
     double[] values = new double[this.size()];
 
     for (int i = 0; i < this.size(); i++) {
-      values[i] =
-        this.get(this.indexCompliment(i), i) *
-        other.get(i, other.indexCompliment(i));
-    }
-
-    if (zeroCount == this.size()) {
-      return new Zero(this.shape());
-    }
-    if (oneCount == this.size()) {
-      return new Identity(this.size());
+      values[i] = other.values[i] * this.values[this.indexCompliment(i)];
     }
 
     return new Diagonal(values);
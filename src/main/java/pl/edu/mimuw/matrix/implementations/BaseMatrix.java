@@ -1,39 +1,174 @@
 package pl.edu.mimuw.matrix.implementations;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Formatter;
 import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
+import pl.edu.mimuw.matrix.Shape;
 
 public abstract class BaseMatrix implements IDoubleMatrix {
 
+  // Types without minusLeft overloads subtract into a dense result
   @Override
   public IDoubleMatrix minus(IDoubleMatrix other) {
     assert other != null;
+    assert other.shape().equals(this.shape());
 
-    return this.plus(other.times(-1));
+    return difference(this, other);
+  }
+
+  private IDoubleMatrix minusLeftGeneric(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().equals(this.shape());
+
+    if (isDense(other) || isDense(this)) {
+      return difference(other, this);
+    }
+
+    return ResultFormat.sparse(
+      sparseDifference(rowMajor(other), rowMajor(this))
+    );
+  }
+
+  // Operands with filled rows leave nothing for a sparse result to skip
+  private static boolean isDense(IDoubleMatrix m) {
+    return (
+      m instanceof Full || m instanceof RowMatrix || m instanceof LowRankMatrix
+    );
+  }
+
+  // CSC walks a row with a search in every column, so row-wise traversals
+  // regroup it into rows first, O(nnz)
+  static IDoubleMatrix rowMajor(IDoubleMatrix m) {
+    return m instanceof CSC ? ((CSC) m).toCSR() : m;
+  }
+
+  // left - right, merging each pair of rows straight into the builder
+  static IDoubleMatrix sparseDifference(
+    IDoubleMatrix left,
+    IDoubleMatrix right
+  ) {
+    Shape shape = left.shape();
+    RowMerge merge = new RowMerge(new CSRBuilder(shape));
+
+    for (int r = 0; r < shape.rows; r++) {
+      right.forEachInRow(r, merge::subtract);
+      left.forEachInRow(r, merge);
+      merge.flush(r);
+    }
+
+    return merge.builder.build();
   }
 
   @Override
-  public IDoubleMatrix minus(double scalar) {
-    return this.plus(-scalar);
+  public IDoubleMatrix minusLeft(Identity other) {
+    return this.minusLeftGeneric(other);
   }
 
   @Override
-  public IDoubleMatrix timesLeft(Full other) {
+  public IDoubleMatrix minusLeft(Zero other) {
     assert other != null;
-    assert other.shape().columns == this.shape().rows;
+    assert other.shape().equals(this.shape());
 
-    double[][] data = new double[other.shape().rows][this.shape().columns];
+    return this.times(-1);
+  }
 
-    for (int r = 0; r < other.shape().rows; r++) {
-      for (int c = 0; c < this.shape().columns; c++) {
-        data[r][c] = 0;
+  @Override
+  public IDoubleMatrix minusLeft(CSR other) {
+    return this.minusLeftGeneric(other);
+  }
 
-        for (int k = 0; k < this.shape().rows; k++) {
-          data[r][c] += other.get(r, k) * this.get(k, c);
-        }
+  @Override
+  public IDoubleMatrix minusLeft(CSC other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Full other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Diagonal other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Vector other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(AntiDiagonal other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  // left - right, written straight into the dense result
+  static IDoubleMatrix difference(IDoubleMatrix left, IDoubleMatrix right) {
+    Shape shape = left.shape();
+    double[] data = new double[shape.rows * shape.columns];
+
+    addScaled(left, 1, data);
+    addScaled(right, -1, data);
+
+    return ResultFormat.dense(shape, data);
+  }
+
+  // data += scalar * m, data being row-major with m's shape
+  static void addScaled(IDoubleMatrix m, double scalar, double[] data) {
+    int columns = m.shape().columns;
+
+    if (m instanceof Full) {
+      Full full = (Full) m;
+
+      for (int r = 0; r < m.shape().rows; r++) {
+        DenseKernels.INSTANCE.axpy(
+          scalar,
+          full.values(),
+          full.offset(r),
+          data,
+          r * columns,
+          columns
+        );
       }
+
+      return;
     }
 
-    return new Full(data);
+    ScaledSum sum = new ScaledSum(data, columns);
+
+    sum.scalar = scalar;
+    m.forEachNonZero(sum);
+  }
+
+  @Override
+  public IDoubleMatrix minus(double scalar) {
+    return this.plus(-scalar);
+  }
+
+  // Sparse columns are regrouped into rows, O(nnz), and reuse the CSR code
+  @Override
+  public IDoubleMatrix timesLeft(CSC other) {
+    assert other != null;
+
+    return other.toCSR().times(this);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSC other) {
+    assert other != null;
+
+    return other.toCSR().plus(this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Full other) {
+    assert other != null;
+    assert other.shape().columns == this.shape().rows;
+
+    return product(other, this);
   }
 
   @Override
@@ -41,23 +176,294 @@ public abstract class BaseMatrix implements IDoubleMatrix {
     assert other != null;
     assert this.shape().columns == other.shape().rows;
 
-    double[][] data = new double[this.shape().rows][other.shape().columns];
+    return product(this, other);
+  }
+
+  @Override
+  public IDoubleMatrix multiplyAdd(
+    double alpha,
+    IDoubleMatrix other,
+    double beta,
+    IDoubleMatrix addend
+  ) {
+    assert other != null && addend != null;
+    assert this.shape().multiplicationCompatible(other.shape());
+
+    Shape shape = this.shape().multiplicationShape(other.shape());
 
-    for (int r = 0; r < this.shape().rows; r++) {
-      for (int c = 0; c < other.shape().columns; c++) {
-        data[r][c] = 0;
+    assert addend.shape().equals(shape);
 
-        for (int k = 0; k < this.shape().columns; k++) {
-          data[r][c] += this.get(r, k) * other.get(k, c);
+    double[] data = new double[shape.rows * shape.columns];
+
+    if (beta != 0) {
+      addScaled(addend, beta, data);
+    }
+
+    this.multiplyAddInto(alpha, other, 1, data);
+
+    return new Full(shape, data);
+  }
+
+  @Override
+  public void multiplyAddInto(
+    double alpha,
+    IDoubleMatrix other,
+    double beta,
+    double[] c
+  ) {
+    assert other != null && c != null;
+    assert this.shape().multiplicationCompatible(other.shape());
+    assert c.length == this.shape().rows * other.shape().columns;
+
+    scale(c, beta);
+
+    if (alpha != 0) {
+      accumulateProduct(this, other, alpha, c);
+    }
+  }
+
+  // c *= beta, where beta == 0 clears c whatever it holds
+  static void scale(double[] c, double beta) {
+    if (beta == 0) {
+      Arrays.fill(c, 0);
+    } else if (beta != 1) {
+      DenseKernels.INSTANCE.multiply(c, 0, beta, c, 0, c.length);
+    }
+  }
+
+  private static IDoubleMatrix product(
+    IDoubleMatrix left,
+    IDoubleMatrix right
+  ) {
+    int rows = left.shape().rows;
+    int columns = right.shape().columns;
+    double[] data = new double[rows * columns];
+
+    accumulateProduct(left, right, 1, data);
+
+    return ResultFormat.dense(Shape.matrix(rows, columns), data);
+  }
+
+  // data += alpha * left * right. Row r of the product is the sum of the
+  // rows k of right, scaled by the non-zero cells (r, k) of left, so the
+  // work is one multiply-add per pair of matching non-zeros.
+  private static void accumulateProduct(
+    IDoubleMatrix left,
+    IDoubleMatrix right,
+    double alpha,
+    double[] data
+  ) {
+    int rows = left.shape().rows;
+    int columns = right.shape().columns;
+
+    MatrixParallelism.forEachRowBlockOfWork(
+      rows,
+      (long) rows * columns * left.shape().columns,
+      (block, from, to) -> {
+        IMatrixCellConsumer leftCell;
+
+        if (right instanceof Full) {
+          // Dense rows of right are added with the vector kernel
+          Full full = (Full) right;
+
+          leftCell =
+            (r, k, scalar) ->
+              DenseKernels.INSTANCE.axpy(
+                alpha * scalar,
+                full.values(),
+                full.offset(k),
+                data,
+                r * columns,
+                columns
+              );
+        } else {
+          ScaledRowSum sum = new ScaledRowSum(data, columns);
+
+          leftCell =
+            (r, k, scalar) -> {
+              sum.scalar = alpha * scalar;
+              sum.offset = r * columns;
+              right.forEachInRow(k, sum);
+            };
+        }
+
+        for (int r = from; r < to; r++) {
+          left.forEachInRow(r, leftCell);
         }
       }
+    );
+  }
+
+  // Adds scalar * (cells of one row) to a row of a row-major buffer.
+  // Reused for every cell of a block, so the traversal does not allocate.
+  private static final class ScaledRowSum implements IMatrixCellConsumer {
+
+    private final double[] data;
+    private final int columns;
+    private double scalar;
+    private int offset;
+
+    ScaledRowSum(double[] data, int columns) {
+      this.data = data;
+      this.columns = columns;
     }
 
-    return new Full(data);
+    @Override
+    public void accept(int row, int column, double value) {
+      assert column < this.columns;
+
+      this.data[this.offset + column] += this.scalar * value;
+    }
+  }
+
+  // Adds scalar * cell to a row-major buffer
+  private static final class ScaledSum implements IMatrixCellConsumer {
+
+    private final double[] data;
+    private final int columns;
+    private double scalar;
+
+    ScaledSum(double[] data, int columns) {
+      this.data = data;
+      this.columns = columns;
+    }
+
+    @Override
+    public void accept(int row, int column, double value) {
+      this.data[row * this.columns + column] += this.scalar * value;
+    }
+  }
+
+  // Holds the subtracted row, negated, and interleaves it by column with the
+  // cells of the other row as they arrive
+  private static final class RowMerge implements IMatrixCellConsumer {
+
+    private final CSRBuilder builder;
+    private int[] column = new int[16];
+    private double[] value = new double[16];
+    private int size;
+    private int next;
+
+    RowMerge(CSRBuilder builder) {
+      this.builder = builder;
+    }
+
+    void subtract(int row, int column, double value) {
+      if (this.size == this.column.length) {
+        this.column = Arrays.copyOf(this.column, 2 * this.size);
+        this.value = Arrays.copyOf(this.value, 2 * this.size);
+      }
+
+      this.column[this.size] = column;
+      this.value[this.size] = -value;
+      this.size++;
+    }
+
+    // The builder sums cells that share a column
+    @Override
+    public void accept(int row, int column, double value) {
+      while (this.next < this.size && this.column[this.next] <= column) {
+        this.builder.add(row, this.column[this.next], this.value[this.next]);
+        this.next++;
+      }
+
+      this.builder.add(row, column, value);
+    }
+
+    void flush(int row) {
+      for (; this.next < this.size; this.next++) {
+        this.builder.add(row, this.column[this.next], this.value[this.next]);
+      }
+
+      this.size = 0;
+      this.next = 0;
+    }
   }
 
   @Override
   public String toString() {
-    return this.shape().toString() + "\n";
+    StringBuilder out = new StringBuilder();
+
+    try {
+      this.writeTo(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // a StringBuilder never throws
+    }
+
+    return out.toString();
+  }
+
+  protected void writeHeader(Appendable out) throws IOException {
+    out.append(this.shape().toString()).append('\n');
+  }
+
+  // String.format straight into out
+  static void format(Appendable out, String format, Object... args)
+    throws IOException {
+    Formatter formatter = new Formatter(out);
+
+    formatter.format(format, args);
+
+    if (formatter.ioException() != null) {
+      throw formatter.ioException();
+    }
+  }
+
+  // Every cell, one row per line, for types without a layout of their own
+  @Override
+  public void writeTo(Appendable out) throws IOException {
+    Shape shape = this.shape();
+    double[] row = new double[shape.columns];
+
+    this.writeHeader(out);
+
+    for (int r = 0; r < shape.rows; r++) {
+      Arrays.fill(row, 0);
+      this.forEachInRow(r, (cellRow, column, value) -> row[column] = value);
+
+      for (int c = 0; c < shape.columns; c++) {
+        out.append(Double.toString(row[c]));
+        out.append(c + 1 < shape.columns ? ' ' : '\n');
+      }
+    }
+  }
+
+  @Override
+  public void writePreview(Appendable out, int k) throws IOException {
+    assert k > 0;
+
+    Shape shape = this.shape();
+
+    this.writeHeader(out);
+
+    for (int r = 0; r < shape.rows; r++) {
+      if (r == k && shape.rows > 2 * k) {
+        out.append("...\n");
+        r = shape.rows - k;
+      }
+
+      for (int c = 0; c < shape.columns; c++) {
+        if (c == k && shape.columns > 2 * k) {
+          out.append("... ");
+          c = shape.columns - k;
+        }
+
+        out.append(Double.toString(this.get(r, c)));
+        out.append(c + 1 < shape.columns ? ' ' : '\n');
+      }
+    }
+  }
+
+  @Override
+  public String preview(int k) {
+    StringBuilder out = new StringBuilder();
+
+    try {
+      this.writePreview(out, k);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return out.toString();
   }
 }
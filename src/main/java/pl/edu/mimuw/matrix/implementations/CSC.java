@@ -0,0 +1,506 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.io.IOException;
+import java.util.Arrays;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
+import pl.edu.mimuw.matrix.MatrixCellValue;
+import pl.edu.mimuw.matrix.Shape;
+
+// Compressed sparse columns: the mirror image of CSR, so the CSR arrays of
+// a matrix are the CSC arrays of its transpose and the other way round.
+public class CSC extends BaseMatrix {
+
+  public final int nnz;
+  public final int nec;
+  private final double[] value;
+  private final int[] row;
+  private final int[] column;
+  private final int[] columnPointer;
+  private final int[] columnLookup; // null for hypersparse matrices
+  private final Shape shape;
+
+  CSC(
+    double[] value,
+    int[] columnPointer,
+    int[] columnLookup,
+    int[] row,
+    int[] column,
+    Shape shape
+  ) {
+    this.nnz = value.length;
+    this.nec = column.length - 1;
+
+    this.value = value;
+    this.row = row;
+    this.column = column;
+    this.columnPointer = columnPointer;
+    this.columnLookup = columnLookup;
+    this.shape = shape;
+  }
+
+  CSC(
+    double[] value,
+    int[] columnPointer,
+    int[] row,
+    int[] column,
+    Shape shape
+  ) {
+    this(
+      value,
+      columnPointer,
+      CSR.buildLookup(shape.columns, columnPointer, column.length - 1),
+      row,
+      column,
+      shape
+    );
+  }
+
+  public CSC(Shape shape, MatrixCellValue... values) {
+    this(transposedCells(shape, values));
+  }
+
+  private CSC(CSR transposed) {
+    this(
+      transposed.values(),
+      transposed.rowNumbers(),
+      transposed.rowLookup(),
+      transposed.columns(),
+      transposed.rowStarts(),
+      transposed.shape().transposed()
+    );
+  }
+
+  private static CSR transposedCells(Shape shape, MatrixCellValue... values) {
+    assert shape != null;
+    assert values != null;
+
+    MatrixCellValue[] transposed = new MatrixCellValue[values.length];
+
+    for (int i = 0; i < values.length; i++) {
+      assert values[i] != null;
+
+      transposed[i] =
+        MatrixCellValue.cell(values[i].column, values[i].row, values[i].value);
+    }
+
+    return new CSR(shape.transposed(), transposed);
+  }
+
+  // The transpose, sharing this matrix's arrays
+  public CSR transpose() {
+    return new CSR(
+      this.value,
+      this.columnPointer,
+      this.columnLookup,
+      this.row,
+      this.column,
+      this.shape.transposed()
+    );
+  }
+
+  // The same matrix in CSR, in O(nnz + rows)
+  public CSR toCSR() {
+    CompressedTranspose rows = new CompressedTranspose(
+      this.value,
+      this.row,
+      this.column,
+      this.columnPointer,
+      this.shape.rows
+    );
+
+    return new CSR(rows.value, rows.major, rows.index, rows.start, this.shape);
+  }
+
+  public int getColumnPointer(int c) {
+    assert 0 <= c && c < this.shape.columns;
+
+    if (this.columnLookup != null) {
+      return this.columnLookup[c];
+    }
+
+    int i = Arrays.binarySearch(this.columnPointer, 0, this.nec, c);
+
+    return i >= 0 ? i : this.nec;
+  }
+
+  public int getColumnNumber(int i) {
+    assert 0 <= i && i < this.nec;
+
+    return this.columnPointer[i];
+  }
+
+  public int getColumnStart(int i) {
+    assert 0 <= i && i <= this.nec;
+
+    return this.column[i];
+  }
+
+  public int getColumnEnd(int i) {
+    assert 0 <= i && i <= this.nec;
+
+    if (i == this.nec) {
+      return this.column[this.nec];
+    }
+
+    return this.column[i + 1];
+  }
+
+  public int getRow(int i) {
+    assert 0 <= i && i < this.row.length;
+
+    return this.row[i];
+  }
+
+  public double getValue(int i) {
+    assert 0 <= i && i < this.value.length;
+
+    return this.value[i];
+  }
+
+  // y = this * x: every column scaled by its entry of x, added into y
+  public void multiplyInto(double[] x, double[] y) {
+    assert x != null && y != null && x != y;
+    assert x.length == this.shape.columns;
+    assert y.length == this.shape.rows;
+
+    Arrays.fill(y, 0);
+
+    for (int ci = 0; ci < this.nec; ci++) {
+      double scalar = x[this.columnPointer[ci]];
+
+      if (scalar == 0) {
+        continue;
+      }
+
+      for (int ptr = this.column[ci]; ptr < this.column[ci + 1]; ptr++) {
+        y[this.row[ptr]] += scalar * this.value[ptr];
+      }
+    }
+  }
+
+  public void multiplyInto(Vector x, double[] y) {
+    assert x != null;
+    assert x.numberOfRows() == this.shape.columns;
+
+    this.multiplyInto(x.toArray(), y);
+  }
+
+  @Override
+  public IDoubleMatrix times(double scalar) {
+    if (scalar == 0.0) {
+      return new Zero(this.shape);
+    }
+    if (scalar == 1.0) {
+      return this;
+    }
+
+    double[] valueNew = this.value.clone();
+
+    for (int i = 0; i < valueNew.length; i++) {
+      valueNew[i] *= scalar;
+    }
+
+    return new CSC(
+      valueNew,
+      this.columnPointer,
+      this.columnLookup,
+      this.row,
+      this.column,
+      this.shape
+    );
+  }
+
+  @Override
+  public IDoubleMatrix times(IDoubleMatrix other) {
+    assert other != null;
+
+    return other.timesLeft(this);
+  }
+
+  @Override
+  public IDoubleMatrix plus(IDoubleMatrix other) {
+    assert other != null;
+
+    return other.plusLeft(this);
+  }
+
+  @Override
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
+
+    return other.minusLeft(this);
+  }
+
+  @Override
+  public IDoubleMatrix plus(double scalar) {
+    return ShiftedMatrix.shift(this, scalar);
+  }
+
+  @Override
+  public double get(int row, int column) {
+    assert 0 <= row && row < this.shape.rows;
+    assert 0 <= column && column < this.shape.columns;
+
+    int ci = this.getColumnPointer(column);
+    int ptr = Arrays.binarySearch(
+      this.row,
+      this.getColumnStart(ci),
+      this.getColumnEnd(ci),
+      row
+    );
+
+    return ptr >= 0 ? this.value[ptr] : 0;
+  }
+
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    for (int ci = 0; ci < this.nec; ci++) {
+      for (int ptr = this.column[ci]; ptr < this.column[ci + 1]; ptr++) {
+        consumer.accept(this.row[ptr], this.columnPointer[ci], this.value[ptr]);
+      }
+    }
+  }
+
+  // O(nec log(column length)), CSR walks rows directly
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.shape.rows;
+
+    for (int ci = 0; ci < this.nec; ci++) {
+      int ptr = Arrays.binarySearch(
+        this.row,
+        this.column[ci],
+        this.column[ci + 1],
+        row
+      );
+
+      if (ptr >= 0) {
+        consumer.accept(row, this.columnPointer[ci], this.value[ptr]);
+      }
+    }
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    int ci = this.getColumnPointer(column);
+
+    for (
+      int ptr = this.getColumnStart(ci);
+      ptr < this.getColumnEnd(ci);
+      ptr++
+    ) {
+      consumer.accept(this.row[ptr], column, this.value[ptr]);
+    }
+  }
+
+  @Override
+  public double[][] data() {
+    double[][] data = new double[this.shape.rows][this.shape.columns];
+
+    for (int ci = 0; ci < this.nec; ci++) {
+      int c = this.columnPointer[ci];
+
+      for (int ptr = this.column[ci]; ptr < this.column[ci + 1]; ptr++) {
+        data[this.row[ptr]][c] = this.value[ptr];
+      }
+    }
+
+    return data;
+  }
+
+  @Override
+  public double normOne() {
+    double max = 0;
+
+    for (int ci = 0; ci < this.nec; ci++) {
+      double sum = 0;
+
+      for (int ptr = this.column[ci]; ptr < this.column[ci + 1]; ptr++) {
+        sum += Math.abs(this.value[ptr]);
+      }
+
+      max = Math.max(max, sum);
+    }
+
+    return max;
+  }
+
+  @Override
+  public double normInfinity() {
+    double[] rowSums = new double[this.shape.rows];
+
+    for (int ptr = 0; ptr < this.nnz; ptr++) {
+      rowSums[this.row[ptr]] += Math.abs(this.value[ptr]);
+    }
+
+    double max = 0;
+
+    for (double sum : rowSums) {
+      max = Math.max(max, sum);
+    }
+
+    return max;
+  }
+
+  @Override
+  public double frobeniusNorm() {
+    double sum = 0;
+
+    for (double v : this.value) {
+      sum += v * v;
+    }
+
+    return Math.sqrt(sum);
+  }
+
+  @Override
+  public Shape shape() {
+    return this.shape;
+  }
+
+  // A result of a transposed operation, transposed back. ResultFormat may
+  // have stored it densely or as a Diagonal, which is its own transpose.
+  private static IDoubleMatrix transposeBack(IDoubleMatrix result) {
+    if (result instanceof CSR) {
+      return ((CSR) result).transpose();
+    }
+
+    if (result instanceof Full) {
+      return ((Full) result).transpose();
+    }
+
+    if (result instanceof Diagonal && !(result instanceof AntiDiagonal)) {
+      return result;
+    }
+
+    assert result instanceof Zero;
+
+    return new Zero(result.shape().transposed());
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Identity other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Zero other) {
+    assert other != null;
+    assert other.shape().equals(this.shape);
+
+    return this;
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSR other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSC other) {
+    assert other != null;
+    assert other.shape.equals(this.shape);
+
+    // Columns merge exactly like the rows of the transposes
+    return transposeBack(this.transpose().plusLeft(other.transpose()));
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSC other) {
+    assert other != null;
+    assert other.shape.equals(this.shape);
+
+    return transposeBack(this.transpose().minusLeft(other.transpose()));
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Full other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Diagonal other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Vector other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(AntiDiagonal other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Zero other) {
+    assert other != null;
+    assert other.shape().columns == this.shape.rows;
+
+    return new Zero(Shape.matrix(other.shape().rows, this.shape.columns));
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSR other) {
+    return this.toCSR().timesLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSC other) {
+    assert other != null;
+    assert other.shape.columns == this.shape.rows;
+
+    // other * this = (this^T * other^T)^T, and the transposes are CSR views
+    return transposeBack(other.transpose().timesLeft(this.transpose()));
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Full other) {
+    assert other != null;
+    assert other.shape().columns == this.shape.rows;
+
+    // Entry (r, c) is row r of other dotted with column c of this
+    int rows = other.shape().rows;
+    int columns = this.shape.columns;
+    double[] values = other.values();
+    double[] data = new double[rows * columns];
+
+    for (int r = 0; r < rows; r++) {
+      int base = other.offset(r);
+
+      for (int ci = 0; ci < this.nec; ci++) {
+        double sum = 0;
+
+        for (int ptr = this.column[ci]; ptr < this.column[ci + 1]; ptr++) {
+          sum += values[base + this.row[ptr]] * this.value[ptr];
+        }
+
+        data[r * columns + this.columnPointer[ci]] = sum;
+      }
+    }
+
+    return ResultFormat.dense(Shape.matrix(rows, columns), data);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Diagonal other) {
+    return this.toCSR().timesLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Vector other) {
+    return this.toCSR().timesLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(AntiDiagonal other) {
+    return this.toCSR().timesLeft(other);
+  }
+
+  @Override
+  public void writeTo(Appendable out) throws IOException {
+    this.toCSR().writeTo(out);
+  }
+}
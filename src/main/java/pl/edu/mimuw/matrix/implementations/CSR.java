@@ -1,67 +1,62 @@
 package pl.edu.mimuw.matrix.implementations;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Arrays;
 import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
 import pl.edu.mimuw.matrix.MatrixCellValue;
 import pl.edu.mimuw.matrix.Shape;
 
 public class CSR extends BaseMatrix {
 
+  // Rows per non-empty row above which the row lookup switches from a direct
+  // row -> index table to a binary search over rowPointer.
+  private static final int DIRECT_ROW_LOOKUP_SPARSITY = 8;
+
   public final int nnz;
   public final int ner;
   private final double[] value;
   private final int[] column;
   private final int[] row;
   private final int[] rowPointer;
+  private final int[] rowLookup; // null for hypersparse matrices
   private final Shape shape;
 
-  private int countNER(MatrixCellValue[] values) {
+  private static void assertInputValidity(
+    Shape shape,
+    MatrixCellValue... values
+  ) {
+    assert shape != null;
     assert values != null;
-
-    if (values.length == 0) {
-      return 0;
-    }
-
-    int previousRow = values[0].row;
-    int ner = 1;
+    assert values.length > 0;
 
     for (MatrixCellValue v : values) {
-      if (v.row != previousRow) {
-        ner++;
-        previousRow = v.row;
-      }
+      assert (0 <= v.row && v.row < shape.rows);
+      assert (0 <= v.column && v.column < shape.columns);
     }
-
-    return ner;
   }
 
-  private int countNNZ(MatrixCellValue[] values) {
-    assert values != null;
-
-    int nnz = 0;
-
-    for (MatrixCellValue v : values) {
-      if (v.value != 0) nnz++;
+  // Shared with CSC, where the groups are columns
+  static int[] buildLookup(int size, int[] pointer, int groups) {
+    if ((long) size > (long) DIRECT_ROW_LOOKUP_SPARSITY * groups) {
+      return null;
     }
 
-    return nnz;
-  }
+    int[] lookup = new int[size];
 
-  private void assertInputValidity(Shape shape, MatrixCellValue... values) {
-    assert shape != null;
-    assert values != null;
-    assert values.length > 0;
+    Arrays.fill(lookup, groups);
 
-    for (MatrixCellValue v : values) {
-      assert (0 <= v.row && v.row < shape.rows);
-      assert (0 <= v.column && v.column < shape.columns);
+    for (int i = 0; i < groups; i++) {
+      lookup[pointer[i]] = i;
     }
+
+    return lookup;
   }
 
-  private CSR(
+  CSR(
     double[] value,
     int[] rowPointer,
+    int[] rowLookup,
     int[] column,
     int[] row,
     Shape shape
@@ -73,46 +68,98 @@ public class CSR extends BaseMatrix {
     this.column = column;
     this.row = row;
     this.rowPointer = rowPointer;
+    this.rowLookup = rowLookup;
     this.shape = shape;
   }
 
+  CSR(double[] value, int[] rowPointer, int[] column, int[] row, Shape shape) {
+    this(
+      value,
+      rowPointer,
+      buildLookup(shape.rows, rowPointer, row.length - 1),
+      column,
+      row,
+      shape
+    );
+  }
+
+  private CSR(CSRBuilder builder) {
+    this(
+      builder.value(),
+      builder.rowPointer(),
+      builder.column(),
+      builder.row(),
+      builder.shape()
+    );
+  }
+
   public CSR(Shape shape, MatrixCellValue... values) {
+    this(fromCells(shape, values));
+  }
+
+  private static CSRBuilder fromCells(Shape shape, MatrixCellValue... values) {
     assertInputValidity(shape, values);
 
     Arrays.sort(values); // O(n log(n))
 
-    this.shape = shape;
-    this.nnz = countNNZ(values); // O(n)
-    this.ner = countNER(values);
+    CSRBuilder builder = new CSRBuilder(shape, values.length);
 
-    this.value = new double[this.nnz];
-    this.column = new int[this.nnz];
-    this.row = new int[this.ner + 1];
-    this.rowPointer = new int[this.ner + 1];
+    for (MatrixCellValue v : values) {
+      builder.add(v.row, v.column, v.value);
+    }
 
-    int valueId = 0;
-    int rowIndex = 0;
-    int previousRow = -1;
+    return builder;
+  }
 
-    this.row[this.ner] = this.nnz;
-    this.rowPointer[this.ner] = this.shape.rows;
+  double[] values() {
+    return this.value;
+  }
 
-    for (MatrixCellValue v : values) {
-      if (v.value == 0) continue;
+  int[] columns() {
+    return this.column;
+  }
 
-      if (v.row > previousRow) {
-        this.rowPointer[rowIndex] = v.row;
-        this.row[rowIndex] = valueId;
-        rowIndex++;
+  int[] rowStarts() {
+    return this.row;
+  }
 
-        previousRow = v.row;
-      }
+  int[] rowNumbers() {
+    return this.rowPointer;
+  }
 
-      this.column[valueId] = v.column;
-      this.value[valueId] = v.value;
+  int[] rowLookup() {
+    return this.rowLookup;
+  }
 
-      valueId++;
-    }
+  // The transpose, sharing this matrix's arrays
+  public CSC transpose() {
+    return new CSC(
+      this.value,
+      this.rowPointer,
+      this.rowLookup,
+      this.column,
+      this.row,
+      this.shape.transposed()
+    );
+  }
+
+  // The same matrix in CSC, in O(nnz + columns)
+  public CSC toCSC() {
+    CompressedTranspose columns = new CompressedTranspose(
+      this.value,
+      this.column,
+      this.row,
+      this.rowPointer,
+      this.shape.columns
+    );
+
+    return new CSC(
+      columns.value,
+      columns.major,
+      columns.index,
+      columns.start,
+      this.shape
+    );
   }
 
   public int getRowPointer(int r) {
@@ -122,15 +169,13 @@ public class CSR extends BaseMatrix {
       this.shape.rows
     );
 
-    int i = 0;
-
-    for (; i < this.ner && this.rowPointer[i] <= r; i++) {
-      if (this.rowPointer[i] == r) {
-        return i;
-      }
+    if (this.rowLookup != null) {
+      return this.rowLookup[r];
     }
 
-    return this.ner;
+    int i = Arrays.binarySearch(this.rowPointer, 0, this.ner, r);
+
+    return i >= 0 ? i : this.ner;
   }
 
   public int getRowNumber(int i) {
@@ -182,7 +227,14 @@ public class CSR extends BaseMatrix {
       valueNew[i] *= scalar;
     }
 
-    return new CSR(valueNew, this.rowPointer, column, row, shape);
+    return new CSR(
+      valueNew,
+      this.rowPointer,
+      this.rowLookup,
+      column,
+      row,
+      shape
+    );
   }
 
   @Override
@@ -199,27 +251,16 @@ public class CSR extends BaseMatrix {
     return other.plusLeft(this);
   }
 
-  @Override
-  public IDoubleMatrix plus(double scalar) {
-    if (Math.abs(scalar) == 0.0) {
-      return this;
-    }
-
-    return new Full(this.data()).plus(scalar);
-  }
-
   @Override
   public IDoubleMatrix minus(IDoubleMatrix other) {
-    return this.plus(other.times(-1.0));
+    assert other != null;
+
+    return other.minusLeft(this);
   }
 
   @Override
-  public IDoubleMatrix minus(double scalar) {
-    if (Math.abs(scalar) == 0.0) {
-      return this;
-    }
-
-    return new Full(this.data()).minus(scalar);
+  public IDoubleMatrix plus(double scalar) {
+    return ShiftedMatrix.shift(this, scalar);
   }
 
   @Override
@@ -227,8 +268,9 @@ public class CSR extends BaseMatrix {
     assert 0 <= row && row < this.shape.rows;
     assert 0 <= column && column < this.shape.columns;
 
-    int start = this.getRowStart(this.getRowPointer(row));
-    int end = this.getRowEnd(this.getRowPointer(row));
+    int ri = this.getRowPointer(row);
+    int start = this.getRowStart(ri);
+    int end = this.getRowEnd(ri);
 
     for (int ptr = start; ptr < end; ptr++) {
       if (this.getColumn(ptr) == column) {
@@ -239,19 +281,164 @@ public class CSR extends BaseMatrix {
     return 0;
   }
 
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    for (int ri = 0; ri < this.ner; ri++) {
+      for (int ptr = this.row[ri]; ptr < this.row[ri + 1]; ptr++) {
+        consumer.accept(this.rowPointer[ri], this.column[ptr], this.value[ptr]);
+      }
+    }
+  }
+
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    int ri = this.getRowPointer(row);
+
+    for (int ptr = this.getRowStart(ri); ptr < this.getRowEnd(ri); ptr++) {
+      consumer.accept(row, this.column[ptr], this.value[ptr]);
+    }
+  }
+
+  // O(ner log(row length)), CSC walks columns directly
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert 0 <= column && column < this.shape.columns;
+
+    for (int ri = 0; ri < this.ner; ri++) {
+      int ptr = Arrays.binarySearch(
+        this.column,
+        this.row[ri],
+        this.row[ri + 1],
+        column
+      );
+
+      if (ptr >= 0) {
+        consumer.accept(this.rowPointer[ri], column, this.value[ptr]);
+      }
+    }
+  }
+
   @Override
   public double[][] data() {
     double[][] data = new double[this.shape.rows][this.shape.columns];
 
-    for (int i = 0; i < this.shape.rows; i++) {
-      for (int j = 0; j < this.shape.columns; j++) {
-        data[i][j] = this.get(i, j);
+    for (int ri = 0; ri < this.ner; ri++) {
+      double[] row = data[this.rowPointer[ri]];
+
+      for (int ptr = this.row[ri]; ptr < this.row[ri + 1]; ptr++) {
+        row[this.column[ptr]] = this.value[ptr];
       }
     }
 
     return data;
   }
 
+  Full toFull() {
+    int columns = this.shape.columns;
+    double[] data = new double[this.shape.rows * columns];
+
+    for (int ri = 0; ri < this.ner; ri++) {
+      int base = this.rowPointer[ri] * columns;
+
+      for (int ptr = this.row[ri]; ptr < this.row[ri + 1]; ptr++) {
+        data[base + this.column[ptr]] = this.value[ptr];
+      }
+    }
+
+    return new Full(this.shape, data);
+  }
+
+  // y = this * x for a dense x, reading every stored entry exactly once.
+  // y is overwritten, including the rows that have no entries.
+  public void multiplyInto(double[] x, double[] y) {
+    assert x != null && y != null && x != y;
+    assert x.length == this.shape.columns;
+    assert y.length == this.shape.rows;
+
+    Arrays.fill(y, 0);
+    this.multiplyRows(0, this.ner, x, y);
+  }
+
+  // y = this * x for a sparse x, without a dense copy of x: the entries of
+  // each row are looked up among the stored entries of x, by binary search
+  // that resumes where the previous column was found
+  public void multiplyInto(Vector x, double[] y) {
+    assert x != null && y != null;
+    assert x.numberOfRows() == this.shape.columns;
+    assert y.length == this.shape.rows;
+
+    int[] index = x.indices();
+    double[] values = x.values();
+    int entries = x.nnz();
+
+    Arrays.fill(y, 0);
+
+    for (int ri = 0; ri < this.ner; ri++) {
+      double sum = 0;
+      int from = 0;
+
+      for (int ptr = this.row[ri]; ptr < this.row[ri + 1]; ptr++) {
+        int i = Arrays.binarySearch(index, from, entries, this.column[ptr]);
+
+        if (i >= 0) {
+          sum += this.value[ptr] * values[i];
+          from = i + 1;
+        } else {
+          from = -i - 1;
+        }
+
+        if (from == entries) {
+          break;
+        }
+      }
+
+      y[this.rowPointer[ri]] = sum;
+    }
+  }
+
+  // As multiplyInto, with the non-empty rows split into blocks holding
+  // about the same number of entries. Small matrices stay sequential, see
+  // MatrixParallelism.
+  public void multiplyIntoParallel(double[] x, double[] y) {
+    assert x != null && y != null && x != y;
+    assert x.length == this.shape.columns;
+    assert y.length == this.shape.rows;
+
+    int blocks = MatrixParallelism.rowBlocks(this.ner, this.nnz);
+
+    Arrays.fill(y, 0);
+    MatrixParallelism.forEachRowBlock(
+      this.nnz,
+      blocks,
+      (block, from, to) ->
+        this.multiplyRows(
+          this.rowStartingAt(from),
+          this.rowStartingAt(to),
+          x,
+          y
+        )
+    );
+  }
+
+  // Index of the first non-empty row whose entries start at or after ptr
+  private int rowStartingAt(int ptr) {
+    int i = Arrays.binarySearch(this.row, 0, this.ner + 1, ptr);
+
+    return i >= 0 ? i : -i - 1;
+  }
+
+  private void multiplyRows(int fromRi, int toRi, double[] x, double[] y) {
+    for (int ri = fromRi; ri < toRi; ri++) {
+      double sum = 0;
+
+      for (int ptr = this.row[ri]; ptr < this.row[ri + 1]; ptr++) {
+        sum += this.value[ptr] * x[this.column[ptr]];
+      }
+
+      y[this.rowPointer[ri]] = sum;
+    }
+  }
+
   @Override
   public double normOne() {
     // Calculate column sums
@@ -318,138 +505,70 @@ public class CSR extends BaseMatrix {
 
   @Override
   public IDoubleMatrix plusLeft(CSR other) {
+    return this.merge(other, 1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSR other) {
+    return this.merge(other, -1);
+  }
+
+  // other + sign * this, merging the rows of both in one pass
+  private IDoubleMatrix merge(CSR other, double sign) {
     assert other != null;
     assert other.shape.equals(this.shape);
 
-    int index = 0;
-    MatrixCellValue[] values = new MatrixCellValue[this.nnz + other.nnz];
+    CSRBuilder builder = new CSRBuilder(this.shape, this.nnz + other.nnz);
 
     int thisRi = 0;
     int otherRi = 0;
 
-    while (thisRi < this.ner && otherRi < other.ner) {
-      if (this.getRowNumber(thisRi) == other.getRowNumber(otherRi)) {
-        int r = this.getRowNumber(thisRi);
-
-        int thisPtr = this.getRowStart(thisRi);
-        int otherPtr = other.getRowStart(otherRi);
-
-        while (
-          thisPtr < this.getRowEnd(thisRi) &&
-          otherPtr < other.getRowEnd(otherRi)
-        ) {
-          int thisC = this.getColumn(thisPtr);
-          int otherC = other.getColumn(otherPtr);
-
-          if (thisC == otherC) {
-            values[index++] =
-              new MatrixCellValue(
-                r,
-                thisC,
-                this.getValue(thisPtr++) + other.getValue(otherPtr++)
-              );
-          } else if (thisC < otherC) {
-            values[index++] =
-              new MatrixCellValue(r, thisC, this.getValue(thisPtr++));
-          } else {
-            values[index++] =
-              new MatrixCellValue(r, otherC, other.getValue(otherPtr++));
-          }
-        }
-
-        // Push unmatched columns
-        while (thisPtr < this.getRowEnd(thisRi)) {
-          values[index++] =
-            new MatrixCellValue(
-              r,
-              this.getColumn(thisPtr),
-              this.getValue(thisPtr)
-            );
-          thisPtr++;
-        }
-
-        while (otherPtr < other.getRowEnd(otherRi)) {
-          values[index++] =
-            new MatrixCellValue(
-              r,
-              other.getColumn(otherPtr),
-              other.getValue(otherPtr)
-            );
-          otherPtr++;
-        }
-
-        thisRi++;
-        otherRi++;
-      } else if (this.getRowNumber(thisRi) < other.getRowNumber(otherRi)) {
-        // Push unmatched row from this
-        for (
-          int thisPtr = this.getRowStart(thisRi);
-          thisPtr < this.getRowEnd(thisRi);
-          thisPtr++
-        ) {
-          values[index++] =
-            new MatrixCellValue(
-              this.getRowNumber(thisRi),
-              this.getColumn(thisPtr),
-              this.getValue(thisPtr)
-            );
+    while (thisRi < this.ner || otherRi < other.ner) {
+      int thisR = this.rowPointer[thisRi];
+      int otherR = other.rowPointer[otherRi];
+      int r = Math.min(thisR, otherR);
+
+      int thisPtr = thisR == r ? this.row[thisRi] : 0;
+      int thisEnd = thisR == r ? this.row[thisRi + 1] : 0;
+      int otherPtr = otherR == r ? other.row[otherRi] : 0;
+      int otherEnd = otherR == r ? other.row[otherRi + 1] : 0;
+
+      while (thisPtr < thisEnd && otherPtr < otherEnd) {
+        int thisC = this.column[thisPtr];
+        int otherC = other.column[otherPtr];
+
+        if (thisC == otherC) {
+          builder.add(
+            r,
+            thisC,
+            other.value[otherPtr++] + sign * this.value[thisPtr++]
+          );
+        } else if (thisC < otherC) {
+          builder.add(r, thisC, sign * this.value[thisPtr++]);
+        } else {
+          builder.add(r, otherC, other.value[otherPtr++]);
         }
+      }
 
-        thisRi++;
-      } else {
-        // Push unmatched row from other
-        for (
-          int otherPtr = other.getRowStart(otherRi);
-          otherPtr < other.getRowEnd(otherRi);
-          otherPtr++
-        ) {
-          values[index++] =
-            new MatrixCellValue(
-              other.getRowNumber(otherRi),
-              other.getColumn(otherPtr),
-              other.getValue(otherPtr)
-            );
-          otherPtr++;
-        }
+      // Push unmatched columns
+      for (; thisPtr < thisEnd; thisPtr++) {
+        builder.add(r, this.column[thisPtr], sign * this.value[thisPtr]);
+      }
 
-        otherRi++;
+      for (; otherPtr < otherEnd; otherPtr++) {
+        builder.add(r, other.column[otherPtr], other.value[otherPtr]);
       }
-    }
 
-    for (; thisRi < this.ner; thisRi++) {
-      for (
-        int thisPtr = this.getRowStart(thisRi);
-        thisPtr < this.getRowEnd(thisRi);
-        thisPtr++
-      ) {
-        values[index++] =
-          new MatrixCellValue(
-            this.getRowNumber(thisRi),
-            this.getColumn(thisPtr),
-            this.getValue(thisPtr)
-          );
+      if (thisR == r) {
+        thisRi++;
       }
-    }
 
-    for (; otherRi < other.ner; otherRi++) {
-      for (
-        int otherPtr = other.getRowStart(otherRi);
-        otherPtr < other.getRowEnd(otherRi);
-        otherPtr++
-      ) {
-        values[index++] =
-          new MatrixCellValue(
-            other.getRowNumber(otherRi),
-            other.getColumn(otherPtr),
-            other.getValue(otherPtr)
-          );
-        otherPtr++;
+      if (otherR == r) {
+        otherRi++;
       }
     }
 
-    values = Arrays.copyOf(values, index);
-
-    return new CSR(this.shape, values);
+    return ResultFormat.sparse(builder.build());
   }
 
   @Override
@@ -457,20 +576,28 @@ public class CSR extends BaseMatrix {
     assert other != null;
     assert other.shape().equals(this.shape);
 
-    double[][] data = new double[this.shape.rows][this.shape.columns];
-    for (int i = 0; i < this.shape.rows; i++) {
-      for (int j = 0; j < this.shape.columns; j++) {
-        data[i][j] = other.get(i, j);
-      }
+    int columns = this.shape.columns;
+    double[] data = new double[this.shape.rows * columns];
 
-      int ri = this.getRowPointer(i);
+    for (int r = 0; r < this.shape.rows; r++) {
+      System.arraycopy(
+        other.values(),
+        other.offset(r),
+        data,
+        r * columns,
+        columns
+      );
+    }
 
-      for (int ptr = this.getRowStart(ri); ptr < this.getRowEnd(ri); ptr++) {
-        data[i][this.getColumn(ptr)] += this.getValue(ptr);
+    for (int ri = 0; ri < this.ner; ri++) {
+      int base = this.rowPointer[ri] * columns;
+
+      for (int ptr = this.row[ri]; ptr < this.row[ri + 1]; ptr++) {
+        data[base + this.column[ptr]] += this.value[ptr];
       }
     }
 
-    return new Full(data);
+    return ResultFormat.dense(this.shape, data);
   }
 
   private IDoubleMatrix plusLeftGeneric(IDoubleMatrix other) {
@@ -513,37 +640,140 @@ public class CSR extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    int nnz = 0;
+    Shape newShape = Shape.matrix(other.shape.rows, this.shape.columns);
 
-    ArrayList<MatrixCellValue> values = new ArrayList<>();
-    MatrixCellValue[] data = new MatrixCellValue[0];
+    // Row-wise (Gustavson) product: output row r is the sum of the rows of
+    // this selected by the non-zero columns of row r of other.
+    int maxRowProducts = 0;
+    long work = 0;
 
     for (int ri = 0; ri < other.ner; ri++) {
-      for (int c = 0; c < this.shape.columns; c++) {
-        double sum = 0;
-
-        for (
-          int ptr = other.getRowStart(ri);
-          ptr < other.getRowEnd(ri);
-          ptr++
-        ) {
-          sum += other.getValue(ptr) * this.get(other.getColumn(ptr), c);
-        }
+      int products = 0;
 
-        if (sum != 0) {
-          nnz++;
-          values.add(new MatrixCellValue(other.getRowNumber(ri), c, sum));
+      for (int ptr = other.row[ri]; ptr < other.row[ri + 1]; ptr++) {
+        int k = this.getRowPointer(other.column[ptr]);
+
+        products += this.getRowEnd(k) - this.getRowStart(k);
+      }
+
+      maxRowProducts = Math.max(maxRowProducts, products);
+      work += products;
+    }
+
+    int blocks = MatrixParallelism.rowBlocks(other.ner, work);
+    int accumulatorRowProducts = maxRowProducts;
+
+    // Symbolic pass: size every output row exactly
+    int[] offsets = new int[other.ner + 1];
+
+    MatrixParallelism.forEachRowBlock(
+      other.ner,
+      blocks,
+      (block, from, to) -> {
+        SparseAccumulator accumulator = new SparseAccumulator(
+          this.shape.columns,
+          accumulatorRowProducts
+        );
+
+        for (int ri = from; ri < to; ri++) {
+          for (int ptr = other.row[ri]; ptr < other.row[ri + 1]; ptr++) {
+            int k = this.getRowPointer(other.column[ptr]);
+
+            for (int q = this.getRowStart(k); q < this.getRowEnd(k); q++) {
+              accumulator.add(this.column[q], 0);
+            }
+          }
+
+          offsets[ri + 1] = accumulator.size();
+          accumulator.clear();
         }
       }
+    );
+
+    long total = 0;
+
+    for (int ri = 0; ri < other.ner; ri++) {
+      total += offsets[ri + 1];
+      assert total <= Integer.MAX_VALUE;
+      offsets[ri + 1] = (int) total;
     }
 
-    Shape newShape = Shape.matrix(other.shape.rows, this.shape.columns);
+    if (total == 0) {
+      return new Zero(newShape);
+    }
+
+    // Numeric pass: every row is written at its own offset
+    double[] value = new double[(int) total];
+    int[] column = new int[(int) total];
+    int[] written = new int[other.ner];
+
+    MatrixParallelism.forEachRowBlock(
+      other.ner,
+      blocks,
+      (block, from, to) -> {
+        SparseAccumulator accumulator = new SparseAccumulator(
+          this.shape.columns,
+          accumulatorRowProducts
+        );
+
+        for (int ri = from; ri < to; ri++) {
+          for (int ptr = other.row[ri]; ptr < other.row[ri + 1]; ptr++) {
+            double scalar = other.value[ptr];
+            int k = this.getRowPointer(other.column[ptr]);
+
+            for (int q = this.getRowStart(k); q < this.getRowEnd(k); q++) {
+              accumulator.add(this.column[q], scalar * this.value[q]);
+            }
+          }
+
+          written[ri] = accumulator.drain(column, value, offsets[ri]);
+        }
+      }
+    );
+
+    // Entries that cancelled out leave gaps, close them in place
+    int[] row = new int[other.ner + 1];
+    int[] rowPointer = new int[other.ner + 1];
+    int nnz = 0;
+    int ner = 0;
+
+    for (int ri = 0; ri < other.ner; ri++) {
+      if (written[ri] == 0) {
+        continue;
+      }
+
+      if (nnz != offsets[ri]) {
+        System.arraycopy(value, offsets[ri], value, nnz, written[ri]);
+        System.arraycopy(column, offsets[ri], column, nnz, written[ri]);
+      }
+
+      rowPointer[ner] = other.rowPointer[ri];
+      row[ner] = nnz;
+      ner++;
+      nnz += written[ri];
+    }
 
     if (nnz == 0) {
       return new Zero(newShape);
     }
 
-    return new CSR(newShape, values.toArray(data));
+    if (ner < other.ner) {
+      row = Arrays.copyOf(row, ner + 1);
+      rowPointer = Arrays.copyOf(rowPointer, ner + 1);
+    }
+
+    row[ner] = nnz;
+    rowPointer[ner] = newShape.rows;
+
+    return ResultFormat.sparse(
+      new CSR(
+        nnz < total ? Arrays.copyOf(value, nnz) : value,
+        rowPointer,
+        nnz < total ? Arrays.copyOf(column, nnz) : column,
+        row,
+        newShape
+      )
+    );
   }
 
   @Override
@@ -551,30 +781,47 @@ public class CSR extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    ArrayList<MatrixCellValue> values = new ArrayList<>();
-    MatrixCellValue[] data = new MatrixCellValue[0];
+    Shape newShape = Shape.matrix(other.shape().rows, this.shape.columns);
+    int blocks = MatrixParallelism.rowBlocks(
+      newShape.rows,
+      (long) newShape.rows * this.nnz
+    );
+    CSRBuilder[] parts = new CSRBuilder[blocks];
 
-    for (int r = 0; r < other.shape().rows; r++) {
-      for (int c = 0; c < this.shape.columns; c++) {
-        double sum = 0;
+    MatrixParallelism.forEachRowBlock(
+      newShape.rows,
+      blocks,
+      (block, from, to) -> {
+        CSRBuilder builder = new CSRBuilder(newShape);
+        double[] sums = new double[this.shape.columns];
+        double[] values = other.values();
 
-        for (int k = 0; k < other.shape().columns; k++) {
-          sum += other.get(r, k) * this.get(k, c);
-        }
+        for (int r = from; r < to; r++) {
+          int base = other.offset(r);
 
-        if (sum != 0) {
-          values.add(new MatrixCellValue(r, c, sum));
-        }
-      }
-    }
+          for (int ri = 0; ri < this.ner; ri++) {
+            double scalar = values[base + this.rowPointer[ri]];
 
-    Shape newShape = Shape.matrix(other.shape().rows, this.shape.columns);
+            if (scalar == 0) {
+              continue;
+            }
 
-    if (values.size() == 0) {
-      return new Zero(newShape);
-    }
+            for (int ptr = this.row[ri]; ptr < this.row[ri + 1]; ptr++) {
+              sums[this.column[ptr]] += scalar * this.value[ptr];
+            }
+          }
+
+          for (int c = 0; c < sums.length; c++) {
+            builder.add(r, c, sums[c]);
+            sums[c] = 0;
+          }
+        }
+
+        parts[block] = builder;
+      }
+    );
 
-    return new CSR(newShape, values.toArray(data));
+    return ResultFormat.sparse(CSRBuilder.concatenate(newShape, parts));
   }
 
   @Override
@@ -582,35 +829,24 @@ public class CSR extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    int index = 0;
-    MatrixCellValue[] values = new MatrixCellValue[this.nnz];
+    Shape newShape = Shape.matrix(other.shape().rows, this.shape.columns);
+    CSRBuilder builder = new CSRBuilder(newShape, this.nnz);
 
-    for (int r = 0; r < other.shape().rows; r++) {
+    for (int r = 0; r < newShape.rows; r++) {
       double scalar = other.get(r, other.indexCompliment(r));
-      int ri = this.getRowPointer(other.indexCompliment(r));
 
       if (scalar == 0) {
         continue;
       }
 
-      for (int ptr = this.getRowStart(ri); ptr < this.getRowEnd(ri); ptr++) {
-        double value = scalar * this.getValue(ptr);
+      int ri = this.getRowPointer(other.indexCompliment(r));
 
-        if (value != 0) {
-          values[index++] = new MatrixCellValue(r, this.getColumn(ptr), value);
-        }
+      for (int ptr = this.getRowStart(ri); ptr < this.getRowEnd(ri); ptr++) {
+        builder.add(r, this.column[ptr], scalar * this.value[ptr]);
       }
     }
 
-    Shape newShape = Shape.matrix(other.shape().rows, this.shape.columns);
-
-    if (index == 0) {
-      return new Zero(newShape);
-    }
-
-    values = Arrays.copyOf(values, index);
-
-    return new CSR(newShape, values);
+    return ResultFormat.sparse(builder.build());
   }
 
   @Override
@@ -626,103 +862,86 @@ public class CSR extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    int index = 0;
-    MatrixCellValue[] values = new MatrixCellValue[this.nnz *
-    other.numberOfRows()];
+    // this is a single row, so row r of the product is other[r] * this
+    Shape newShape = Shape.matrix(other.numberOfRows(), this.shape.columns);
+    CSRBuilder builder = new CSRBuilder(newShape);
 
-    for (int r = 0; r < other.numberOfRows(); r++) {
+    for (int r = 0; r < newShape.rows; r++) {
       double scalar = other.get(r, 0);
 
       if (scalar == 0) {
         continue;
       }
 
-      for (int ptr = this.getRowStart(r); ptr < this.getRowEnd(r); ptr++) {
-        double value = scalar * this.getValue(ptr);
-
-        if (value != 0) {
-          values[index++] = new MatrixCellValue(r, this.getColumn(ptr), value);
-        }
+      for (int ptr = this.getRowStart(0); ptr < this.getRowEnd(0); ptr++) {
+        builder.add(r, this.column[ptr], scalar * this.value[ptr]);
       }
     }
 
-    Shape newShape = Shape.matrix(other.numberOfRows(), this.shape.columns);
-
-    if (index == 0) {
-      return new Zero(newShape);
-    }
-
-    return new CSR(newShape, Arrays.copyOf(values, index));
+    return ResultFormat.sparse(builder.build());
   }
 
-  private String stringifyCell(int ptr, int distance, boolean last) {
-    String out = "";
+  private void writeCell(Appendable out, int ptr, int distance, boolean last)
+    throws IOException {
+    out.append(Double.toString(this.getValue(ptr)));
 
     if (distance >= 3) {
-      out = this.getValue(ptr) + " ... ";
+      out.append(" ... ");
     } else if (distance == 2) {
-      out = this.getValue(ptr) + " 0 ";
+      out.append(" 0 ");
     } else {
-      out = this.getValue(ptr) + " " + (last ? "0" : "");
+      out.append(last ? " 0" : " ");
     }
-
-    return out;
   }
 
-  private String stringifyRow(int row) {
+  private void writeRow(Appendable out, int row) throws IOException {
     int ri = this.getRowPointer(row);
 
     int ptr = this.getRowStart(ri);
     int ptrEnd = this.getRowEnd(ri);
 
-    String out = "";
-
     if (ptr < ptrEnd) {
       switch (this.getColumn(ptr)) {
         case 0:
           break;
         case 1:
-          out += "0 ";
+          out.append("0 ");
           break;
         case 2:
-          out += "0 0 ";
+          out.append("0 0 ");
           break;
         default:
-          out += "0 ... ";
+          out.append("0 ... ");
           break;
       }
 
       for (; ptr < ptrEnd - 1; ptr++) {
-        out +=
-          this.stringifyCell(
-              ptr,
-              this.getColumn(ptr + 1) - this.getColumn(ptr),
-              false
-            );
-      }
-
-      out +=
-        this.stringifyCell(
+        this.writeCell(
+            out,
             ptr,
-            this.shape.columns - 1 - this.getColumn(ptr),
-            true
-          ) +
-        "\n";
+            this.getColumn(ptr + 1) - this.getColumn(ptr),
+            false
+          );
+      }
 
-      return out;
+      this.writeCell(
+          out,
+          ptr,
+          this.shape.columns - 1 - this.getColumn(ptr),
+          true
+        );
+      out.append('\n');
     } else {
-      return "0 ... 0\n";
+      out.append("0 ... 0\n");
     }
   }
 
   @Override
-  public String toString() {
-    String out = super.toString();
+  public void writeTo(Appendable out) throws IOException {
+    this.writeHeader(out);
 
     for (int r = 0; r < this.shape.rows; r++) {
-      out += this.stringifyRow(r);
+      this.writeRow(out, r);
     }
-
-    return out;
   }
 }
@@ -0,0 +1,215 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.util.Arrays;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.Shape;
+
+// Builds CSR arrays directly from entries added in row-major order.
+// Zero values are skipped, repeated cells are summed.
+public class CSRBuilder {
+
+  private final Shape shape;
+  private double[] value;
+  private int[] column;
+  private int[] row;
+  private int[] rowPointer;
+  private int nnz = 0;
+  private int ner = 0;
+  private boolean sealed = false;
+
+  public CSRBuilder(Shape shape) {
+    this(shape, 16);
+  }
+
+  public CSRBuilder(Shape shape, int capacity) {
+    assert shape != null;
+    assert capacity >= 0;
+
+    this.shape = shape;
+    this.value = new double[capacity];
+    this.column = new int[capacity];
+    this.row = new int[Math.min(capacity, shape.rows) + 1];
+    this.rowPointer = new int[this.row.length];
+  }
+
+  public CSRBuilder add(int row, int column, double value) {
+    assert !this.sealed;
+    assert 0 <= row && row < this.shape.rows;
+    assert 0 <= column && column < this.shape.columns;
+
+    if (value == 0) {
+      return this;
+    }
+
+    int lastRow = this.ner == 0 ? -1 : this.rowPointer[this.ner - 1];
+
+    assert row >= lastRow : "entries must be added in row-major order";
+
+    if (row == lastRow) {
+      int lastColumn = this.column[this.nnz - 1];
+
+      assert column >= lastColumn : "entries must be added in row-major order";
+
+      if (column == lastColumn) {
+        this.value[this.nnz - 1] += value;
+
+        // Drop entries that cancelled out, and their row if it emptied
+        if (this.value[this.nnz - 1] == 0) {
+          this.nnz--;
+
+          if (this.row[this.ner - 1] == this.nnz) {
+            this.ner--;
+          }
+        }
+
+        return this;
+      }
+    } else {
+      if (this.ner + 1 == this.row.length) {
+        int length = (int) Math.min(2L * this.row.length, this.shape.rows + 1L);
+
+        this.row = Arrays.copyOf(this.row, length);
+        this.rowPointer = Arrays.copyOf(this.rowPointer, length);
+      }
+
+      this.rowPointer[this.ner] = row;
+      this.row[this.ner] = this.nnz;
+      this.ner++;
+    }
+
+    if (this.nnz == this.value.length) {
+      int length = Math.max(16, 2 * this.value.length);
+
+      this.value = Arrays.copyOf(this.value, length);
+      this.column = Arrays.copyOf(this.column, length);
+    }
+
+    this.column[this.nnz] = column;
+    this.value[this.nnz] = value;
+    this.nnz++;
+
+    return this;
+  }
+
+  public int size() {
+    return this.nnz;
+  }
+
+  public IDoubleMatrix build() {
+    if (this.nnz == 0) {
+      return new Zero(this.shape);
+    }
+
+    this.seal();
+
+    return new CSR(
+      this.value,
+      this.rowPointer,
+      this.column,
+      this.row,
+      this.shape
+    );
+  }
+
+  // Joins builders that filled consecutive, disjoint row ranges of the same
+  // shape, in row order.
+  static IDoubleMatrix concatenate(Shape shape, CSRBuilder... parts) {
+    assert shape != null;
+    assert parts != null;
+
+    if (parts.length == 1) {
+      return parts[0].build();
+    }
+
+    int nnz = 0;
+    int ner = 0;
+
+    for (CSRBuilder part : parts) {
+      assert part.shape.equals(shape);
+
+      nnz += part.nnz;
+      ner += part.ner;
+    }
+
+    if (nnz == 0) {
+      return new Zero(shape);
+    }
+
+    double[] value = new double[nnz];
+    int[] column = new int[nnz];
+    int[] row = new int[ner + 1];
+    int[] rowPointer = new int[ner + 1];
+    int valueAt = 0;
+    int rowAt = 0;
+
+    for (CSRBuilder part : parts) {
+      assert rowAt == 0 ||
+      part.ner == 0 ||
+      part.rowPointer[0] > rowPointer[rowAt - 1];
+
+      System.arraycopy(part.value, 0, value, valueAt, part.nnz);
+      System.arraycopy(part.column, 0, column, valueAt, part.nnz);
+      System.arraycopy(part.rowPointer, 0, rowPointer, rowAt, part.ner);
+
+      for (int i = 0; i < part.ner; i++) {
+        row[rowAt + i] = part.row[i] + valueAt;
+      }
+
+      valueAt += part.nnz;
+      rowAt += part.ner;
+    }
+
+    row[ner] = nnz;
+    rowPointer[ner] = shape.rows;
+
+    return new CSR(value, rowPointer, column, row, shape);
+  }
+
+  private void seal() {
+    if (this.sealed) {
+      return;
+    }
+
+    if (this.value.length != this.nnz) {
+      this.value = Arrays.copyOf(this.value, this.nnz);
+      this.column = Arrays.copyOf(this.column, this.nnz);
+    }
+
+    if (this.row.length != this.ner + 1) {
+      this.row = Arrays.copyOf(this.row, this.ner + 1);
+      this.rowPointer = Arrays.copyOf(this.rowPointer, this.ner + 1);
+    }
+
+    this.row[this.ner] = this.nnz;
+    this.rowPointer[this.ner] = this.shape.rows;
+    this.sealed = true;
+  }
+
+  Shape shape() {
+    return this.shape;
+  }
+
+  double[] value() {
+    this.seal();
+
+    return this.value;
+  }
+
+  int[] column() {
+    this.seal();
+
+    return this.column;
+  }
+
+  int[] row() {
+    this.seal();
+
+    return this.row;
+  }
+
+  int[] rowPointer() {
+    this.seal();
+
+    return this.rowPointer;
+  }
+}
@@ -0,0 +1,90 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// Little-endian values written through a small staging buffer, starting at a
+// fixed position of the file. Several outputs may fill different sections of
+// one file at once, so a writer needs only one pass over its source.
+final class ChannelOutput {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer
+    .allocateDirect(BUFFER_SIZE)
+    .order(ByteOrder.LITTLE_ENDIAN);
+  private long position;
+
+  ChannelOutput(FileChannel channel, long position) {
+    this.channel = channel;
+    this.position = position;
+  }
+
+  void putByte(int value) throws IOException {
+    this.reserve(1);
+    this.buffer.put((byte) value);
+  }
+
+  void putInt(int value) throws IOException {
+    this.reserve(Integer.BYTES);
+    this.buffer.putInt(value);
+  }
+
+  void putDouble(double value) throws IOException {
+    this.reserve(Double.BYTES);
+    this.buffer.putDouble(value);
+  }
+
+  void putDoubles(double[] values, int from, int to) throws IOException {
+    while (from < to) {
+      this.reserve(Double.BYTES);
+
+      int count = Math.min(to - from, this.buffer.remaining() / Double.BYTES);
+
+      this.buffer.asDoubleBuffer().put(values, from, count);
+      this.buffer.position(this.buffer.position() + count * Double.BYTES);
+      from += count;
+    }
+  }
+
+  void putInts(int[] values, int from, int to) throws IOException {
+    while (from < to) {
+      this.reserve(Integer.BYTES);
+
+      int count = Math.min(to - from, this.buffer.remaining() / Integer.BYTES);
+
+      this.buffer.asIntBuffer().put(values, from, count);
+      this.buffer.position(this.buffer.position() + count * Integer.BYTES);
+      from += count;
+    }
+  }
+
+  void putLong(long value) throws IOException {
+    this.reserve(Long.BYTES);
+    this.buffer.putLong(value);
+  }
+
+  private void reserve(int bytes) throws IOException {
+    if (this.buffer.remaining() < bytes) {
+      this.flush();
+    }
+  }
+
+  // The position of the next value in the file
+  long position() {
+    return this.position + this.buffer.position();
+  }
+
+  void flush() throws IOException {
+    this.buffer.flip();
+
+    while (this.buffer.hasRemaining()) {
+      this.position += this.channel.write(this.buffer, this.position);
+    }
+
+    this.buffer.clear();
+  }
+}
@@ -1,6 +1,9 @@
 package pl.edu.mimuw.matrix.implementations;
 
+import java.io.IOException;
+import java.util.Arrays;
 import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
 import pl.edu.mimuw.matrix.Shape;
 
 public class ColumnMatrix extends RowMatrix {
@@ -17,20 +20,46 @@ public class ColumnMatrix extends RowMatrix {
     super(shape, values);
   }
 
+  // values * 1^T, sharing values
   @Override
-  public IDoubleMatrix timesLeft(Vector other) {
+  LowRankMatrix toLowRank() {
+    double[] ones = new double[this.shape.columns];
+
+    Arrays.fill(ones, 1);
+
+    return new LowRankMatrix(this.shape, 1, this.values, ones);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSR other) {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    double[][] data = new double[other.shape().rows][this.shape.columns];
+    // Every column of this is the same, so row r of the product is
+    // (row r of other) . values repeated across all columns
+    Shape newShape = Shape.matrix(other.shape().rows, this.shape.columns);
+    CSRBuilder builder = new CSRBuilder(
+      newShape,
+      other.ner * this.shape.columns
+    );
+
+    for (int ri = 0; ri < other.ner; ri++) {
+      double sum = 0;
+
+      for (int ptr = other.getRowStart(ri); ptr < other.getRowEnd(ri); ptr++) {
+        sum += other.getValue(ptr) * this.values[other.getColumn(ptr)];
+      }
+
+      if (sum == 0) {
+        continue;
+      }
 
-    for (int r = 0; r < other.shape().rows; r++) {
       for (int c = 0; c < this.shape.columns; c++) {
-        data[r][c] = other.get(r, 0) * this.get(0, c);
+        builder.add(other.getRowNumber(ri), c, sum);
       }
     }
 
-    return new Full(data);
+    return builder.build();
   }
 
   @Override
@@ -87,6 +116,30 @@ public class ColumnMatrix extends RowMatrix {
     return this.values[row];
   }
 
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.shape.rows;
+
+    if (this.values[row] == 0) {
+      return;
+    }
+
+    for (int c = 0; c < this.shape.columns; c++) {
+      consumer.accept(row, c, this.values[row]);
+    }
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert 0 <= column && column < this.shape.columns;
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      if (this.values[r] != 0) {
+        consumer.accept(r, column, this.values[r]);
+      }
+    }
+  }
+
   @Override
   public double[][] data() {
     double[][] data = new double[this.shape.rows][this.shape.columns];
@@ -117,23 +170,27 @@ public class ColumnMatrix extends RowMatrix {
 
   @Override
   public double frobeniusNorm() {
-    return Math.sqrt(this.shape.columns * this.normOne());
+    double sum = 0;
+
+    for (double v : this.values) {
+      sum += v * v;
+    }
+
+    return Math.sqrt(this.shape.columns * sum);
   }
 
   @Override
-  public String toString() {
-    String out = this.shape().toString() + "\n";
+  public void writeTo(Appendable out) throws IOException {
+    this.writeHeader(out);
 
     for (int r = 0; r < this.shape.rows; r++) {
       if (this.shape.columns >= 3) {
-        out += String.format("%.2f ... %.2f\n", this.get(r, 0), this.get(r, 0));
+        format(out, "%.2f ... %.2f\n", this.get(r, 0), this.get(r, 0));
       } else if (this.shape.columns == 2) {
-        out += String.format("%.2f %.2f\n", this.get(r, 0), this.get(r, 0));
+        format(out, "%.2f %.2f\n", this.get(r, 0), this.get(r, 0));
       } else {
-        out += String.format("%.2f\n", this.get(r, 0));
+        format(out, "%.2f\n", this.get(r, 0));
       }
     }
-
-    return out;
   }
 }
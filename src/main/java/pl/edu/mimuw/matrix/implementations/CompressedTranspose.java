@@ -0,0 +1,126 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.util.Arrays;
+
+// Regroups compressed sparse arrays by their minor index, which turns CSR
+// arrays into the CSC arrays of the same matrix and back. Both layouts keep
+// only the non-empty groups: start[g] is where group g begins and major[g]
+// is its row (CSR) or column (CSC) number, with sentinels start[groups] = nnz
+// and major[groups] = the size of the major dimension.
+final class CompressedTranspose {
+
+  // Minor dimension per entry above which counting is replaced by sorting
+  private static final int COUNTING_SPARSITY = 8;
+
+  final double[] value;
+  final int[] index;
+  final int[] start;
+  final int[] major;
+
+  CompressedTranspose(
+    double[] value,
+    int[] index,
+    int[] start,
+    int[] major,
+    int minorSize
+  ) {
+    int nnz = value.length;
+
+    this.value = new double[nnz];
+    this.index = new int[nnz];
+
+    // Minor index of every entry, in the new order
+    int[] minor = (long) minorSize <= (long) COUNTING_SPARSITY * nnz
+      ? this.countingSort(value, index, start, major, minorSize)
+      : this.keySort(value, index, start, major);
+
+    int groups = 0;
+
+    for (int ptr = 0; ptr < nnz; ptr++) {
+      if (ptr == 0 || minor[ptr] != minor[ptr - 1]) {
+        groups++;
+      }
+    }
+
+    this.start = new int[groups + 1];
+    this.major = new int[groups + 1];
+
+    for (int ptr = 0, g = 0; ptr < nnz; ptr++) {
+      if (ptr == 0 || minor[ptr] != minor[ptr - 1]) {
+        this.start[g] = ptr;
+        this.major[g] = minor[ptr];
+        g++;
+      }
+    }
+
+    this.start[groups] = nnz;
+    this.major[groups] = minorSize;
+  }
+
+  // O(nnz + minorSize). Stable, so every new group stays sorted.
+  private int[] countingSort(
+    double[] value,
+    int[] index,
+    int[] start,
+    int[] major,
+    int minorSize
+  ) {
+    int nnz = value.length;
+    int[] offset = new int[minorSize + 1];
+    int[] minor = new int[nnz];
+
+    for (int ptr = 0; ptr < nnz; ptr++) {
+      offset[index[ptr] + 1]++;
+    }
+
+    for (int m = 0; m < minorSize; m++) {
+      offset[m + 1] += offset[m];
+    }
+
+    for (int g = 0; start[g] < nnz; g++) {
+      for (int ptr = start[g]; ptr < start[g + 1]; ptr++) {
+        int to = offset[index[ptr]]++;
+
+        this.value[to] = value[ptr];
+        this.index[to] = major[g];
+        minor[to] = index[ptr];
+      }
+    }
+
+    return minor;
+  }
+
+  // O(nnz log nnz), for hypersparse shapes where the counting array would
+  // be far larger than the entries themselves
+  private int[] keySort(
+    double[] value,
+    int[] index,
+    int[] start,
+    int[] major
+  ) {
+    int nnz = value.length;
+    long[] keys = new long[nnz];
+    int[] majorOf = new int[nnz];
+    int[] minor = new int[nnz];
+
+    for (int g = 0; start[g] < nnz; g++) {
+      for (int ptr = start[g]; ptr < start[g + 1]; ptr++) {
+        keys[ptr] = ((long) index[ptr] << 32) | ptr;
+        majorOf[ptr] = major[g];
+      }
+    }
+
+    // Ties are broken by position, which keeps the sort stable
+    Arrays.sort(keys);
+
+    for (int to = 0; to < nnz; to++) {
+      int ptr = (int) keys[to];
+
+      this.value[to] = value[ptr];
+      this.index[to] = majorOf[ptr];
+      minor[to] = index[ptr];
+    }
+
+    return minor;
+  }
+}
@@ -0,0 +1,240 @@
+package pl.edu.mimuw.matrix.implementations;
+
+// Inner loops of the dense kernels, on row-major buffers.
+//
+// This class is the scalar implementation. When the build includes the simd
+// source set and the JVM runs with jdk.incubator.vector, INSTANCE is the
+// Vector API subclass instead; -Dpl.edu.mimuw.matrix.simd=false forces the
+// scalar one.
+class DenseKernels {
+
+  static final String SIMD_PROPERTY = "pl.edu.mimuw.matrix.simd";
+  static final DenseKernels INSTANCE = load();
+
+  private static final String VECTOR_KERNELS =
+    "pl.edu.mimuw.matrix.implementations.VectorDenseKernels";
+
+  DenseKernels() {}
+
+  private static DenseKernels load() {
+    if (!Boolean.parseBoolean(System.getProperty(SIMD_PROPERTY, "true"))) {
+      return new DenseKernels();
+    }
+
+    try {
+      return (DenseKernels) Class
+        .forName(VECTOR_KERNELS)
+        .getDeclaredConstructor()
+        .newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // Not built with the simd source set, or the module is missing
+      return new DenseKernels();
+    }
+  }
+
+  String name() {
+    return "scalar";
+  }
+
+  // dst = src + scalar, returns the number of non-zero results
+  int add(
+    double[] src,
+    int srcOffset,
+    double scalar,
+    double[] dst,
+    int dstOffset,
+    int length
+  ) {
+    int nnz = 0;
+
+    for (int i = 0; i < length; i++) {
+      dst[dstOffset + i] = src[srcOffset + i] + scalar;
+
+      if (dst[dstOffset + i] != 0) {
+        nnz++;
+      }
+    }
+
+    return nnz;
+  }
+
+  // dst = src * scalar, returns the number of non-zero results
+  int multiply(
+    double[] src,
+    int srcOffset,
+    double scalar,
+    double[] dst,
+    int dstOffset,
+    int length
+  ) {
+    int nnz = 0;
+
+    for (int i = 0; i < length; i++) {
+      dst[dstOffset + i] = src[srcOffset + i] * scalar;
+
+      if (dst[dstOffset + i] != 0) {
+        nnz++;
+      }
+    }
+
+    return nnz;
+  }
+
+  // dst = a + b, returns the number of non-zero results
+  int add(
+    double[] a,
+    int aOffset,
+    double[] b,
+    int bOffset,
+    double[] dst,
+    int dstOffset,
+    int length
+  ) {
+    int nnz = 0;
+
+    for (int i = 0; i < length; i++) {
+      dst[dstOffset + i] = a[aOffset + i] + b[bOffset + i];
+
+      if (dst[dstOffset + i] != 0) {
+        nnz++;
+      }
+    }
+
+    return nnz;
+  }
+
+  // dst = a - b, returns the number of non-zero results
+  int subtract(
+    double[] a,
+    int aOffset,
+    double[] b,
+    int bOffset,
+    double[] dst,
+    int dstOffset,
+    int length
+  ) {
+    int nnz = 0;
+
+    for (int i = 0; i < length; i++) {
+      dst[dstOffset + i] = a[aOffset + i] - b[bOffset + i];
+
+      if (dst[dstOffset + i] != 0) {
+        nnz++;
+      }
+    }
+
+    return nnz;
+  }
+
+  // dst += |src|
+  void accumulateAbs(
+    double[] src,
+    int srcOffset,
+    double[] dst,
+    int dstOffset,
+    int length
+  ) {
+    for (int i = 0; i < length; i++) {
+      dst[dstOffset + i] += Math.abs(src[srcOffset + i]);
+    }
+  }
+
+  double sumAbs(double[] src, int offset, int length) {
+    double sum = 0;
+
+    for (int i = 0; i < length; i++) {
+      sum += Math.abs(src[offset + i]);
+    }
+
+    return sum;
+  }
+
+  double sumSquares(double[] src, int offset, int length) {
+    double sum = 0;
+
+    for (int i = 0; i < length; i++) {
+      double v = src[offset + i];
+
+      sum += v * v;
+    }
+
+    return sum;
+  }
+
+  // y += alpha * x
+  void axpy(
+    double alpha,
+    double[] x,
+    int xOffset,
+    double[] y,
+    int yOffset,
+    int length
+  ) {
+    for (int i = 0; i < length; i++) {
+      y[yOffset + i] += alpha * x[xOffset + i];
+    }
+  }
+
+  // C[4 x 4] += A * B for a 4-row micro-panel of A and a 4-column
+  // micro-panel of B, both packed k-major (see Gemm)
+  void gemm4x4(
+    int kc,
+    double[] a,
+    int aAt,
+    double[] b,
+    int bAt,
+    double[] c,
+    int cAt,
+    int ldc
+  ) {
+    double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+    double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+    double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+    double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+    for (int p = 0; p < kc; p++) {
+      double a0 = a[aAt], a1 = a[aAt + 1], a2 = a[aAt + 2], a3 = a[aAt + 3];
+      double b0 = b[bAt], b1 = b[bAt + 1], b2 = b[bAt + 2], b3 = b[bAt + 3];
+
+      c00 += a0 * b0;
+      c01 += a0 * b1;
+      c02 += a0 * b2;
+      c03 += a0 * b3;
+      c10 += a1 * b0;
+      c11 += a1 * b1;
+      c12 += a1 * b2;
+      c13 += a1 * b3;
+      c20 += a2 * b0;
+      c21 += a2 * b1;
+      c22 += a2 * b2;
+      c23 += a2 * b3;
+      c30 += a3 * b0;
+      c31 += a3 * b1;
+      c32 += a3 * b2;
+      c33 += a3 * b3;
+
+      aAt += 4;
+      bAt += 4;
+    }
+
+    c[cAt] += c00;
+    c[cAt + 1] += c01;
+    c[cAt + 2] += c02;
+    c[cAt + 3] += c03;
+    cAt += ldc;
+    c[cAt] += c10;
+    c[cAt + 1] += c11;
+    c[cAt + 2] += c12;
+    c[cAt + 3] += c13;
+    cAt += ldc;
+    c[cAt] += c20;
+    c[cAt + 1] += c21;
+    c[cAt + 2] += c22;
+    c[cAt + 3] += c23;
+    cAt += ldc;
+    c[cAt] += c30;
+    c[cAt + 1] += c31;
+    c[cAt + 2] += c32;
+    c[cAt + 3] += c33;
+  }
+}
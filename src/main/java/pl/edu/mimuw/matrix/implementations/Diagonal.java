@@ -1,8 +1,8 @@
 package pl.edu.mimuw.matrix.implementations;
 
-import java.util.Arrays;
+import java.io.IOException;
 import pl.edu.mimuw.matrix.IDoubleMatrix;
-import pl.edu.mimuw.matrix.MatrixCellValue;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
 import pl.edu.mimuw.matrix.Shape;
 
 public class Diagonal extends BaseMatrix {
@@ -54,16 +54,15 @@ public class Diagonal extends BaseMatrix {
   }
 
   @Override
-  public IDoubleMatrix plus(double scalar) {
-    double[][] values = new double[this.size()][this.size()];
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
 
-    for (int i = 0; i < this.size(); i++) {
-      for (int j = 0; j < this.size(); j++) {
-        values[i][j] = scalar + this.get(i, j);
-      }
-    }
+    return other.minusLeft(this);
+  }
 
-    return new Full(values);
+  @Override
+  public IDoubleMatrix plus(double scalar) {
+    return ShiftedMatrix.shift(this, scalar);
   }
 
   @Override
@@ -82,14 +81,42 @@ public class Diagonal extends BaseMatrix {
     return i;
   }
 
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    for (int r = 0; r < this.values.length; r++) {
+      if (this.values[r] != 0) {
+        consumer.accept(r, this.indexCompliment(r), this.values[r]);
+      }
+    }
+  }
+
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.values.length;
+
+    if (this.values[row] != 0) {
+      consumer.accept(row, this.indexCompliment(row), this.values[row]);
+    }
+  }
+
+  // indexCompliment is its own inverse
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert 0 <= column && column < this.values.length;
+
+    int row = this.indexCompliment(column);
+
+    if (this.values[row] != 0) {
+      consumer.accept(row, column, this.values[row]);
+    }
+  }
+
   @Override
   public double[][] data() {
     double[][] data = new double[this.values.length][this.values.length];
 
     for (int i = 0; i < this.values.length; i++) {
-      for (int j = 0; j < this.values.length; j++) {
-        data[i][j] = this.get(i, j);
-      }
+      data[i][this.indexCompliment(i)] = this.values[i];
     }
 
     return data;
@@ -140,37 +167,30 @@ public class Diagonal extends BaseMatrix {
     assert other != null;
     assert other.shape().equals(this.shape());
 
-    int index = 0;
-    MatrixCellValue[] values = new MatrixCellValue[other.nnz + 1 + this.size()];
+    CSRBuilder builder = new CSRBuilder(this.shape(), other.nnz + this.size());
 
-    for (int r = 0; r < this.values.length; r++) {
+    for (int r = 0; r < this.size(); r++) {
+      int diagonalColumn = this.indexCompliment(r);
       boolean visitedDiagonal = false;
       int ri = other.getRowPointer(r);
 
       for (int i = other.getRowStart(ri); i < other.getRowEnd(ri); i++) {
-        double value = other.getValue(i);
+        int c = other.getColumn(i);
 
-        if (other.getColumn(i) == this.indexCompliment(r)) {
+        if (!visitedDiagonal && c >= diagonalColumn) {
+          builder.add(r, diagonalColumn, this.values[r]);
           visitedDiagonal = true;
-          value += this.get(r, this.indexCompliment(r));
         }
 
-        values[index++] = new MatrixCellValue(r, other.getColumn(i), value);
+        builder.add(r, c, other.getValue(i));
       }
 
       if (!visitedDiagonal) {
-        values[index++] =
-          new MatrixCellValue(
-            r,
-            this.indexCompliment(r),
-            this.get(r, this.indexCompliment(r))
-          );
+        builder.add(r, diagonalColumn, this.values[r]);
       }
     }
 
-    values = Arrays.copyOf(values, index);
-
-    return new CSR(this.shape(), values);
+    return builder.build();
   }
 
   @Override
@@ -178,15 +198,16 @@ public class Diagonal extends BaseMatrix {
     assert other != null;
     assert other.shape().equals(this.shape());
 
-    double[][] values = new double[this.size()][this.size()];
+    int size = this.size();
+    double[] values = new double[size * size];
 
-    for (int i = 0; i < this.size(); i++) {
-      for (int j = 0; j < this.size(); j++) {
-        values[i][j] = other.get(i, j) + this.get(i, j);
-      }
+    for (int i = 0; i < size; i++) {
+      System.arraycopy(other.values(), other.offset(i), values, i * size, size);
+
+      values[i * size + this.indexCompliment(i)] += this.values[i];
     }
 
-    return new Full(values);
+    return new Full(this.shape(), values);
   }
 
   @Override
@@ -208,23 +229,21 @@ public class Diagonal extends BaseMatrix {
     assert other != null;
     assert other.shape().equals(this.shape());
 
-    MatrixCellValue[] values = new MatrixCellValue[this.size() * 2];
-    int index = 0;
+    CSRBuilder builder = new CSRBuilder(this.shape(), this.size() * 2);
 
     for (int i = 0; i < this.size(); i++) {
-      int iOther = this.size() - i - 1;
+      int iOther = other.indexCompliment(i);
 
-      if (i == iOther) {
-        values[index++] =
-          new MatrixCellValue(i, i, this.get(i, i) + other.get(iOther, iOther));
+      if (i <= iOther) {
+        builder.add(i, i, this.values[i]);
+        builder.add(i, iOther, other.values[i]);
       } else {
-        values[index++] = new MatrixCellValue(i, i, this.get(i, i));
-        values[index++] =
-          new MatrixCellValue(iOther, iOther, other.get(iOther, iOther));
+        builder.add(i, iOther, other.values[i]);
+        builder.add(i, i, this.values[i]);
       }
     }
 
-    return new CSR(this.shape(), values);
+    return builder.build();
   }
 
   @Override
@@ -253,31 +272,33 @@ public class Diagonal extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.size();
 
-    MatrixCellValue[] data = new MatrixCellValue[other.nnz];
-
-    int index = 0;
-    for (int r = 0; r < this.size(); r++) {
-      int ri = other.getRowPointer(r);
-
-      for (int c = 0; c < this.size(); c++) {
-        double sum = 0;
-
-        // @todo optimise
-        for (
-          int rowPtr = other.getRowStart(ri);
-          rowPtr < other.getRowEnd(ri);
-          rowPtr++
-        ) {
-          sum += this.get(other.getColumn(rowPtr), c) * other.getValue(rowPtr);
-        }
-
-        if (Math.abs(sum) != 0) {
-          data[index++] = new MatrixCellValue(r, c, sum);
-        }
+    // Column k of other moves to column indexCompliment(k), scaled by
+    // values[k]. indexCompliment is either increasing or decreasing, so each
+    // row is walked in the order that keeps its output columns sorted.
+    boolean ascending = this.indexCompliment(0) == 0;
+    CSRBuilder builder = new CSRBuilder(
+      Shape.matrix(other.shape().rows, this.size()),
+      other.nnz
+    );
+
+    for (int ri = 0; ri < other.ner; ri++) {
+      int r = other.getRowNumber(ri);
+      int start = other.getRowStart(ri);
+      int end = other.getRowEnd(ri);
+
+      for (int i = 0; i < end - start; i++) {
+        int ptr = ascending ? start + i : end - 1 - i;
+        int k = other.getColumn(ptr);
+
+        builder.add(
+          r,
+          this.indexCompliment(k),
+          other.getValue(ptr) * this.values[k]
+        );
       }
     }
 
-    return new CSR(Shape.matrix(other.shape().rows, this.size()), data);
+    return builder.build();
   }
 
   @Override
@@ -285,17 +306,22 @@ public class Diagonal extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.size();
 
-    // @todo optimise to csr?
+    // Column k of other moves to column indexCompliment(k), scaled by
+    // values[k]
+    int size = this.size();
     Shape otherShape = other.shape();
-    double[][] data = new double[otherShape.rows][this.size()];
+    double[] data = new double[otherShape.rows * size];
+
+    for (int r = 0; r < otherShape.rows; r++) {
+      int from = other.offset(r);
 
-    for (int c = 0; c < this.size(); c++) {
-      for (int r = 0; r < otherShape.rows; r++) {
-        data[r][c] += this.get(c, this.indexCompliment(c)) * other.get(r, c);
+      for (int k = 0; k < size; k++) {
+        data[r * size + this.indexCompliment(k)] =
+          this.values[k] * other.values()[from + k];
       }
     }
 
-    return new Full(data);
+    return new Full(Shape.matrix(otherShape.rows, size), data);
   }
 
   @Override
@@ -336,9 +362,7 @@ public class Diagonal extends BaseMatrix {
     double[] values = new double[this.size()];
 
     for (int i = 0; i < this.size(); i++) {
-      int iOther = this.size() - i - 1;
-
-      values[iOther] = this.get(i, i) * other.get(iOther, i);
+      values[i] = other.values[i] * this.values[other.indexCompliment(i)];
     }
 
     return new AntiDiagonal(values);
@@ -383,22 +407,20 @@ public class Diagonal extends BaseMatrix {
   }
 
   @Override
-  public String toString() {
-    String out = super.toString();
+  public void writeTo(Appendable out) throws IOException {
+    this.writeHeader(out);
 
     for (int r = 0; r < this.size(); r++) {
       String padLeft = padding(this.leftDistance(r));
       String padRight = padding(this.rightDistance(r));
 
-      out +=
-        String.format(
-          "%s%.2f%s\n",
-          padLeft.equals("") ? padLeft : (padLeft + " "),
-          this.get(r, this.indexCompliment(r)),
-          padRight.equals("") ? padRight : (" " + padRight)
-        );
+      format(
+        out,
+        "%s%.2f%s\n",
+        padLeft.equals("") ? padLeft : (padLeft + " "),
+        this.get(r, this.indexCompliment(r)),
+        padRight.equals("") ? padRight : (" " + padRight)
+      );
     }
-
-    return out;
   }
 }
@@ -1,14 +1,16 @@
 package pl.edu.mimuw.matrix.implementations;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
 import pl.edu.mimuw.matrix.IDoubleMatrix;
-import pl.edu.mimuw.matrix.MatrixCellValue;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
 import pl.edu.mimuw.matrix.Shape;
 
 // row, column
 public class Full extends BaseMatrix {
 
-  private double[][] data;
+  private final double[] values;
+  private final int leadingDimension;
   private final Shape shape;
 
   public Full(double[][] data) {
@@ -24,8 +26,73 @@ public class Full extends BaseMatrix {
       assert row.length == assumedRow;
     }
 
-    this.data = data;
-    this.shape = Shape.matrix(this.data.length, this.data[0].length);
+    this.shape = Shape.matrix(data.length, assumedRow);
+    this.leadingDimension = assumedRow;
+    this.values = new double[data.length * assumedRow];
+
+    for (int r = 0; r < data.length; r++) {
+      System.arraycopy(data[r], 0, this.values, r * assumedRow, assumedRow);
+    }
+  }
+
+  // Row-major values, row r starting at r * shape.columns
+  public Full(Shape shape, double[] values) {
+    this(shape, values, shape.columns);
+  }
+
+  // Row-major values, row r starting at r * leadingDimension
+  public Full(Shape shape, double[] values, int leadingDimension) {
+    assert shape != null;
+    assert values != null;
+    assert leadingDimension >= shape.columns;
+
+    long required = (long) (shape.rows - 1) * leadingDimension + shape.columns;
+
+    assert values.length >= required;
+
+    this.shape = shape;
+    this.values = values;
+    this.leadingDimension = leadingDimension;
+  }
+
+  double[] values() {
+    return this.values;
+  }
+
+  int leadingDimension() {
+    return this.leadingDimension;
+  }
+
+  int offset(int row) {
+    return row * this.leadingDimension;
+  }
+
+  Full transpose() {
+    double[] data = new double[this.shape.rows * this.shape.columns];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      int base = this.offset(r);
+
+      for (int c = 0; c < this.shape.columns; c++) {
+        data[c * this.shape.rows + r] = this.values[base + c];
+      }
+    }
+
+    return new Full(this.shape.transposed(), data);
+  }
+
+  // Shares the values until the first write, unless they have gaps
+  public MutableFull toMutable() {
+    int size = this.shape.rows * this.shape.columns;
+
+    if (
+      this.leadingDimension == this.shape.columns &&
+      this.values.length == size
+    ) {
+      return MutableFull.sharing(this.shape, this.values);
+    }
+
+    return MutableFull.copyOf(this);
   }
 
   @Override
@@ -35,6 +102,13 @@ public class Full extends BaseMatrix {
     return other.plusLeft(this);
   }
 
+  @Override
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
+
+    return other.minusLeft(this);
+  }
+
   @Override
   public IDoubleMatrix plus(double scalar) {
     if (scalar == 0) {
@@ -42,23 +116,21 @@ public class Full extends BaseMatrix {
     }
 
     int nnz = 0;
-    double[][] data = new double[this.shape.rows][this.shape.columns];
+    double[] data = new double[this.shape.rows * this.shape.columns];
 
     for (int i = 0; i < this.shape.rows; i++) {
-      for (int j = 0; j < this.shape.columns; j++) {
-        data[i][j] = this.get(i, j) + scalar;
-
-        if (data[i][j] != 0) {
-          nnz++;
-        }
-      }
+      nnz +=
+        DenseKernels.INSTANCE.add(
+          this.values,
+          this.offset(i),
+          scalar,
+          data,
+          i * this.shape.columns,
+          this.shape.columns
+        );
     }
 
-    if (nnz == 0) {
-      return new Zero(this.shape);
-    }
-
-    return new Full(data);
+    return ResultFormat.dense(this.shape, data, nnz);
   }
 
   @Override
@@ -79,23 +151,21 @@ public class Full extends BaseMatrix {
     }
 
     int nnz = 0;
-    double[][] data = new double[this.shape.rows][this.shape.columns];
+    double[] data = new double[this.shape.rows * this.shape.columns];
 
     for (int i = 0; i < this.shape.rows; i++) {
-      for (int j = 0; j < this.shape.columns; j++) {
-        data[i][j] = this.get(i, j) * scalar;
-
-        if (data[i][j] != 0) {
-          nnz++;
-        }
-      }
-    }
-
-    if (nnz == 0) {
-      return new Zero(this.shape);
+      nnz +=
+        DenseKernels.INSTANCE.multiply(
+          this.values,
+          this.offset(i),
+          scalar,
+          data,
+          i * this.shape.columns,
+          this.shape.columns
+        );
     }
 
-    return new Full(data);
+    return ResultFormat.dense(this.shape, data, nnz);
   }
 
   private IDoubleMatrix plusLeftGeneric(IDoubleMatrix other) {
@@ -114,25 +184,74 @@ public class Full extends BaseMatrix {
     assert (0 <= row && row < shape.rows);
     assert (0 <= column && column < shape.columns);
 
-    return data[row][column];
+    return this.values[this.offset(row) + column];
   }
 
   @Override
-  public double[][] data() {
-    return this.data;
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    for (int r = 0; r < this.shape.rows; r++) {
+      this.forEachInRow(r, consumer);
+    }
   }
 
   @Override
-  public double normOne() {
-    double max = 0;
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.shape.rows;
+
+    int base = this.offset(row);
 
     for (int c = 0; c < this.shape.columns; c++) {
-      double sum = 0;
+      if (this.values[base + c] != 0) {
+        consumer.accept(row, c, this.values[base + c]);
+      }
+    }
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert 0 <= column && column < this.shape.columns;
 
-      for (int r = 0; r < this.shape.rows; r++) {
-        sum += Math.abs(this.get(r, c));
+    for (int r = 0; r < this.shape.rows; r++) {
+      double v = this.values[this.offset(r) + column];
+
+      if (v != 0) {
+        consumer.accept(r, column, v);
       }
+    }
+  }
+
+  @Override
+  public double[][] data() {
+    double[][] data = new double[this.shape.rows][];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      data[r] = Arrays.copyOfRange(
+        this.values,
+        this.offset(r),
+        this.offset(r) + this.shape.columns
+      );
+    }
+
+    return data;
+  }
+
+  @Override
+  public double normOne() {
+    double[] sums = new double[this.shape.columns];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      DenseKernels.INSTANCE.accumulateAbs(
+        this.values,
+        this.offset(r),
+        sums,
+        0,
+        this.shape.columns
+      );
+    }
 
+    double max = 0;
+
+    for (double sum : sums) {
       max = Math.max(sum, max);
     }
 
@@ -144,11 +263,11 @@ public class Full extends BaseMatrix {
     double max = 0;
 
     for (int r = 0; r < this.shape.rows; r++) {
-      double sum = 0;
-
-      for (int c = 0; c < this.shape.columns; c++) {
-        sum += Math.abs(this.get(r, c));
-      }
+      double sum = DenseKernels.INSTANCE.sumAbs(
+        this.values,
+        this.offset(r),
+        this.shape.columns
+      );
 
       max = Math.max(sum, max);
     }
@@ -161,9 +280,12 @@ public class Full extends BaseMatrix {
     double sum = 0;
 
     for (int r = 0; r < this.shape.rows; r++) {
-      for (int c = 0; c < this.shape.columns; c++) {
-        sum += Math.abs(Math.pow(this.get(r, c), 2));
-      }
+      sum +=
+        DenseKernels.INSTANCE.sumSquares(
+          this.values,
+          this.offset(r),
+          this.shape.columns
+        );
     }
 
     return Math.sqrt(sum);
@@ -185,23 +307,46 @@ public class Full extends BaseMatrix {
     assert other.shape.equals(this.shape);
 
     int nnz = 0;
-    double[][] data = new double[this.shape.rows][this.shape.columns];
+    double[] data = new double[this.shape.rows * this.shape.columns];
 
     for (int i = 0; i < this.shape.rows; i++) {
-      for (int j = 0; j < this.shape.columns; j++) {
-        data[i][j] = this.get(i, j) + other.get(i, j);
-
-        if (data[i][j] != 0) {
-          nnz++;
-        }
-      }
+      nnz +=
+        DenseKernels.INSTANCE.add(
+          other.values,
+          other.offset(i),
+          this.values,
+          this.offset(i),
+          data,
+          i * this.shape.columns,
+          this.shape.columns
+        );
     }
 
-    if (nnz == 0) {
-      return new Zero(this.shape);
+    return ResultFormat.dense(this.shape, data, nnz);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Full other) {
+    assert other != null;
+    assert other.shape.equals(this.shape);
+
+    int nnz = 0;
+    double[] data = new double[this.shape.rows * this.shape.columns];
+
+    for (int i = 0; i < this.shape.rows; i++) {
+      nnz +=
+        DenseKernels.INSTANCE.subtract(
+          other.values,
+          other.offset(i),
+          this.values,
+          this.offset(i),
+          data,
+          i * this.shape.columns,
+          this.shape.columns
+        );
     }
 
-    return new Full(data);
+    return ResultFormat.dense(this.shape, data, nnz);
   }
 
   @Override
@@ -237,36 +382,46 @@ public class Full extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    ArrayList<MatrixCellValue> values = new ArrayList<>();
-    MatrixCellValue[] data = new MatrixCellValue[0];
-
-    for (int r = 0; r < other.shape().rows; r++) {
-      int ri = other.getRowPointer(r);
-
-      for (int c = 0; c < this.shape.columns; c++) {
-        double sum = 0;
-
-        for (
-          int ptr = other.getRowStart(ri);
-          ptr < other.getRowEnd(ri);
-          ptr++
-        ) {
-          sum += other.getValue(ptr) * this.get(other.getColumn(ptr), c);
+    Shape newShape = Shape.matrix(other.shape().rows, this.shape.columns);
+    int blocks = MatrixParallelism.rowBlocks(
+      other.ner,
+      (long) other.nnz * this.shape.columns
+    );
+    CSRBuilder[] parts = new CSRBuilder[blocks];
+
+    // Blocks run over the non-empty rows of other
+    MatrixParallelism.forEachRowBlock(
+      other.ner,
+      blocks,
+      (block, from, to) -> {
+        CSRBuilder builder = new CSRBuilder(newShape);
+        double[] sums = new double[this.shape.columns];
+
+        for (int ri = from; ri < to; ri++) {
+          for (
+            int ptr = other.getRowStart(ri);
+            ptr < other.getRowEnd(ri);
+            ptr++
+          ) {
+            double scalar = other.getValue(ptr);
+            int base = this.offset(other.getColumn(ptr));
+
+            for (int c = 0; c < sums.length; c++) {
+              sums[c] += scalar * this.values[base + c];
+            }
+          }
+
+          for (int c = 0; c < sums.length; c++) {
+            builder.add(other.getRowNumber(ri), c, sums[c]);
+            sums[c] = 0;
+          }
         }
 
-        if (sum != 0) {
-          values.add(new MatrixCellValue(r, c, sum));
-        }
+        parts[block] = builder;
       }
-    }
+    );
 
-    Shape newShape = Shape.matrix(other.shape().rows, this.shape.columns);
-
-    if (values.size() == 0) {
-      return new Zero(newShape);
-    }
-
-    return new CSR(newShape, values.toArray(data));
+    return ResultFormat.sparse(CSRBuilder.concatenate(newShape, parts));
   }
 
   @Override
@@ -274,21 +429,65 @@ public class Full extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    double[][] data = new double[other.shape.rows][this.shape.columns];
-
-    for (int r = 0; r < other.shape.rows; r++) {
-      for (int c = 0; c < this.shape.columns; c++) {
-        double sum = 0;
-
-        for (int k = 0; k < this.shape.rows; k++) {
-          sum += other.get(r, k) * this.get(k, c);
-        }
+    int columns = this.shape.columns;
+    double[] data = new double[other.shape.rows * columns];
+
+    Gemm.multiply(
+      other.shape.rows,
+      columns,
+      this.shape.rows,
+      1,
+      other.values,
+      0,
+      other.leadingDimension,
+      this.values,
+      0,
+      this.leadingDimension,
+      data,
+      0,
+      columns
+    );
+
+    return ResultFormat.dense(Shape.matrix(other.shape.rows, columns), data);
+  }
 
-        data[r][c] = sum;
-      }
+  @Override
+  public void multiplyAddInto(
+    double alpha,
+    IDoubleMatrix other,
+    double beta,
+    double[] c
+  ) {
+    if (!(other instanceof Full)) {
+      super.multiplyAddInto(alpha, other, beta, c);
+
+      return;
     }
 
-    return new Full(data);
+    Full right = (Full) other;
+
+    assert this.shape.columns == right.shape.rows;
+    assert c.length == this.shape.rows * right.shape.columns;
+
+    scale(c, beta);
+
+    if (alpha != 0) {
+      Gemm.multiply(
+        this.shape.rows,
+        right.shape.columns,
+        this.shape.columns,
+        alpha,
+        this.values,
+        0,
+        this.leadingDimension,
+        right.values,
+        0,
+        right.leadingDimension,
+        c,
+        0,
+        right.shape.columns
+      );
+    }
   }
 
   @Override
@@ -296,7 +495,8 @@ public class Full extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    double[][] data = new double[other.shape().rows][this.shape.columns];
+    int columns = this.shape.columns;
+    double[] data = new double[other.shape().rows * columns];
 
     for (int r = 0; r < other.shape().rows; r++) {
       double scalar = other.get(r, other.indexCompliment(r));
@@ -305,12 +505,14 @@ public class Full extends BaseMatrix {
         continue;
       }
 
-      for (int c = 0; c < this.shape.columns; c++) {
-        data[r][c] = scalar * this.get(other.indexCompliment(r), c);
+      int from = this.offset(other.indexCompliment(r));
+
+      for (int c = 0; c < columns; c++) {
+        data[r * columns + c] = scalar * this.values[from + c];
       }
     }
 
-    return new Full(data);
+    return ResultFormat.dense(Shape.matrix(other.shape().rows, columns), data);
   }
 
   @Override
@@ -326,7 +528,9 @@ public class Full extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    double[][] data = new double[other.shape().rows][this.shape.columns];
+    // this is a single row, so row r of the product is other[r] * this
+    int columns = this.shape.columns;
+    double[] data = new double[other.shape().rows * columns];
 
     for (int r = 0; r < other.shape().rows; r++) {
       double scalar = other.get(r, 0);
@@ -335,26 +539,27 @@ public class Full extends BaseMatrix {
         continue;
       }
 
-      for (int c = 0; c < this.shape.columns; c++) {
-        data[r][c] = scalar * this.get(r, c);
+      for (int c = 0; c < columns; c++) {
+        data[r * columns + c] = scalar * this.values[c];
       }
     }
 
-    return new Full(data);
+    return ResultFormat.dense(Shape.matrix(other.shape().rows, columns), data);
   }
 
   @Override
-  public String toString() {
-    String out = super.toString();
+  public void writeTo(Appendable out) throws IOException {
+    this.writeHeader(out);
 
     for (int r = 0; r < this.shape.rows; r++) {
+      int offset = this.offset(r);
+
       for (int c = 0; c < this.shape.columns - 1; c++) {
-        out += this.get(r, c) + " ";
+        out.append(Double.toString(this.values[offset + c])).append(' ');
       }
 
-      out += this.get(r, this.shape.columns - 1) + "\n";
+      out.append(Double.toString(this.values[offset + this.shape.columns - 1]));
+      out.append('\n');
     }
-
-    return out;
   }
 }
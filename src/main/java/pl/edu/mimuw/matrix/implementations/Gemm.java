@@ -0,0 +1,238 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.util.Arrays;
+
+// Dense C += alpha * A * B on row-major buffers.
+//
+// The product is split into KC x NC panels of B and MC x KC blocks of A,
+// both packed into contiguous micro-panels (NR columns of B, MR rows of A,
+// interleaved along k), so the micro-kernel streams both operands with unit
+// stride while keeping an MR x NR tile of C in registers. Panels that do not
+// fill a whole micro-panel are padded with zeros. alpha is applied while
+// packing A, so it costs nothing in the kernel.
+final class Gemm {
+
+  // Fixed by DenseKernels.gemm4x4
+  private static final int MR = 4;
+  private static final int NR = 4;
+  private static final int KC = 256;
+  private static final int MC = 128;
+  private static final int NC = 2048;
+
+  // Below this many multiply-adds packing costs more than it saves
+  private static final long BLOCKING_THRESHOLD = 32L * 32 * 32;
+
+  private Gemm() {}
+
+  static void multiply(
+    int m,
+    int n,
+    int k,
+    double alpha,
+    double[] a,
+    int aOffset,
+    int lda,
+    double[] b,
+    int bOffset,
+    int ldb,
+    double[] c,
+    int cOffset,
+    int ldc
+  ) {
+    if ((long) m * n * k < BLOCKING_THRESHOLD) {
+      multiplySimple(
+        m,
+        n,
+        k,
+        alpha,
+        a,
+        aOffset,
+        lda,
+        b,
+        bOffset,
+        ldb,
+        c,
+        cOffset,
+        ldc
+      );
+
+      return;
+    }
+
+    // Row blocks of C are independent; each packs its own panels
+    MatrixParallelism.forEachRowBlockOfWork(
+      m,
+      (long) m * n * k,
+      (block, from, to) ->
+        multiplyBlocked(
+          to - from,
+          n,
+          k,
+          alpha,
+          a,
+          aOffset + from * lda,
+          lda,
+          b,
+          bOffset,
+          ldb,
+          c,
+          cOffset + from * ldc,
+          ldc
+        )
+    );
+  }
+
+  private static void multiplyBlocked(
+    int m,
+    int n,
+    int k,
+    double alpha,
+    double[] a,
+    int aOffset,
+    int lda,
+    double[] b,
+    int bOffset,
+    int ldb,
+    double[] c,
+    int cOffset,
+    int ldc
+  ) {
+    double[] packedA = new double[roundUp(Math.min(m, MC), MR) * KC];
+    double[] packedB = new double[roundUp(Math.min(n, NC), NR) * KC];
+    double[] tile = new double[MR * NR];
+    DenseKernels kernels = DenseKernels.INSTANCE;
+
+    for (int jc = 0; jc < n; jc += NC) {
+      int nc = Math.min(NC, n - jc);
+
+      for (int pc = 0; pc < k; pc += KC) {
+        int kc = Math.min(KC, k - pc);
+
+        packB(kc, nc, b, bOffset + pc * ldb + jc, ldb, packedB);
+
+        for (int ic = 0; ic < m; ic += MC) {
+          int mc = Math.min(MC, m - ic);
+
+          packA(mc, kc, alpha, a, aOffset + ic * lda + pc, lda, packedA);
+
+          for (int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+
+            for (int ir = 0; ir < mc; ir += MR) {
+              int mr = Math.min(MR, mc - ir);
+              int cAt = cOffset + (ic + ir) * ldc + jc + jr;
+
+              if (mr == MR && nr == NR) {
+                kernels.gemm4x4(
+                  kc,
+                  packedA,
+                  ir * kc,
+                  packedB,
+                  jr * kc,
+                  c,
+                  cAt,
+                  ldc
+                );
+              } else {
+                Arrays.fill(tile, 0);
+                kernels.gemm4x4(
+                  kc,
+                  packedA,
+                  ir * kc,
+                  packedB,
+                  jr * kc,
+                  tile,
+                  0,
+                  NR
+                );
+
+                for (int i = 0; i < mr; i++) {
+                  for (int j = 0; j < nr; j++) {
+                    c[cAt + i * ldc + j] += tile[i * NR + j];
+                  }
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static int roundUp(int value, int multiple) {
+    return (value + multiple - 1) / multiple * multiple;
+  }
+
+  // Micro-panel p holds rows p*MR .. p*MR+MR-1, stored k-major
+  private static void packA(
+    int mc,
+    int kc,
+    double alpha,
+    double[] a,
+    int offset,
+    int lda,
+    double[] packed
+  ) {
+    for (int ir = 0; ir < mc; ir += MR) {
+      int mr = Math.min(MR, mc - ir);
+      int to = ir * kc;
+
+      for (int p = 0; p < kc; p++) {
+        for (int i = 0; i < MR; i++) {
+          packed[to++] = i < mr ? alpha * a[offset + (ir + i) * lda + p] : 0;
+        }
+      }
+    }
+  }
+
+  // Micro-panel p holds columns p*NR .. p*NR+NR-1, stored k-major
+  private static void packB(
+    int kc,
+    int nc,
+    double[] b,
+    int offset,
+    int ldb,
+    double[] packed
+  ) {
+    for (int jr = 0; jr < nc; jr += NR) {
+      int nr = Math.min(NR, nc - jr);
+      int to = jr * kc;
+
+      for (int p = 0; p < kc; p++) {
+        int from = offset + p * ldb + jr;
+
+        for (int j = 0; j < NR; j++) {
+          packed[to++] = j < nr ? b[from + j] : 0;
+        }
+      }
+    }
+  }
+
+  private static void multiplySimple(
+    int m,
+    int n,
+    int k,
+    double alpha,
+    double[] a,
+    int aOffset,
+    int lda,
+    double[] b,
+    int bOffset,
+    int ldb,
+    double[] c,
+    int cOffset,
+    int ldc
+  ) {
+    DenseKernels kernels = DenseKernels.INSTANCE;
+
+    for (int i = 0; i < m; i++) {
+      int cRow = cOffset + i * ldc;
+
+      for (int p = 0; p < k; p++) {
+        double scalar = alpha * a[aOffset + i * lda + p];
+
+        kernels.axpy(scalar, b, bOffset + p * ldb, c, cRow, n);
+      }
+    }
+  }
+}
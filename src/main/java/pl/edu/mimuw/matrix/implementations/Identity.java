@@ -1,8 +1,8 @@
 package pl.edu.mimuw.matrix.implementations;
 
-import java.util.Arrays;
+import java.io.IOException;
 import pl.edu.mimuw.matrix.IDoubleMatrix;
-import pl.edu.mimuw.matrix.MatrixCellValue;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
 import pl.edu.mimuw.matrix.Shape;
 
 public class Identity extends BaseMatrix {
@@ -49,29 +49,45 @@ public class Identity extends BaseMatrix {
     return other.plusLeft(this);
   }
 
+  @Override
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
+
+    return other.minusLeft(this);
+  }
+
   @Override
   public IDoubleMatrix plus(double scalar) {
-    if (Math.abs(scalar) == 0) {
-      return this;
-    }
+    return ShiftedMatrix.shift(this, scalar);
+  }
+
+  @Override
+  public double get(int row, int column) {
+    assert 0 <= row && row < this.size;
+    assert 0 <= column && column < this.size;
 
-    double[][] values = new double[this.size][this.size];
+    return row == column ? 1 : 0;
+  }
 
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
     for (int i = 0; i < this.size; i++) {
-      for (int j = 0; j < this.size; j++) {
-        values[i][j] = scalar + this.get(i, j);
-      }
+      consumer.accept(i, i, 1);
     }
-
-    return new Full(values);
   }
 
   @Override
-  public double get(int row, int column) {
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
     assert 0 <= row && row < this.size;
+
+    consumer.accept(row, row, 1);
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
     assert 0 <= column && column < this.size;
 
-    return row == column ? 1 : 0;
+    consumer.accept(column, column, 1);
   }
 
   @Override
@@ -118,32 +134,29 @@ public class Identity extends BaseMatrix {
     assert other != null;
     assert other.shape().equals(this.shape());
 
-    int index = 0;
-    MatrixCellValue[] values = new MatrixCellValue[other.nnz + 1 + this.size];
+    CSRBuilder builder = new CSRBuilder(this.shape(), other.nnz + this.size);
 
     for (int r = 0; r < this.size; r++) {
       boolean visitedDiagonal = false;
       int ri = other.getRowPointer(r);
 
       for (int i = other.getRowStart(ri); i < other.getRowEnd(ri); i++) {
-        double value = other.getValue(i);
+        int c = other.getColumn(i);
 
-        if (other.getColumn(i) == r) {
+        if (!visitedDiagonal && c >= r) {
+          builder.add(r, r, 1);
           visitedDiagonal = true;
-          value += this.get(r, r);
         }
 
-        values[index++] = new MatrixCellValue(r, other.getColumn(i), value);
+        builder.add(r, c, other.getValue(i));
       }
 
       if (!visitedDiagonal) {
-        values[index++] = new MatrixCellValue(r, r, this.get(r, r));
+        builder.add(r, r, 1);
       }
     }
 
-    values = Arrays.copyOf(values, index);
-
-    return new CSR(this.shape(), values);
+    return builder.build();
   }
 
   @Override
@@ -151,15 +164,21 @@ public class Identity extends BaseMatrix {
     assert other != null;
     assert other.shape().equals(this.shape());
 
-    double[][] values = new double[this.size][this.size];
+    double[] values = new double[this.size * this.size];
 
     for (int i = 0; i < this.size; i++) {
-      for (int j = 0; j < this.size; j++) {
-        values[i][j] = other.get(i, j) + this.get(i, j);
-      }
+      System.arraycopy(
+        other.values(),
+        other.offset(i),
+        values,
+        i * this.size,
+        this.size
+      );
+
+      values[i * this.size + i] += 1;
     }
 
-    return new Full(values);
+    return new Full(this.shape(), values);
   }
 
   @Override
@@ -187,23 +206,22 @@ public class Identity extends BaseMatrix {
     assert other != null;
     assert other.shape().equals(this.shape());
 
-    MatrixCellValue[] values = new MatrixCellValue[this.size * 2];
-    int index = 0;
+    CSRBuilder builder = new CSRBuilder(this.shape(), this.size * 2);
 
     for (int i = 0; i < this.size; i++) {
-      int iOther = this.size - i - 1;
+      int iOther = other.indexCompliment(i);
+      double value = other.get(i, iOther);
 
-      if (i == iOther) {
-        values[index++] =
-          new MatrixCellValue(i, i, this.get(i, i) + other.get(iOther, iOther));
+      if (i <= iOther) {
+        builder.add(i, i, 1);
+        builder.add(i, iOther, value);
       } else {
-        values[index++] = new MatrixCellValue(i, i, this.get(i, i));
-        values[index++] =
-          new MatrixCellValue(iOther, iOther, other.get(iOther, iOther));
+        builder.add(i, iOther, value);
+        builder.add(i, i, 1);
       }
     }
 
-    return new CSR(this.shape(), values);
+    return builder.build();
   }
 
   @Override
@@ -287,22 +305,20 @@ public class Identity extends BaseMatrix {
   }
 
   @Override
-  public String toString() {
-    String out = super.toString();
+  public void writeTo(Appendable out) throws IOException {
+    this.writeHeader(out);
 
     for (int r = 0; r < this.size; r++) {
       String padLeft = padding(this.leftDistance(r));
       String padRight = padding(this.rightDistance(r));
 
-      out +=
-        String.format(
-          "%s%.2f%s\n",
-          padLeft.equals("") ? padLeft : (padLeft + " "),
-          this.get(r, r),
-          padRight.equals("") ? padRight : (" " + padRight)
-        );
+      format(
+        out,
+        "%s%.2f%s\n",
+        padLeft.equals("") ? padLeft : (padLeft + " "),
+        this.get(r, r),
+        padRight.equals("") ? padRight : (" " + padRight)
+      );
     }
-
-    return out;
   }
 }
@@ -0,0 +1,539 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
+import pl.edu.mimuw.matrix.Shape;
+
+// A matrix expression evaluated on first use (get, data, norms, traversal).
+//
+// A node is either a product of two operands or an affine combination
+// sum(coefficients[i] * terms[i]) + constant. plus, minus and scalar times
+// flatten into a single affine node, so a chain of them is evaluated in one
+// pass over its operands, and a chain of products is multiplied in the order
+// MatrixChain picks. Operands are eager matrices or other nodes, which may be
+// shared; every node keeps its value once evaluated.
+public final class LazyMatrix extends BaseMatrix {
+
+  private final Shape shape;
+
+  // Affine nodes
+  private final IDoubleMatrix[] terms;
+  private final double[] coefficients;
+  private final double constant;
+
+  // Product nodes
+  private final IDoubleMatrix left;
+  private final IDoubleMatrix right;
+
+  private IDoubleMatrix value;
+
+  private LazyMatrix(
+    Shape shape,
+    IDoubleMatrix[] terms,
+    double[] coefficients,
+    double constant
+  ) {
+    this.shape = shape;
+    this.terms = terms;
+    this.coefficients = coefficients;
+    this.constant = constant;
+    this.left = null;
+    this.right = null;
+  }
+
+  private LazyMatrix(IDoubleMatrix left, IDoubleMatrix right) {
+    assert left.shape().multiplicationCompatible(right.shape());
+
+    this.shape = left.shape().multiplicationShape(right.shape());
+    this.terms = null;
+    this.coefficients = null;
+    this.constant = 0;
+    this.left = left;
+    this.right = right;
+  }
+
+  public static LazyMatrix of(IDoubleMatrix matrix) {
+    assert matrix != null;
+
+    if (matrix instanceof LazyMatrix) {
+      return (LazyMatrix) matrix;
+    }
+
+    return new LazyMatrix(
+      matrix.shape(),
+      new IDoubleMatrix[] { matrix },
+      new double[] { 1 },
+      0
+    );
+  }
+
+  private boolean isProduct() {
+    return this.left != null;
+  }
+
+  // A node that is only a scaled operand, unwrapped into its operand
+  private static IDoubleMatrix core(IDoubleMatrix m) {
+    if (m instanceof LazyMatrix) {
+      LazyMatrix lazy = (LazyMatrix) m;
+
+      if (!lazy.isProduct() && lazy.terms.length == 1 && lazy.constant == 0) {
+        return lazy.terms[0];
+      }
+    }
+
+    return m;
+  }
+
+  private static double scale(IDoubleMatrix m) {
+    return core(m) == m ? 1 : ((LazyMatrix) m).coefficients[0];
+  }
+
+  private static LazyMatrix product(IDoubleMatrix left, IDoubleMatrix right) {
+    assert left != null && right != null;
+
+    // (a * A)(b * B) = ab * AB, so the operands are never scaled
+    LazyMatrix product = new LazyMatrix(core(left), core(right));
+    double scale = scale(left) * scale(right);
+
+    return scale == 1 ? product : combine(product, scale, null, 0);
+  }
+
+  // a * aScale + b * bScale, with b optional
+  private static LazyMatrix combine(
+    IDoubleMatrix a,
+    double aScale,
+    IDoubleMatrix b,
+    double bScale
+  ) {
+    assert a != null;
+    assert b == null || a.shape().equals(b.shape());
+
+    int capacity = termCount(a) + (b == null ? 0 : termCount(b));
+    IDoubleMatrix[] terms = new IDoubleMatrix[capacity];
+    double[] coefficients = new double[capacity];
+    double[] constant = new double[1];
+
+    int count = addTerms(a, aScale, terms, coefficients, 0, constant);
+
+    if (b != null) {
+      count = addTerms(b, bScale, terms, coefficients, count, constant);
+    }
+
+    return new LazyMatrix(
+      a.shape(),
+      Arrays.copyOf(terms, count),
+      Arrays.copyOf(coefficients, count),
+      constant[0]
+    );
+  }
+
+  private static int termCount(IDoubleMatrix m) {
+    if (m instanceof LazyMatrix && !((LazyMatrix) m).isProduct()) {
+      return ((LazyMatrix) m).terms.length;
+    }
+
+    return 1;
+  }
+
+  // Appends the terms of m, scaled, merging repeated operands
+  private static int addTerms(
+    IDoubleMatrix m,
+    double scale,
+    IDoubleMatrix[] terms,
+    double[] coefficients,
+    int count,
+    double[] constant
+  ) {
+    if (m instanceof LazyMatrix && !((LazyMatrix) m).isProduct()) {
+      LazyMatrix lazy = (LazyMatrix) m;
+
+      for (int i = 0; i < lazy.terms.length; i++) {
+        count =
+          addTerm(
+            lazy.terms[i],
+            scale * lazy.coefficients[i],
+            terms,
+            coefficients,
+            count
+          );
+      }
+
+      constant[0] += scale * lazy.constant;
+
+      return count;
+    }
+
+    return addTerm(m, scale, terms, coefficients, count);
+  }
+
+  private static int addTerm(
+    IDoubleMatrix term,
+    double coefficient,
+    IDoubleMatrix[] terms,
+    double[] coefficients,
+    int count
+  ) {
+    for (int i = 0; i < count; i++) {
+      if (terms[i] == term) {
+        coefficients[i] += coefficient;
+
+        return count;
+      }
+    }
+
+    terms[count] = term;
+    coefficients[count] = coefficient;
+
+    return count + 1;
+  }
+
+  private static IDoubleMatrix evaluate(IDoubleMatrix m) {
+    return m instanceof LazyMatrix ? ((LazyMatrix) m).evaluate() : m;
+  }
+
+  // The eager value of this expression, computed once
+  public IDoubleMatrix evaluate() {
+    if (this.value == null) {
+      this.value =
+        this.isProduct()
+          ? this.evaluateProduct()
+          : this.evaluateAffine();
+    }
+
+    return this.value;
+  }
+
+  // The operands of the chain of unevaluated products below m
+  private static void addFactors(IDoubleMatrix m, List<IDoubleMatrix> factors) {
+    if (m instanceof LazyMatrix) {
+      LazyMatrix lazy = (LazyMatrix) m;
+
+      if (lazy.isProduct() && lazy.value == null) {
+        addFactors(lazy.left, factors);
+        addFactors(lazy.right, factors);
+
+        return;
+      }
+    }
+
+    factors.add(evaluate(m));
+  }
+
+  private IDoubleMatrix evaluateProduct() {
+    List<IDoubleMatrix> factors = new ArrayList<>();
+
+    addFactors(this.left, factors);
+    addFactors(this.right, factors);
+
+    return MatrixChain.multiply(factors);
+  }
+
+  // A product of two operands not evaluated yet, which an affine node can
+  // accumulate straight into its own result
+  private static boolean isPendingProduct(IDoubleMatrix m) {
+    if (!(m instanceof LazyMatrix)) {
+      return false;
+    }
+
+    LazyMatrix lazy = (LazyMatrix) m;
+
+    return (
+      lazy.isProduct() &&
+      lazy.value == null &&
+      !isPendingChain(lazy.left) &&
+      !isPendingChain(lazy.right)
+    );
+  }
+
+  private static boolean isPendingChain(IDoubleMatrix m) {
+    return (
+      m instanceof LazyMatrix &&
+      ((LazyMatrix) m).isProduct() &&
+      ((LazyMatrix) m).value == null
+    );
+  }
+
+  private IDoubleMatrix evaluateAffine() {
+    boolean dense = this.constant != 0;
+
+    for (IDoubleMatrix term : this.terms) {
+      if (!isPendingProduct(term)) {
+        IDoubleMatrix value = evaluate(term);
+
+        dense |= value instanceof Full || value instanceof RowMatrix;
+      }
+    }
+
+    if (!dense) {
+      // Sparse and structured operands keep their structure through the
+      // eager kernels, and their intermediates are as small as they are
+      IDoubleMatrix sum = evaluate(this.terms[0]).times(this.coefficients[0]);
+
+      for (int i = 1; i < this.terms.length; i++) {
+        sum = sum.plus(evaluate(this.terms[i]).times(this.coefficients[i]));
+      }
+
+      return sum;
+    }
+
+    // One pass over every operand into a single buffer. Products of two
+    // operands are multiply-added into it, so alpha * A * B + beta * C never
+    // materializes A * B.
+    double[] data = new double[this.shape.rows * this.shape.columns];
+
+    if (this.constant != 0) {
+      Arrays.fill(data, this.constant);
+    }
+
+    for (int i = 0; i < this.terms.length; i++) {
+      double coefficient = this.coefficients[i];
+
+      if (coefficient == 0) {
+        continue;
+      }
+
+      if (isPendingProduct(this.terms[i])) {
+        LazyMatrix product = (LazyMatrix) this.terms[i];
+
+        evaluate(product.left)
+          .multiplyAddInto(coefficient, evaluate(product.right), 1, data);
+      } else {
+        addScaled(evaluate(this.terms[i]), coefficient, data);
+      }
+    }
+
+    return new Full(this.shape, data);
+  }
+
+  @Override
+  public Shape shape() {
+    return this.shape;
+  }
+
+  @Override
+  public IDoubleMatrix times(double scalar) {
+    return combine(this, scalar, null, 0);
+  }
+
+  @Override
+  public IDoubleMatrix times(IDoubleMatrix other) {
+    return product(this, other);
+  }
+
+  @Override
+  public IDoubleMatrix multiplyAdd(
+    double alpha,
+    IDoubleMatrix other,
+    double beta,
+    IDoubleMatrix addend
+  ) {
+    return combine(product(this, other), alpha, addend, beta);
+  }
+
+  @Override
+  public IDoubleMatrix plus(double scalar) {
+    LazyMatrix sum = combine(this, 1, null, 0);
+
+    return new LazyMatrix(
+      this.shape,
+      sum.terms,
+      sum.coefficients,
+      sum.constant + scalar
+    );
+  }
+
+  @Override
+  public IDoubleMatrix plus(IDoubleMatrix other) {
+    return combine(this, 1, other, 1);
+  }
+
+  @Override
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    return combine(this, 1, other, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minus(double scalar) {
+    return this.plus(-scalar);
+  }
+
+  // A single cell of an affine node is read without evaluating the node
+  @Override
+  public double get(int row, int column) {
+    assert 0 <= row && row < this.shape.rows;
+    assert 0 <= column && column < this.shape.columns;
+
+    if (this.value != null || this.isProduct()) {
+      return this.evaluate().get(row, column);
+    }
+
+    double sum = this.constant;
+
+    for (int i = 0; i < this.terms.length; i++) {
+      sum += this.coefficients[i] * this.terms[i].get(row, column);
+    }
+
+    return sum;
+  }
+
+  @Override
+  public double[][] data() {
+    return this.evaluate().data();
+  }
+
+  @Override
+  public double normOne() {
+    return this.evaluate().normOne();
+  }
+
+  @Override
+  public double normInfinity() {
+    return this.evaluate().normInfinity();
+  }
+
+  @Override
+  public double frobeniusNorm() {
+    return this.evaluate().frobeniusNorm();
+  }
+
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    this.evaluate().forEachNonZero(consumer);
+  }
+
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    this.evaluate().forEachInRow(row, consumer);
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    this.evaluate().forEachInColumn(column, consumer);
+  }
+
+  // An eager operand on the left keeps the expression lazy
+
+  @Override
+  public IDoubleMatrix timesLeft(Zero other) {
+    return product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSR other) {
+    return product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSC other) {
+    return product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Full other) {
+    return product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Diagonal other) {
+    return product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Vector other) {
+    return product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(AntiDiagonal other) {
+    return product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Identity other) {
+    return combine(other, 1, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Zero other) {
+    return combine(other, 1, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSR other) {
+    return combine(other, 1, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSC other) {
+    return combine(other, 1, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Full other) {
+    return combine(other, 1, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Diagonal other) {
+    return combine(other, 1, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Vector other) {
+    return combine(other, 1, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(AntiDiagonal other) {
+    return combine(other, 1, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Identity other) {
+    return combine(other, 1, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Zero other) {
+    return combine(other, 1, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSR other) {
+    return combine(other, 1, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSC other) {
+    return combine(other, 1, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Full other) {
+    return combine(other, 1, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Diagonal other) {
+    return combine(other, 1, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Vector other) {
+    return combine(other, 1, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(AntiDiagonal other) {
+    return combine(other, 1, this, -1);
+  }
+
+  @Override
+  public void writeTo(Appendable out) throws IOException {
+    this.evaluate().writeTo(out);
+  }
+}
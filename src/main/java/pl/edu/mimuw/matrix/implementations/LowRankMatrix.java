@@ -0,0 +1,558 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.util.Arrays;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
+import pl.edu.mimuw.matrix.Shape;
+
+// U * V^T for a rows x rank U and a columns x rank V, both row-major, so
+// that cell (r, c) is row r of U dotted with row c of V.
+//
+// Storage is O((rows + columns) * rank). Products only transform one factor
+// (X * U or B^T * V), sums of low-rank terms concatenate the factors, and
+// the Frobenius norm comes from the rank x rank Gram matrices of the
+// factors. RowMatrix and ColumnMatrix are the rank-1 cases.
+public final class LowRankMatrix extends BaseMatrix {
+
+  private final Shape shape;
+  private final int rank;
+  private final double[] u;
+  private final double[] v;
+
+  public LowRankMatrix(Shape shape, int rank, double[] u, double[] v) {
+    assert shape != null && u != null && v != null;
+    assert rank > 0;
+    assert u.length == shape.rows * rank;
+    assert v.length == shape.columns * rank;
+
+    this.shape = shape;
+    this.rank = rank;
+    this.u = u;
+    this.v = v;
+  }
+
+  // u * v^T
+  public static LowRankMatrix outer(double[] u, double[] v) {
+    assert u != null && v != null;
+
+    return new LowRankMatrix(Shape.matrix(u.length, v.length), 1, u, v);
+  }
+
+  // Once the factors would take as much memory as the cells, the cells are
+  // stored instead
+  static IDoubleMatrix of(Shape shape, int rank, double[] u, double[] v) {
+    if (rank == 0) {
+      return new Zero(shape);
+    }
+
+    long cells = (long) shape.rows * shape.columns;
+
+    if ((long) (shape.rows + shape.columns) * rank < cells) {
+      return new LowRankMatrix(shape, rank, u, v);
+    }
+
+    return ResultFormat.dense(
+      shape,
+      new LowRankMatrix(shape, rank, u, v).values()
+    );
+  }
+
+  public int rank() {
+    return this.rank;
+  }
+
+  @Override
+  public Shape shape() {
+    return this.shape;
+  }
+
+  // Row r of the product into row
+  private void row(int r, double[] row) {
+    int k = this.rank;
+
+    for (int c = 0; c < this.shape.columns; c++) {
+      double sum = 0;
+
+      for (int j = 0; j < k; j++) {
+        sum += this.u[r * k + j] * this.v[c * k + j];
+      }
+
+      row[c] = sum;
+    }
+  }
+
+  private double[] values() {
+    int columns = this.shape.columns;
+    double[] values = new double[this.shape.rows * columns];
+    double[] row = new double[columns];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      this.row(r, row);
+      System.arraycopy(row, 0, values, r * columns, columns);
+    }
+
+    return values;
+  }
+
+  // The factors of a and sign * b side by side, n rows each
+  private static double[] join(
+    double[] a,
+    int aRank,
+    double[] b,
+    int bRank,
+    int n,
+    double sign
+  ) {
+    int rank = aRank + bRank;
+    double[] joined = new double[n * rank];
+
+    for (int i = 0; i < n; i++) {
+      System.arraycopy(a, i * aRank, joined, i * rank, aRank);
+
+      for (int j = 0; j < bRank; j++) {
+        joined[i * rank + aRank + j] = sign * b[i * bRank + j];
+      }
+    }
+
+    return joined;
+  }
+
+  private static double[] constant(int length, double value) {
+    double[] values = new double[length];
+
+    Arrays.fill(values, value);
+
+    return values;
+  }
+
+  private IDoubleMatrix join(LowRankMatrix other, double sign) {
+    assert other.shape.equals(this.shape);
+
+    return of(
+      this.shape,
+      this.rank + other.rank,
+      join(this.u, this.rank, other.u, other.rank, this.shape.rows, sign),
+      join(this.v, this.rank, other.v, other.rank, this.shape.columns, 1)
+    );
+  }
+
+  // A constant is the rank-1 term scalar * 1 * 1^T
+  private static LowRankMatrix constant(Shape shape, double scalar) {
+    return new LowRankMatrix(
+      shape,
+      1,
+      constant(shape.rows, scalar),
+      constant(shape.columns, 1)
+    );
+  }
+
+  // The low-rank form of other, or null when it has none
+  private static LowRankMatrix factored(IDoubleMatrix other) {
+    if (other instanceof LowRankMatrix) {
+      return (LowRankMatrix) other;
+    }
+
+    if (other instanceof RowMatrix) {
+      return ((RowMatrix) other).toLowRank();
+    }
+
+    if (other instanceof ShiftedMatrix) {
+      ShiftedMatrix shifted = (ShiftedMatrix) other;
+
+      if (shifted.base() instanceof Zero) {
+        return constant(other.shape(), shifted.shift());
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public IDoubleMatrix times(IDoubleMatrix other) {
+    assert other != null;
+    assert this.shape.columns == other.shape().rows;
+
+    LowRankMatrix factored = factored(other);
+
+    if (factored != null) {
+      return this.timesFactored(factored);
+    }
+
+    // U V^T B = U (B^T V)^T
+    int k = this.rank;
+    Shape newShape = Shape.matrix(this.shape.rows, other.shape().columns);
+    double[] v = new double[newShape.columns * k];
+
+    other.forEachNonZero(
+      (i, c, value) ->
+        DenseKernels.INSTANCE.axpy(value, this.v, i * k, v, c * k, k)
+    );
+
+    return of(newShape, k, this.u, v);
+  }
+
+  // U1 V1^T U2 V2^T = U1 (V1^T U2) V2^T, where the rank x rank middle
+  // factor is folded into the side that keeps the smaller rank
+  private IDoubleMatrix timesFactored(LowRankMatrix other) {
+    int k1 = this.rank;
+    int k2 = other.rank;
+    double[] middle = new double[k1 * k2];
+
+    for (int i = 0; i < this.shape.columns; i++) {
+      for (int j = 0; j < k1; j++) {
+        DenseKernels.INSTANCE.axpy(
+          this.v[i * k1 + j],
+          other.u,
+          i * k2,
+          middle,
+          j * k2,
+          k2
+        );
+      }
+    }
+
+    Shape newShape = Shape.matrix(this.shape.rows, other.shape.columns);
+
+    if (k2 <= k1) {
+      double[] u = new double[this.shape.rows * k2];
+
+      for (int r = 0; r < this.shape.rows; r++) {
+        for (int j = 0; j < k1; j++) {
+          DenseKernels.INSTANCE.axpy(
+            this.u[r * k1 + j],
+            middle,
+            j * k2,
+            u,
+            r * k2,
+            k2
+          );
+        }
+      }
+
+      return of(newShape, k2, u, other.v);
+    }
+
+    double[] v = new double[other.shape.columns * k1];
+
+    for (int c = 0; c < other.shape.columns; c++) {
+      for (int j = 0; j < k1; j++) {
+        double sum = 0;
+
+        for (int l = 0; l < k2; l++) {
+          sum += middle[j * k2 + l] * other.v[c * k2 + l];
+        }
+
+        v[c * k1 + j] = sum;
+      }
+    }
+
+    return of(newShape, k1, this.u, v);
+  }
+
+  @Override
+  public IDoubleMatrix times(double scalar) {
+    if (scalar == 0) {
+      return new Zero(this.shape);
+    }
+
+    if (scalar == 1) {
+      return this;
+    }
+
+    double[] u = this.u.clone();
+
+    DenseKernels.INSTANCE.multiply(u, 0, scalar, u, 0, u.length);
+
+    return new LowRankMatrix(this.shape, this.rank, u, this.v);
+  }
+
+  @Override
+  public IDoubleMatrix plus(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().equals(this.shape);
+
+    if (other instanceof Zero) {
+      return this;
+    }
+
+    LowRankMatrix factored = factored(other);
+
+    if (factored != null) {
+      return this.join(factored, 1);
+    }
+
+    return this.plusDense(other);
+  }
+
+  @Override
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().equals(this.shape);
+
+    if (other instanceof Zero) {
+      return this;
+    }
+
+    LowRankMatrix factored = factored(other);
+
+    if (factored != null) {
+      return this.join(factored, -1);
+    }
+
+    return difference(this, other);
+  }
+
+  @Override
+  public IDoubleMatrix plus(double scalar) {
+    if (scalar == 0) {
+      return this;
+    }
+
+    return this.join(constant(this.shape, scalar), 1);
+  }
+
+  @Override
+  public double get(int row, int column) {
+    assert 0 <= row && row < this.shape.rows;
+    assert 0 <= column && column < this.shape.columns;
+
+    double sum = 0;
+
+    for (int j = 0; j < this.rank; j++) {
+      sum += this.u[row * this.rank + j] * this.v[column * this.rank + j];
+    }
+
+    return sum;
+  }
+
+  private void forEachInRow(
+    int r,
+    double[] row,
+    IMatrixCellConsumer consumer
+  ) {
+    this.row(r, row);
+
+    for (int c = 0; c < row.length; c++) {
+      if (row[c] != 0) {
+        consumer.accept(r, c, row[c]);
+      }
+    }
+  }
+
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    double[] row = new double[this.shape.columns];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      this.forEachInRow(r, row, consumer);
+    }
+  }
+
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.shape.rows;
+
+    this.forEachInRow(row, new double[this.shape.columns], consumer);
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert 0 <= column && column < this.shape.columns;
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      double value = this.get(r, column);
+
+      if (value != 0) {
+        consumer.accept(r, column, value);
+      }
+    }
+  }
+
+  @Override
+  public double[][] data() {
+    double[][] data = new double[this.shape.rows][this.shape.columns];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      this.row(r, data[r]);
+    }
+
+    return data;
+  }
+
+  // The absolute values of the cells do not factor, so the 1- and infinity
+  // norms read the product one row at a time: O(rows * columns * rank) time
+  // and O(columns) memory.
+
+  @Override
+  public double normOne() {
+    double[] row = new double[this.shape.columns];
+    double[] sums = new double[this.shape.columns];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      this.row(r, row);
+      DenseKernels.INSTANCE.accumulateAbs(row, 0, sums, 0, row.length);
+    }
+
+    double max = 0;
+
+    for (double sum : sums) {
+      max = Math.max(max, sum);
+    }
+
+    return max;
+  }
+
+  @Override
+  public double normInfinity() {
+    double[] row = new double[this.shape.columns];
+    double max = 0;
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      this.row(r, row);
+      max = Math.max(max, DenseKernels.INSTANCE.sumAbs(row, 0, row.length));
+    }
+
+    return max;
+  }
+
+  // The Gram matrix F^T F of an n x rank factor
+  private static double[] gram(double[] factor, int n, int rank) {
+    double[] gram = new double[rank * rank];
+
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < rank; j++) {
+        DenseKernels.INSTANCE.axpy(
+          factor[i * rank + j],
+          factor,
+          i * rank,
+          gram,
+          j * rank,
+          rank
+        );
+      }
+    }
+
+    return gram;
+  }
+
+  // ||U V^T||_F^2 = trace(U^T U V^T V)
+  @Override
+  public double frobeniusNorm() {
+    double[] left = gram(this.u, this.shape.rows, this.rank);
+    double[] right = gram(this.v, this.shape.columns, this.rank);
+    double sum = 0;
+
+    for (int i = 0; i < left.length; i++) {
+      sum += left[i] * right[i];
+    }
+
+    return Math.sqrt(Math.max(0, sum));
+  }
+
+  // other * U V^T = (other * U) V^T
+  private IDoubleMatrix timesLeftGeneric(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().columns == this.shape.rows;
+
+    int k = this.rank;
+    Shape newShape = Shape.matrix(other.shape().rows, this.shape.columns);
+    double[] u = new double[newShape.rows * k];
+
+    other.forEachNonZero(
+      (r, i, value) ->
+        DenseKernels.INSTANCE.axpy(value, this.u, i * k, u, r * k, k)
+    );
+
+    return of(newShape, k, u, this.v);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Zero other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSR other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSC other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Full other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Diagonal other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Vector other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(AntiDiagonal other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  // Sums with matrices of full rank fill every cell
+  private IDoubleMatrix plusDense(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().equals(this.shape);
+
+    double[] values = this.values();
+
+    addScaled(other, 1, values);
+
+    return ResultFormat.dense(this.shape, values);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Identity other) {
+    return this.plusDense(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Zero other) {
+    assert other != null;
+    assert other.shape().equals(this.shape);
+
+    return this;
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSR other) {
+    return this.plusDense(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSC other) {
+    return this.plusDense(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Full other) {
+    return this.plusDense(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Diagonal other) {
+    return this.plusDense(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Vector other) {
+    return this.plusDense(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(AntiDiagonal other) {
+    return this.plusDense(other);
+  }
+}
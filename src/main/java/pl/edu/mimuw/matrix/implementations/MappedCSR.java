@@ -0,0 +1,415 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
+import pl.edu.mimuw.matrix.Shape;
+
+// A CSR matrix whose arrays are read-only mappings of a file, so that it may
+// be larger than RAM. Traversal, norms and multiplyInto stream through the
+// file once, in order, and leave the caching to the OS page cache. Operations
+// with a sparse result work on a heap copy, see toCSR().
+//
+// The file is a CSR matrix in the MatrixFile format.
+public final class MappedCSR extends BaseMatrix {
+
+  public final int nnz;
+  public final int ner;
+  private final MappedDoubles value;
+  private final MappedInts column;
+  private final MappedInts row;
+  private final MappedInts rowPointer;
+  private final Shape shape;
+
+  MappedCSR(FileChannel channel, MatrixFile.Header header)
+    throws IOException {
+    if (header.nnz > Integer.MAX_VALUE) {
+      throw new IOException("matrix file: too many values for a MappedCSR");
+    }
+
+    this.shape = header.shape;
+    this.nnz = (int) header.nnz;
+    this.ner = header.groups;
+
+    long position = MatrixFile.HEADER_BYTES;
+
+    this.value = new MappedDoubles(channel, position, this.nnz);
+    position += (long) this.nnz * Double.BYTES;
+    this.column = new MappedInts(channel, position, this.nnz);
+    position += (long) this.nnz * Integer.BYTES;
+    this.row = new MappedInts(channel, position, this.ner + 1);
+    position += (long) (this.ner + 1) * Integer.BYTES;
+    this.rowPointer = new MappedInts(channel, position, this.ner);
+    position += (long) this.ner * Integer.BYTES;
+
+    if (channel.size() != position) {
+      throw new IOException(
+        "matrix file: " + channel.size() + " bytes, expected " + position
+      );
+    }
+  }
+
+  public static MappedCSR map(Path path) throws IOException {
+    assert path != null;
+
+    // The mappings stay valid after the channel is closed
+    try (FileChannel channel = FileChannel.open(path)) {
+      MatrixFile.Header header = MatrixFile.Header.read(channel);
+
+      header.expect(MatrixFile.CSR);
+
+      return new MappedCSR(channel, header);
+    }
+  }
+
+  // Writes the non-zero cells of any matrix in the format read by map(),
+  // without copying the matrix, see MatrixFile
+  public static void write(Path path, IDoubleMatrix matrix) throws IOException {
+    assert path != null && matrix != null;
+
+    try (FileChannel channel = MatrixFile.create(path)) {
+      MatrixFile.writeSparse(channel, matrix);
+    }
+  }
+
+  // Loads the whole matrix onto the heap, in one sequential pass
+  public CSR toCSR() {
+    return this.load(1);
+  }
+
+  private CSR load(double scale) {
+    double[] value = new double[this.nnz];
+    int[] column = new int[this.nnz];
+    int[] row = new int[this.ner + 1];
+    int[] rowPointer = new int[this.ner + 1];
+
+    this.value.copyTo(value);
+    this.column.copyTo(column);
+    this.row.copyTo(row);
+    this.rowPointer.copyTo(rowPointer);
+    rowPointer[this.ner] = this.shape.rows;
+
+    if (scale != 1) {
+      DenseKernels.INSTANCE.multiply(value, 0, scale, value, 0, this.nnz);
+    }
+
+    return new CSR(value, rowPointer, column, row, this.shape);
+  }
+
+  // Index of the non-empty row number r, or -1 if that row is empty
+  private int rowIndex(int r) {
+    int low = 0;
+    int high = this.ner - 1;
+
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int number = this.rowPointer.get(middle);
+
+      if (number < r) {
+        low = middle + 1;
+      } else if (number > r) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+
+    return -1;
+  }
+
+  // Position of column among the entries [from, to), or -1
+  private int find(int from, int to, int column) {
+    int low = from;
+    int high = to - 1;
+
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int c = this.column.get(middle);
+
+      if (c < column) {
+        low = middle + 1;
+      } else if (c > column) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+
+    return -1;
+  }
+
+  @Override
+  public Shape shape() {
+    return this.shape;
+  }
+
+  @Override
+  public double get(int row, int column) {
+    assert 0 <= row && row < this.shape.rows;
+    assert 0 <= column && column < this.shape.columns;
+
+    int ri = this.rowIndex(row);
+
+    if (ri < 0) {
+      return 0;
+    }
+
+    int ptr = this.find(this.row.get(ri), this.row.get(ri + 1), column);
+
+    return ptr < 0 ? 0 : this.value.get(ptr);
+  }
+
+  // y = this * x for a dense x, in one pass over the file. y is overwritten,
+  // including the rows that have no entries.
+  public void multiplyInto(double[] x, double[] y) {
+    assert x != null && y != null && x != y;
+    assert x.length == this.shape.columns;
+    assert y.length == this.shape.rows;
+
+    Arrays.fill(y, 0);
+
+    int ptr = 0;
+
+    for (int ri = 0; ri < this.ner; ri++) {
+      int end = this.row.get(ri + 1);
+      double sum = 0;
+
+      for (; ptr < end; ptr++) {
+        sum += this.value.get(ptr) * x[this.column.get(ptr)];
+      }
+
+      y[this.rowPointer.get(ri)] = sum;
+    }
+  }
+
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    int ptr = 0;
+
+    for (int ri = 0; ri < this.ner; ri++) {
+      int r = this.rowPointer.get(ri);
+      int end = this.row.get(ri + 1);
+
+      for (; ptr < end; ptr++) {
+        consumer.accept(r, this.column.get(ptr), this.value.get(ptr));
+      }
+    }
+  }
+
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.shape.rows;
+
+    int ri = this.rowIndex(row);
+
+    if (ri < 0) {
+      return;
+    }
+
+    for (int ptr = this.row.get(ri); ptr < this.row.get(ri + 1); ptr++) {
+      consumer.accept(row, this.column.get(ptr), this.value.get(ptr));
+    }
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert 0 <= column && column < this.shape.columns;
+
+    for (int ri = 0; ri < this.ner; ri++) {
+      int ptr = this.find(this.row.get(ri), this.row.get(ri + 1), column);
+
+      if (ptr >= 0) {
+        consumer.accept(this.rowPointer.get(ri), column, this.value.get(ptr));
+      }
+    }
+  }
+
+  @Override
+  public double[][] data() {
+    double[][] data = new double[this.shape.rows][this.shape.columns];
+
+    this.forEachNonZero((row, column, value) -> data[row][column] = value);
+
+    return data;
+  }
+
+  @Override
+  public double normOne() {
+    double[] columnSums = new double[this.shape.columns];
+
+    for (int ptr = 0; ptr < this.nnz; ptr++) {
+      columnSums[this.column.get(ptr)] += Math.abs(this.value.get(ptr));
+    }
+
+    double max = 0;
+
+    for (double sum : columnSums) {
+      max = Math.max(max, sum);
+    }
+
+    return max;
+  }
+
+  @Override
+  public double normInfinity() {
+    double max = 0;
+    int ptr = 0;
+
+    for (int ri = 0; ri < this.ner; ri++) {
+      int end = this.row.get(ri + 1);
+      double sum = 0;
+
+      for (; ptr < end; ptr++) {
+        sum += Math.abs(this.value.get(ptr));
+      }
+
+      max = Math.max(max, sum);
+    }
+
+    return max;
+  }
+
+  @Override
+  public double frobeniusNorm() {
+    double sum = 0;
+
+    for (int ptr = 0; ptr < this.nnz; ptr++) {
+      double value = this.value.get(ptr);
+
+      sum += value * value;
+    }
+
+    return Math.sqrt(sum);
+  }
+
+  @Override
+  public IDoubleMatrix times(double scalar) {
+    if (scalar == 0) {
+      return new Zero(this.shape);
+    }
+
+    return this.load(scalar);
+  }
+
+  @Override
+  public IDoubleMatrix plus(double scalar) {
+    return ShiftedMatrix.shift(this, scalar);
+  }
+
+  @Override
+  public IDoubleMatrix plus(IDoubleMatrix other) {
+    assert other != null;
+
+    return other.plusLeft(this.toCSR());
+  }
+
+  @Override
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
+
+    return other.minusLeft(this.toCSR());
+  }
+
+  // times(IDoubleMatrix) streams through this matrix's rows, see BaseMatrix
+
+  @Override
+  public IDoubleMatrix timesLeft(Zero other) {
+    return this.toCSR().timesLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSR other) {
+    return this.toCSR().timesLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Diagonal other) {
+    return this.toCSR().timesLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Vector other) {
+    return this.toCSR().timesLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(AntiDiagonal other) {
+    return this.toCSR().timesLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Identity other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Zero other) {
+    assert other != null;
+    assert other.shape().equals(this.shape);
+
+    return this;
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSR other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Full other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Diagonal other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Vector other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(AntiDiagonal other) {
+    return this.toCSR().plusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Identity other) {
+    return this.toCSR().minusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSR other) {
+    return this.toCSR().minusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSC other) {
+    return this.toCSR().minusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Full other) {
+    return this.toCSR().minusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Diagonal other) {
+    return this.toCSR().minusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Vector other) {
+    return this.toCSR().minusLeft(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(AntiDiagonal other) {
+    return this.toCSR().minusLeft(other);
+  }
+}
@@ -0,0 +1,55 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+// A read-only view of little-endian doubles in a file. One mapping holds at
+// most 2^31 - 1 bytes, so longer sections are mapped in chunks.
+final class MappedDoubles {
+
+  private static final int CHUNK_SHIFT = 27; // 1 GiB per mapping
+  private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+  private final DoubleBuffer[] chunks;
+
+  MappedDoubles(FileChannel channel, long position, int length)
+    throws IOException {
+    assert length >= 0;
+
+    this.chunks =
+      new DoubleBuffer[(int) (((long) length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+
+    for (int i = 0; i < this.chunks.length; i++) {
+      long first = (long) i << CHUNK_SHIFT;
+      long count = Math.min(1L << CHUNK_SHIFT, length - first);
+
+      this.chunks[i] =
+        channel
+          .map(
+            FileChannel.MapMode.READ_ONLY,
+            position + first * Double.BYTES,
+            count * Double.BYTES
+          )
+          .order(ByteOrder.LITTLE_ENDIAN)
+          .asDoubleBuffer();
+    }
+  }
+
+  double get(int i) {
+    return this.chunks[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK);
+  }
+
+  // Bulk copy of the whole view to the start of destination
+  void copyTo(double[] destination) {
+    int offset = 0;
+
+    for (DoubleBuffer chunk : this.chunks) {
+      int length = chunk.capacity();
+
+      chunk.get(0, destination, offset, length);
+      offset += length;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.util.ArrayList;
+import java.util.List;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.Shape;
+
+// The product of a chain of matrices, in the order of the fewest estimated
+// multiply-adds. Multiplying an m x k matrix of density dl by a k x n matrix
+// of density dr is estimated at m * k * n * dl * dr, and the product is
+// assumed to have density min(1, k * dl * dr). Identities are dropped and a
+// zero operand makes the whole product zero.
+public final class MatrixChain {
+
+  private final IDoubleMatrix[] operands;
+  private final double[][] cost;
+  private final double[][] density;
+  private final int[][] split;
+
+  private MatrixChain(IDoubleMatrix[] operands) {
+    int n = operands.length;
+
+    this.operands = operands;
+    this.cost = new double[n][n];
+    this.density = new double[n][n];
+    this.split = new int[n][n];
+
+    for (int i = 0; i < n; i++) {
+      this.density[i][i] = density(operands[i]);
+    }
+
+    // Classic O(n^3) dynamic programming over the chain's intervals
+    for (int length = 2; length <= n; length++) {
+      for (int i = 0; i + length <= n; i++) {
+        int j = i + length - 1;
+
+        this.cost[i][j] = Double.POSITIVE_INFINITY;
+
+        for (int k = i; k < j; k++) {
+          double rows = operands[i].shape().rows;
+          double inner = operands[k].shape().columns;
+          double columns = operands[j].shape().columns;
+          double overlap = this.density[i][k] * this.density[k + 1][j];
+          double cost =
+            this.cost[i][k] +
+            this.cost[k + 1][j] +
+            rows * inner * columns * overlap;
+
+          if (cost < this.cost[i][j]) {
+            this.cost[i][j] = cost;
+            this.density[i][j] = Math.min(1, inner * overlap);
+            this.split[i][j] = k;
+          }
+        }
+      }
+    }
+  }
+
+  public static IDoubleMatrix multiply(IDoubleMatrix... operands) {
+    assert operands != null && operands.length > 0;
+
+    return multiply(List.of(operands));
+  }
+
+  public static IDoubleMatrix multiply(List<? extends IDoubleMatrix> operands) {
+    assert operands != null && !operands.isEmpty();
+
+    Shape shape = operands.get(0).shape();
+
+    for (int i = 1; i < operands.size(); i++) {
+      assert shape.multiplicationCompatible(operands.get(i).shape());
+
+      shape = shape.multiplicationShape(operands.get(i).shape());
+    }
+
+    List<IDoubleMatrix> factors = new ArrayList<>(operands.size());
+
+    for (IDoubleMatrix operand : operands) {
+      assert operand != null;
+
+      if (operand instanceof Zero) {
+        return new Zero(shape);
+      }
+
+      if (!(operand instanceof Identity)) {
+        factors.add(operand);
+      }
+    }
+
+    if (factors.isEmpty()) {
+      return operands.get(0);
+    }
+
+    MatrixChain chain = new MatrixChain(factors.toArray(new IDoubleMatrix[0]));
+
+    return chain.multiply(0, factors.size() - 1);
+  }
+
+  // Estimated multiply-adds of the chosen order, for comparison in tests and
+  // benchmarks
+  public static double estimatedCost(List<? extends IDoubleMatrix> operands) {
+    assert operands != null && !operands.isEmpty();
+
+    MatrixChain chain = new MatrixChain(operands.toArray(new IDoubleMatrix[0]));
+
+    return chain.cost[0][operands.size() - 1];
+  }
+
+  private IDoubleMatrix multiply(int i, int j) {
+    if (i == j) {
+      return this.operands[i];
+    }
+
+    int k = this.split[i][j];
+
+    return this.multiply(i, k).times(this.multiply(k + 1, j));
+  }
+
+  // Fraction of cells a product has to touch
+  private static double density(IDoubleMatrix m) {
+    Shape shape = m.shape();
+    double cells = (double) shape.rows * shape.columns;
+
+    if (m instanceof Zero) {
+      return 0;
+    }
+    if (m instanceof CSR) {
+      return ((CSR) m).nnz / cells;
+    }
+    if (m instanceof CSC) {
+      return ((CSC) m).nnz / cells;
+    }
+    if (m instanceof Vector) {
+      return ((Vector) m).nnz() / cells;
+    }
+    if (m instanceof Diagonal || m instanceof Identity) {
+      return 1.0 / shape.rows;
+    }
+
+    return 1;
+  }
+}
@@ -0,0 +1,464 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.Shape;
+
+// Binary matrix files: a header, then the arrays of the stored implementation,
+// raw and little-endian, so that reading one maps the file instead of parsing
+// it.
+//
+// The 32-byte header holds the magic number, the type tag, rows and columns as
+// ints, the number of stored values as a long, the number of non-empty rows
+// (CSR) or columns (CSC) and a padding int. The arrays that follow are
+//   ZERO, IDENTITY           none
+//   DIAGONAL, ANTI_DIAGONAL  values[nnz]
+//   ROW, COLUMN              values[nnz], the repeated row or column
+//   VECTOR                   value[nnz], index[nnz]
+//   FULL                     values[rows * columns], row-major
+//   CSR                      value[nnz], column[nnz], row[ner + 1],
+//                            rowPointer[ner]
+//   CSC                      the CSR arrays of its transpose
+// Double arrays come first, so all of them are 8-byte aligned in the file.
+public final class MatrixFile {
+
+  static final int MAGIC = 0x54414d50; // "PMAT"
+  static final int HEADER_BYTES = 32;
+
+  static final int ZERO = 0;
+  static final int IDENTITY = 1;
+  static final int DIAGONAL = 2;
+  static final int ANTI_DIAGONAL = 3;
+  static final int VECTOR = 4;
+  static final int FULL = 5;
+  static final int CSR = 6;
+  static final int CSC = 7;
+  static final int ROW = 8;
+  static final int COLUMN = 9;
+
+  private MatrixFile() {}
+
+  static final class Header {
+
+    final int tag;
+    final Shape shape;
+    final long nnz;
+    final int groups;
+
+    private Header(int tag, Shape shape, long nnz, int groups) {
+      this.tag = tag;
+      this.shape = shape;
+      this.nnz = nnz;
+      this.groups = groups;
+    }
+
+    // Files come from outside the program, so everything that sizes or
+    // indexes the arrays is checked before any of them is mapped
+    static Header read(FileChannel channel) throws IOException {
+      if (channel.size() < HEADER_BYTES) {
+        throw new IOException("not a matrix file: shorter than its header");
+      }
+
+      MappedByteBuffer bytes = channel.map(
+        FileChannel.MapMode.READ_ONLY,
+        0,
+        HEADER_BYTES
+      );
+
+      bytes.order(ByteOrder.LITTLE_ENDIAN);
+
+      if (bytes.getInt(0) != MAGIC) {
+        throw new IOException("not a matrix file: bad magic number");
+      }
+
+      int tag = bytes.getInt(4);
+      int rows = bytes.getInt(8);
+      int columns = bytes.getInt(12);
+      long nnz = bytes.getLong(16);
+      int groups = bytes.getInt(24);
+
+      if (rows <= 0 || columns <= 0) {
+        throw new IOException(
+          "matrix file: bad dimensions " + rows + " x " + columns
+        );
+      }
+
+      Header header = new Header(
+        tag,
+        Shape.matrix(rows, columns),
+        nnz,
+        groups
+      );
+      long size = HEADER_BYTES + header.arrayBytes();
+
+      if (channel.size() != size) {
+        throw new IOException(
+          "matrix file: " + channel.size() + " bytes, expected " + size
+        );
+      }
+
+      return header;
+    }
+
+    // Bytes of the arrays after the header, once the counts are checked
+    // against the shape
+    private long arrayBytes() throws IOException {
+      Shape shape = this.shape;
+      long cells = (long) shape.rows * shape.columns;
+      boolean square = shape.rows == shape.columns;
+
+      switch (this.tag) {
+        case ZERO:
+          return this.counts(this.nnz == 0, 0);
+        case IDENTITY:
+          return this.counts(square && this.nnz == shape.rows, 0);
+        case DIAGONAL:
+        case ANTI_DIAGONAL:
+          return this.counts(square && this.nnz == shape.rows, Double.BYTES);
+        case ROW:
+          return this.counts(this.nnz == shape.columns, Double.BYTES);
+        case COLUMN:
+          return this.counts(this.nnz == shape.rows, Double.BYTES);
+        case VECTOR:
+          return this.counts(
+            shape.columns == 1 && 0 <= this.nnz && this.nnz <= shape.rows,
+            Double.BYTES + Integer.BYTES
+          );
+        case FULL:
+          return this.counts(this.nnz == cells, Double.BYTES);
+        case CSR:
+        case CSC:
+          {
+            int lines = this.tag == CSR ? shape.rows : shape.columns;
+
+            this.counts(
+              0 <= this.nnz &&
+              this.nnz <= Math.min(cells, Integer.MAX_VALUE) &&
+              0 <= this.groups &&
+              this.groups <= Math.min(lines, this.nnz),
+              0
+            );
+
+            return (
+              this.nnz * (Double.BYTES + Integer.BYTES) +
+              (2L * this.groups + 1) * Integer.BYTES
+            );
+          }
+        default:
+          throw new IOException("matrix file: unknown type " + this.tag);
+      }
+    }
+
+    private long counts(boolean valid, int bytesPerValue) throws IOException {
+      if (!valid) {
+        throw new IOException(
+          "matrix file: " +
+          this.nnz +
+          " values do not fit type " +
+          this.tag +
+          " of " +
+          this.shape.rows +
+          " x " +
+          this.shape.columns
+        );
+      }
+
+      return this.nnz * bytesPerValue;
+    }
+
+    void expect(int tag) throws IOException {
+      if (this.tag != tag) {
+        throw new IOException(
+          "matrix file: type " + this.tag + ", expected " + tag
+        );
+      }
+    }
+
+    // A CSC is stored as the CSR of its transpose
+    Header transposed() {
+      Shape shape = this.shape.transposed();
+
+      return new Header(this.tag, shape, this.nnz, this.groups);
+    }
+  }
+
+  private static void writeHeader(
+    ChannelOutput output,
+    int tag,
+    Shape shape,
+    long nnz,
+    int groups
+  ) throws IOException {
+    output.putInt(MAGIC);
+    output.putInt(tag);
+    output.putInt(shape.rows);
+    output.putInt(shape.columns);
+    output.putLong(nnz);
+    output.putInt(groups);
+    output.putInt(0);
+  }
+
+  static FileChannel create(Path path) throws IOException {
+    return FileChannel.open(
+      path,
+      StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE,
+      StandardOpenOption.TRUNCATE_EXISTING
+    );
+  }
+
+  public static void write(Path path, IDoubleMatrix matrix) throws IOException {
+    assert path != null;
+
+    try (FileChannel channel = create(path)) {
+      write(channel, matrix);
+    }
+  }
+
+  // Replaces the contents of the file with matrix, in the layout of its type.
+  // Implementations without a layout of their own are stored as CSR, and
+  // lazy matrices are evaluated first.
+  public static void write(FileChannel channel, IDoubleMatrix matrix)
+    throws IOException {
+    assert channel != null && matrix != null;
+
+    channel.truncate(0);
+
+    ChannelOutput output = new ChannelOutput(channel, 0);
+    Shape shape = matrix.shape();
+
+    if (matrix instanceof LazyMatrix) {
+      write(channel, ((LazyMatrix) matrix).evaluate());
+
+      return;
+    } else if (matrix instanceof Zero) {
+      writeHeader(output, ZERO, shape, 0, 0);
+    } else if (matrix instanceof Identity) {
+      writeHeader(output, IDENTITY, shape, shape.rows, 0);
+    } else if (matrix instanceof Diagonal) {
+      double[] values = ((Diagonal) matrix).values;
+      int tag = matrix instanceof AntiDiagonal ? ANTI_DIAGONAL : DIAGONAL;
+
+      writeHeader(output, tag, shape, values.length, 0);
+      output.putDoubles(values, 0, values.length);
+    } else if (matrix instanceof RowMatrix) {
+      double[] values = ((RowMatrix) matrix).values;
+      int tag = matrix instanceof ColumnMatrix ? COLUMN : ROW;
+
+      writeHeader(output, tag, shape, values.length, 0);
+      output.putDoubles(values, 0, values.length);
+    } else if (matrix instanceof Vector) {
+      Vector vector = (Vector) matrix;
+      int nnz = vector.nnz();
+
+      writeHeader(output, VECTOR, shape, nnz, 0);
+      output.putDoubles(vector.values(), 0, nnz);
+      output.putInts(vector.indices(), 0, nnz);
+    } else if (matrix instanceof CSR) {
+      writeArrays(output, CSR, shape, (CSR) matrix);
+    } else if (matrix instanceof CSC) {
+      writeArrays(output, CSC, shape, ((CSC) matrix).transpose());
+    } else if (matrix instanceof Full || matrix instanceof OffHeapFull) {
+      writeDense(output, matrix);
+    } else {
+      writeSparse(channel, matrix);
+
+      return;
+    }
+
+    output.flush();
+  }
+
+  private static void writeArrays(
+    ChannelOutput output,
+    int tag,
+    Shape shape,
+    CSR matrix
+  ) throws IOException {
+    writeHeader(output, tag, shape, matrix.nnz, matrix.ner);
+    output.putDoubles(matrix.values(), 0, matrix.nnz);
+    output.putInts(matrix.columns(), 0, matrix.nnz);
+    output.putInts(matrix.rowStarts(), 0, matrix.ner + 1);
+    output.putInts(matrix.rowNumbers(), 0, matrix.ner);
+  }
+
+  // Any matrix as FULL, one row at a time
+  static void writeDense(ChannelOutput output, IDoubleMatrix matrix)
+    throws IOException {
+    Shape shape = matrix.shape();
+    double[] row = new double[shape.columns];
+
+    writeHeader(output, FULL, shape, (long) shape.rows * shape.columns, 0);
+
+    for (int r = 0; r < shape.rows; r++) {
+      Arrays.fill(row, 0);
+      OffHeapFull.addRow(matrix, r, 1, row);
+      output.putDoubles(row, 0, row.length);
+    }
+  }
+
+  // The non-zero cells of any matrix as CSR. The matrix is traversed twice,
+  // once to size the arrays and once to write all of them at their offsets,
+  // so it is never copied.
+  static void writeSparse(FileChannel channel, IDoubleMatrix matrix)
+    throws IOException {
+    Shape shape = matrix.shape();
+    int[] sizes = new int[2]; // nnz, ner
+
+    for (int r = 0; r < shape.rows; r++) {
+      int nnz = sizes[0];
+
+      matrix.forEachInRow(r, (cellRow, column, value) -> sizes[0]++);
+
+      if (sizes[0] > nnz) {
+        sizes[1]++;
+      }
+    }
+
+    int nnz = sizes[0];
+    int ner = sizes[1];
+    long columnAt = HEADER_BYTES + (long) nnz * Double.BYTES;
+    long rowAt = columnAt + (long) nnz * Integer.BYTES;
+    long rowPointerAt = rowAt + (long) (ner + 1) * Integer.BYTES;
+
+    ChannelOutput values = new ChannelOutput(channel, 0);
+    ChannelOutput columns = new ChannelOutput(channel, columnAt);
+    ChannelOutput rows = new ChannelOutput(channel, rowAt);
+    ChannelOutput rowPointers = new ChannelOutput(channel, rowPointerAt);
+    int[] written = new int[1];
+
+    writeHeader(values, CSR, shape, nnz, ner);
+
+    try {
+      for (int r = 0; r < shape.rows; r++) {
+        int start = written[0];
+
+        matrix.forEachInRow(
+          r,
+          (cellRow, column, value) -> {
+            try {
+              values.putDouble(value);
+              columns.putInt(column);
+              written[0]++;
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          }
+        );
+
+        if (written[0] > start) {
+          rows.putInt(start);
+          rowPointers.putInt(r);
+        }
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    assert written[0] == nnz;
+
+    rows.putInt(nnz);
+    values.flush();
+    columns.flush();
+    rows.flush();
+    rowPointers.flush();
+  }
+
+  // Reads a matrix onto the heap. The arrays are bulk-copied out of the
+  // mapped file, with no per-value decoding.
+  public static IDoubleMatrix read(Path path) throws IOException {
+    assert path != null;
+
+    try (FileChannel channel = FileChannel.open(path)) {
+      return load(channel, Header.read(channel));
+    }
+  }
+
+  // Maps a matrix without copying its arrays: FULL into an OffHeapFull of the
+  // arena, CSR into a MappedCSR. The other types hold O(rows + columns)
+  // values and are read as by read().
+  public static IDoubleMatrix map(Path path, OffHeapArena arena)
+    throws IOException {
+    assert path != null && arena != null;
+
+    // The mappings stay valid after the channel is closed
+    try (FileChannel channel = FileChannel.open(path)) {
+      Header header = Header.read(channel);
+
+      switch (header.tag) {
+        case FULL:
+          return arena.map(channel, header);
+        case CSR:
+          return new MappedCSR(channel, header);
+        default:
+          return load(channel, header);
+      }
+    }
+  }
+
+  private static IDoubleMatrix load(FileChannel channel, Header header)
+    throws IOException {
+    if (header.nnz > Integer.MAX_VALUE) {
+      throw new IOException("matrix file: too large to read, use map()");
+    }
+
+    Shape shape = header.shape;
+    int nnz = (int) header.nnz;
+    long position = HEADER_BYTES;
+
+    switch (header.tag) {
+      case ZERO:
+        return new Zero(shape);
+      case IDENTITY:
+        return new Identity(shape.rows);
+      case DIAGONAL:
+        return new Diagonal(doubles(channel, position, nnz));
+      case ANTI_DIAGONAL:
+        return new AntiDiagonal(doubles(channel, position, nnz));
+      case FULL:
+        return new Full(shape, doubles(channel, position, nnz));
+      case ROW:
+        return new RowMatrix(shape, doubles(channel, position, nnz));
+      case COLUMN:
+        return new ColumnMatrix(shape, doubles(channel, position, nnz));
+      case VECTOR:
+        {
+          // Room for the sentinel
+          double[] value = new double[nnz + 1];
+          int[] index = new int[nnz + 1];
+
+          new MappedDoubles(channel, position, nnz).copyTo(value);
+          position += (long) nnz * Double.BYTES;
+          new MappedInts(channel, position, nnz).copyTo(index);
+          index[nnz] = shape.rows;
+
+          return new Vector(value, index);
+        }
+      case CSR:
+        return new MappedCSR(channel, header).toCSR();
+      case CSC:
+        return new MappedCSR(channel, header.transposed()).toCSR().transpose();
+      default:
+        throw new IOException("matrix file: unknown type " + header.tag);
+    }
+  }
+
+  private static double[] doubles(
+    FileChannel channel,
+    long position,
+    int length
+  ) throws IOException {
+    double[] values = new double[length];
+
+    new MappedDoubles(channel, position, length).copyTo(values);
+
+    return values;
+  }
+}
@@ -0,0 +1,640 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.Shape;
+
+// Matrix Market coordinate files (.mtx), read straight into CSR arrays.
+//
+// The reader makes two passes over the file: the first counts the entries of
+// every row, the second stores each entry at its place in the CSR arrays, so
+// apart from the arrays themselves it allocates one int per row. Numbers are
+// parsed from the bytes of the read buffer, with no String per token. Rows
+// that are not sorted by column are sorted, repeated cells are summed and
+// zeros are dropped. Symmetric and skew-symmetric files are expanded, and the
+// entries of pattern files are 1.
+public final class MatrixMarket {
+
+  private static final String BANNER = "%%MatrixMarket";
+
+  private MatrixMarket() {}
+
+  public static CSR read(Path path) throws IOException {
+    assert path != null;
+
+    try (FileChannel channel = FileChannel.open(path)) {
+      Input input = new Input(channel);
+      String[] banner = input.line().trim().toLowerCase().split("\\s+");
+
+      if (banner.length != 5 || !banner[0].equals(BANNER.toLowerCase())) {
+        throw new IOException("Matrix Market: line 1 is not a banner");
+      }
+
+      checkBanner(banner[1], "object", "matrix");
+      checkBanner(banner[2], "format", "coordinate");
+      checkBanner(banner[3], "field", "real", "integer", "pattern");
+      checkBanner(
+        banner[4],
+        "symmetry",
+        "general",
+        "symmetric",
+        "skew-symmetric"
+      );
+
+      boolean pattern = banner[3].equals("pattern");
+      boolean mirrored = !banner[4].equals("general");
+      double mirrorSign = banner[4].equals("skew-symmetric") ? -1 : 1;
+
+      while (input.peekNonSpace() == '%') {
+        input.line();
+      }
+
+      int rows = input.nextInt();
+      int columns = input.nextInt();
+      long entries = input.nextLong();
+
+      if (rows <= 0 || columns <= 0 || entries < 0) {
+        throw new IOException(
+          "Matrix Market: bad size line " + rows + " " + columns + " " + entries
+        );
+      }
+
+      Shape shape = Shape.matrix(rows, columns);
+      long dataStart = input.position();
+
+      // Entries per row at start[row + 1]
+      int[] start = new int[shape.rows + 1];
+
+      for (long k = 0; k < entries; k++) {
+        int r = input.nextInt() - 1;
+        int c = input.nextInt() - 1;
+
+        // The second pass trusts the indices checked here
+        if (r < 0 || r >= shape.rows || c < 0 || c >= shape.columns) {
+          throw new IOException(
+            "Matrix Market: entry " +
+            (k + 1) +
+            " at (" +
+            (r + 1) +
+            ", " +
+            (c + 1) +
+            ") is outside " +
+            shape.rows +
+            " x " +
+            shape.columns
+          );
+        }
+
+        if (!pattern) {
+          input.skipToken();
+        }
+
+        start[r + 1]++;
+
+        if (mirrored && r != c) {
+          start[c + 1]++;
+        }
+      }
+
+      long nnz = 0;
+
+      for (int r = 0; r < shape.rows; r++) {
+        nnz += start[r + 1];
+        start[r + 1] = (int) Math.min(nnz, Integer.MAX_VALUE);
+      }
+
+      if (nnz >= Integer.MAX_VALUE) {
+        throw new IOException("Matrix Market: too many entries for a CSR");
+      }
+
+      int[] column = new int[(int) nnz];
+      double[] value = new double[(int) nnz];
+
+      // start[r] is the next free slot of row r while filling, which leaves
+      // it at the start of row r + 1
+      input.seek(dataStart);
+
+      for (long k = 0; k < entries; k++) {
+        int r = input.nextInt() - 1;
+        int c = input.nextInt() - 1;
+        double v = pattern ? 1 : input.nextDouble();
+        int ptr = start[r]++;
+
+        column[ptr] = c;
+        value[ptr] = v;
+
+        if (mirrored && r != c) {
+          ptr = start[c]++;
+          column[ptr] = r;
+          value[ptr] = mirrorSign * v;
+        }
+      }
+
+      System.arraycopy(start, 0, start, 1, shape.rows);
+      start[0] = 0;
+
+      return compact(shape, start, column, value);
+    }
+  }
+
+  private static void checkBanner(
+    String word,
+    String field,
+    String... supported
+  ) throws IOException {
+    if (!Arrays.asList(supported).contains(word)) {
+      throw new IOException(
+        "Matrix Market: unsupported " + field + " '" + word + "' in the banner"
+      );
+    }
+  }
+
+  // Sorts every row, sums repeated cells and drops zeros in place, then
+  // builds the arrays of the non-empty rows
+  private static CSR compact(
+    Shape shape,
+    int[] start,
+    int[] column,
+    double[] value
+  ) {
+    int to = 0;
+    int ner = 0;
+
+    for (int r = 0; r < shape.rows; r++) {
+      int from = start[r];
+      int end = start[r + 1];
+      int rowStart = to;
+
+      sortRow(column, value, from, end);
+
+      for (int ptr = from; ptr < end; ptr++) {
+        if (to > rowStart && column[to - 1] == column[ptr]) {
+          value[to - 1] += value[ptr];
+        } else {
+          column[to] = column[ptr];
+          value[to] = value[ptr];
+          to++;
+        }
+      }
+
+      int kept = rowStart;
+
+      for (int ptr = rowStart; ptr < to; ptr++) {
+        if (value[ptr] != 0) {
+          column[kept] = column[ptr];
+          value[kept] = value[ptr];
+          kept++;
+        }
+      }
+
+      to = kept;
+      start[r] = rowStart;
+
+      if (to > rowStart) {
+        ner++;
+      }
+    }
+
+    start[shape.rows] = to;
+
+    int[] row = new int[ner + 1];
+    int[] rowPointer = new int[ner + 1];
+    int ri = 0;
+
+    for (int r = 0; r < shape.rows; r++) {
+      if (start[r + 1] > start[r]) {
+        row[ri] = start[r];
+        rowPointer[ri] = r;
+        ri++;
+      }
+    }
+
+    row[ner] = to;
+    rowPointer[ner] = shape.rows;
+
+    if (to < column.length) {
+      column = Arrays.copyOf(column, to);
+      value = Arrays.copyOf(value, to);
+    }
+
+    return new CSR(value, rowPointer, column, row, shape);
+  }
+
+  private static void sortRow(int[] column, double[] value, int from, int to) {
+    int i = from + 1;
+
+    while (i < to && column[i - 1] <= column[i]) {
+      i++;
+    }
+
+    if (i >= to) {
+      return;
+    }
+
+    // Ties are broken by position, which keeps repeated cells in file order
+    long[] keys = new long[to - from];
+    double[] sorted = new double[to - from];
+
+    for (int k = 0; k < keys.length; k++) {
+      keys[k] = ((long) column[from + k] << 32) | k;
+    }
+
+    Arrays.sort(keys);
+
+    for (int k = 0; k < keys.length; k++) {
+      column[from + k] = (int) (keys[k] >>> 32);
+      sorted[k] = value[from + (int) keys[k]];
+    }
+
+    System.arraycopy(sorted, 0, value, from, sorted.length);
+  }
+
+  // Writes the non-zero cells of matrix as a general real coordinate file,
+  // straight from the arrays when matrix is a CSR
+  public static void write(Path path, IDoubleMatrix matrix) throws IOException {
+    assert path != null && matrix != null;
+
+    Shape shape = matrix.shape();
+
+    try (FileChannel channel = MatrixFile.create(path)) {
+      ChannelOutput output = new ChannelOutput(channel, 0);
+
+      putText(output, BANNER + " matrix coordinate real general\n");
+
+      if (matrix instanceof CSR) {
+        CSR csr = (CSR) matrix;
+        double[] value = csr.values();
+        int[] column = csr.columns();
+        int[] row = csr.rowStarts();
+        int[] rowPointer = csr.rowNumbers();
+
+        putSize(output, shape, csr.nnz);
+
+        for (int ri = 0; ri < csr.ner; ri++) {
+          for (int ptr = row[ri]; ptr < row[ri + 1]; ptr++) {
+            putEntry(output, rowPointer[ri], column[ptr], value[ptr]);
+          }
+        }
+      } else {
+        long[] nnz = new long[1];
+
+        matrix.forEachNonZero((row, column, value) -> nnz[0]++);
+        putSize(output, shape, nnz[0]);
+
+        try {
+          matrix.forEachNonZero(
+            (row, column, value) -> {
+              try {
+                putEntry(output, row, column, value);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            }
+          );
+        } catch (UncheckedIOException e) {
+          throw e.getCause();
+        }
+      }
+
+      output.flush();
+    }
+  }
+
+  private static void putSize(ChannelOutput output, Shape shape, long nnz)
+    throws IOException {
+    putLong(output, shape.rows);
+    output.putByte(' ');
+    putLong(output, shape.columns);
+    output.putByte(' ');
+    putLong(output, nnz);
+    output.putByte('\n');
+  }
+
+  private static void putEntry(
+    ChannelOutput output,
+    int row,
+    int column,
+    double value
+  ) throws IOException {
+    putLong(output, row + 1L);
+    output.putByte(' ');
+    putLong(output, column + 1L);
+    output.putByte(' ');
+
+    // Integers skip Double.toString, which allocates
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      putLong(output, (long) value);
+    } else {
+      putText(output, Double.toString(value));
+    }
+
+    output.putByte('\n');
+  }
+
+  private static void putLong(ChannelOutput output, long value)
+    throws IOException {
+    if (value < 0) {
+      output.putByte('-');
+      value = -value;
+    }
+
+    long power = 1;
+
+    while (power <= value / 10) {
+      power *= 10;
+    }
+
+    for (; power > 0; power /= 10) {
+      output.putByte('0' + (int) (value / power % 10));
+    }
+  }
+
+  private static void putText(ChannelOutput output, String text)
+    throws IOException {
+    for (int i = 0; i < text.length(); i++) {
+      output.putByte(text.charAt(i));
+    }
+  }
+
+  // The bytes of a file through a fixed buffer, with numbers parsed directly
+  // from them
+  private static final class Input {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_EXACT_DIGITS = 18; // fit in a long
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    // Powers of ten that are exact doubles
+    private static final double[] POWERS = {
+      1e0,
+      1e1,
+      1e2,
+      1e3,
+      1e4,
+      1e5,
+      1e6,
+      1e7,
+      1e8,
+      1e9,
+      1e10,
+      1e11,
+      1e12,
+      1e13,
+      1e14,
+      1e15,
+      1e16,
+      1e17,
+      1e18,
+      1e19,
+      1e20,
+      1e21,
+      1e22,
+    };
+
+    private final FileChannel channel;
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(this.bytes);
+    private final byte[] token = new byte[128]; // for the slow path only
+    private int tokenLength;
+    private long bufferStart; // file position of bytes[0]
+    private int position; // in bytes
+    private int limit;
+
+    Input(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    long position() {
+      return this.bufferStart + this.position;
+    }
+
+    void seek(long position) {
+      this.bufferStart = position;
+      this.position = 0;
+      this.limit = 0;
+    }
+
+    private boolean fill() throws IOException {
+      this.bufferStart += this.limit;
+      this.position = 0;
+      this.buffer.clear();
+
+      int read = this.channel.read(this.buffer, this.bufferStart);
+
+      this.limit = Math.max(0, read); // -1 at the end of the file
+
+      return this.limit > 0;
+    }
+
+    // The next byte, or -1 at the end of the file
+    private int peek() throws IOException {
+      if (this.position == this.limit && !this.fill()) {
+        return -1;
+      }
+
+      return this.bytes[this.position] & 0xff;
+    }
+
+    private int take() throws IOException {
+      int b = this.peek();
+
+      if (b >= 0) {
+        this.position++;
+
+        if (this.tokenLength < this.token.length) {
+          this.token[this.tokenLength] = (byte) b;
+        }
+
+        this.tokenLength++;
+      }
+
+      return b;
+    }
+
+    private static boolean isSpace(int b) {
+      return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static boolean isDigit(int b) {
+      return '0' <= b && b <= '9';
+    }
+
+    int peekNonSpace() throws IOException {
+      while (isSpace(this.peek())) {
+        this.take();
+      }
+
+      this.tokenLength = 0;
+
+      return this.peek();
+    }
+
+    // The rest of the current line, used for the banner and comments only
+    String line() throws IOException {
+      StringBuilder line = new StringBuilder();
+
+      for (int b = this.take(); b >= 0 && b != '\n'; b = this.take()) {
+        line.append((char) b);
+      }
+
+      return line.toString();
+    }
+
+    void skipToken() throws IOException {
+      int b = this.peekNonSpace();
+
+      while (b >= 0 && !isSpace(b)) {
+        this.take();
+        b = this.peek();
+      }
+    }
+
+    long nextLong() throws IOException {
+      int b = this.peekNonSpace();
+      boolean negative = b == '-';
+
+      if (b == '-' || b == '+') {
+        this.take();
+      }
+
+      if (!isDigit(this.peek())) {
+        throw this.malformed("integer");
+      }
+
+      long value = 0;
+
+      while (isDigit(this.peek())) {
+        value = 10 * value + (this.take() - '0');
+      }
+
+      return negative ? -value : value;
+    }
+
+    int nextInt() throws IOException {
+      long value = this.nextLong();
+
+      if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+        throw this.malformed("int");
+      }
+
+      return (int) value;
+    }
+
+    // Up to 18 significant digits are gathered into a long. When the long is
+    // exact and a double, and the power of ten is exact too, a single
+    // multiplication or division rounds correctly. Other numbers fall back
+    // to Double.parseDouble.
+    double nextDouble() throws IOException {
+      int b = this.peekNonSpace();
+      boolean negative = b == '-';
+      boolean exact = true;
+      boolean anyDigit = false;
+      long mantissa = 0;
+      int digits = 0;
+      int exponent = 0;
+
+      if (b == '-' || b == '+') {
+        this.take();
+      }
+
+      while (isDigit(this.peek())) {
+        int digit = this.take() - '0';
+
+        anyDigit = true;
+
+        if (digits < MAX_EXACT_DIGITS) {
+          mantissa = 10 * mantissa + digit;
+          digits += mantissa == 0 ? 0 : 1;
+        } else {
+          exponent++;
+          exact &= digit == 0;
+        }
+      }
+
+      if (this.peek() == '.') {
+        this.take();
+
+        while (isDigit(this.peek())) {
+          int digit = this.take() - '0';
+
+          anyDigit = true;
+
+          if (digits < MAX_EXACT_DIGITS) {
+            mantissa = 10 * mantissa + digit;
+            digits += mantissa == 0 ? 0 : 1;
+            exponent--;
+          } else {
+            exact &= digit == 0;
+          }
+        }
+      }
+
+      b = this.peek();
+
+      if (anyDigit && (b == 'e' || b == 'E')) {
+        this.take();
+
+        boolean negativeExponent = this.peek() == '-';
+
+        if (this.peek() == '-' || this.peek() == '+') {
+          this.take();
+        }
+
+        int power = 0;
+
+        while (isDigit(this.peek())) {
+          power = Math.min(10 * power + (this.take() - '0'), 100_000);
+        }
+
+        exponent += negativeExponent ? -power : power;
+      }
+
+      b = this.peek();
+
+      if (anyDigit && exact && (b < 0 || isSpace(b))) {
+        if (mantissa == 0) {
+          return negative ? -0.0 : 0.0;
+        }
+
+        boolean fast =
+          mantissa <= MAX_EXACT_MANTISSA && Math.abs(exponent) < POWERS.length;
+
+        if (fast) {
+          double value = exponent >= 0
+            ? mantissa * POWERS[exponent]
+            : mantissa / POWERS[-exponent];
+
+          return negative ? -value : value;
+        }
+      }
+
+      while ((b = this.peek()) >= 0 && !isSpace(b)) {
+        this.take();
+      }
+
+      if (this.tokenLength > this.token.length) {
+        throw this.malformed("number of at most 128 characters");
+      }
+
+      try {
+        return Double.parseDouble(
+          new String(this.token, 0, this.tokenLength, StandardCharsets.US_ASCII)
+        );
+      } catch (NumberFormatException e) {
+        throw this.malformed("number");
+      }
+    }
+
+    private IOException malformed(String expected) {
+      return new IOException(
+        "Matrix Market: " + expected + " expected at byte " + this.position()
+      );
+    }
+  }
+}
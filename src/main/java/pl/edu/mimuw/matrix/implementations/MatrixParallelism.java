@@ -0,0 +1,119 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Splits the output rows of a product into blocks computed on a ForkJoinPool.
+// Every output row is computed by exactly the same code as in the
+// sequential path, so results do not depend on the number of blocks.
+public final class MatrixParallelism {
+
+  private static final int BLOCKS_PER_THREAD = 4;
+
+  // Multiply-adds below which a product stays on the calling thread
+  private static volatile long threshold = 1L << 22;
+  private static volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+
+  private MatrixParallelism() {}
+
+  interface RowBlockAction {
+    void apply(int block, int from, int to);
+  }
+
+  public static long threshold() {
+    return threshold;
+  }
+
+  // Long.MAX_VALUE keeps every product sequential
+  public static void setThreshold(long work) {
+    assert work >= 0;
+
+    threshold = work;
+  }
+
+  public static ForkJoinPool pool() {
+    return pool;
+  }
+
+  public static void setPool(ForkJoinPool newPool) {
+    assert newPool != null;
+
+    pool = newPool;
+  }
+
+  static int rowBlocks(int rows, long work) {
+    ForkJoinPool pool = MatrixParallelism.pool;
+
+    if (work < threshold || pool.getParallelism() < 2 || rows < 2) {
+      return 1;
+    }
+
+    long blocks = (long) pool.getParallelism() * BLOCKS_PER_THREAD;
+
+    return (int) Math.min(rows, blocks);
+  }
+
+  // Runs action on blocks [0, blocks) of [0, rows). blocks must come from
+  // rowBlocks, so callers can size per-block state beforehand.
+  static void forEachRowBlock(int rows, int blocks, RowBlockAction action) {
+    if (blocks == 1) {
+      action.apply(0, 0, rows);
+
+      return;
+    }
+
+    pool.invoke(new BlockTask(rows, blocks, 0, blocks, action));
+  }
+
+  // Runs action on as many blocks as rowBlocks gives for work multiply-adds.
+  // Named apart from forEachRowBlock, so that an int work estimate is never
+  // taken for a block count.
+  static void forEachRowBlockOfWork(
+    int rows,
+    long work,
+    RowBlockAction action
+  ) {
+    forEachRowBlock(rows, rowBlocks(rows, work), action);
+  }
+
+  private static final class BlockTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int rows;
+    private final int blocks;
+    private final int low;
+    private final int high;
+    private final RowBlockAction action;
+
+    BlockTask(int rows, int blocks, int low, int high, RowBlockAction action) {
+      this.rows = rows;
+      this.blocks = blocks;
+      this.low = low;
+      this.high = high;
+      this.action = action;
+    }
+
+    private int start(int block) {
+      return (int) ((long) this.rows * block / this.blocks);
+    }
+
+    @Override
+    protected void compute() {
+      if (this.high - this.low == 1) {
+        int from = this.start(this.low);
+
+        this.action.apply(this.low, from, this.start(this.high));
+
+        return;
+      }
+
+      int middle = (this.low + this.high) >>> 1;
+
+      invokeAll(
+        new BlockTask(this.rows, this.blocks, this.low, middle, this.action),
+        new BlockTask(this.rows, this.blocks, middle, this.high, this.action)
+      );
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.Shape;
+
+// A dense matrix updated in place, for loops that would otherwise allocate a
+// new Full per step. It is deliberately not an IDoubleMatrix: toMatrix()
+// hands out an immutable Full sharing the values, and the first write after
+// that copies them (copy-on-write), as does the first write after
+// Full.toMutable().
+public final class MutableFull {
+
+  private final Shape shape;
+  private double[] values; // row-major, row r at r * shape.columns
+  private boolean shared;
+
+  private MutableFull(Shape shape, double[] values, boolean shared) {
+    this.shape = shape;
+    this.values = values;
+    this.shared = shared;
+  }
+
+  public MutableFull(Shape shape) {
+    this(shape, new double[shape.rows * shape.columns], false);
+  }
+
+  public static MutableFull copyOf(IDoubleMatrix matrix) {
+    assert matrix != null;
+
+    MutableFull copy = new MutableFull(matrix.shape());
+
+    BaseMatrix.addScaled(matrix, 1, copy.values);
+
+    return copy;
+  }
+
+  // Shares the values of a Full until either side is written
+  static MutableFull sharing(Shape shape, double[] values) {
+    return new MutableFull(shape, values, true);
+  }
+
+  public Shape shape() {
+    return this.shape;
+  }
+
+  public double get(int row, int column) {
+    assert 0 <= row && row < this.shape.rows;
+    assert 0 <= column && column < this.shape.columns;
+
+    return this.values[row * this.shape.columns + column];
+  }
+
+  public void set(int row, int column, double value) {
+    assert 0 <= row && row < this.shape.rows;
+    assert 0 <= column && column < this.shape.columns;
+
+    this.writable()[row * this.shape.columns + column] = value;
+  }
+
+  private double[] writable() {
+    if (this.shared) {
+      this.values = this.values.clone();
+      this.shared = false;
+    }
+
+    return this.values;
+  }
+
+  // The current values as an immutable matrix, without copying
+  public IDoubleMatrix toMatrix() {
+    this.shared = true;
+
+    return new Full(this.shape, this.values);
+  }
+
+  // this += scalar
+  public MutableFull addInPlace(double scalar) {
+    double[] values = this.writable();
+
+    DenseKernels.INSTANCE.add(values, 0, scalar, values, 0, values.length);
+
+    return this;
+  }
+
+  // this += other
+  public MutableFull addInPlace(IDoubleMatrix other) {
+    return this.axpy(1, other);
+  }
+
+  // this *= scalar
+  public MutableFull scaleInPlace(double scalar) {
+    double[] values = this.writable();
+
+    DenseKernels.INSTANCE.multiply(values, 0, scalar, values, 0, values.length);
+
+    return this;
+  }
+
+  // this += alpha * x
+  public MutableFull axpy(double alpha, IDoubleMatrix x) {
+    assert x != null;
+    assert x.shape().equals(this.shape);
+
+    if (alpha != 0) {
+      BaseMatrix.addScaled(x, alpha, this.writable());
+    }
+
+    return this;
+  }
+
+  // destination = this * other
+  public void multiplyInto(IDoubleMatrix other, MutableFull destination) {
+    assert other != null && destination != null && destination != this;
+    assert this.shape.multiplicationCompatible(other.shape());
+    assert destination.shape.equals(
+      this.shape.multiplicationShape(other.shape())
+    );
+
+    this.view().multiplyAddInto(1, other, 0, destination.writable());
+  }
+
+  // destination = this * x
+  public void multiplyInto(MutableVector x, MutableVector destination) {
+    assert x != null && destination != null && x != destination;
+
+    destination.assignProduct(this.view(), x);
+  }
+
+  // A Full over the current values, only read while this is not written
+  private Full view() {
+    return new Full(this.shape, this.values);
+  }
+}
@@ -0,0 +1,149 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.Shape;
+
+// A dense column vector updated in place, the vector counterpart of
+// MutableFull with the same copy-on-write toMatrix().
+public final class MutableVector {
+
+  private double[] values;
+  private boolean shared;
+
+  public MutableVector(int size) {
+    assert size > 0;
+
+    this.values = new double[size];
+  }
+
+  public MutableVector(double... values) {
+    assert values != null && values.length > 0;
+
+    this.values = values.clone();
+  }
+
+  // Any n x 1 matrix
+  public static MutableVector copyOf(IDoubleMatrix vector) {
+    assert vector != null;
+    assert vector.shape().columns == 1;
+
+    MutableVector copy = new MutableVector(vector.shape().rows);
+
+    BaseMatrix.addScaled(vector, 1, copy.values);
+
+    return copy;
+  }
+
+  public int size() {
+    return this.values.length;
+  }
+
+  public Shape shape() {
+    return Shape.vector(this.values.length);
+  }
+
+  public double get(int i) {
+    assert 0 <= i && i < this.values.length;
+
+    return this.values[i];
+  }
+
+  public void set(int i, double value) {
+    assert 0 <= i && i < this.values.length;
+
+    this.writable()[i] = value;
+  }
+
+  private double[] writable() {
+    if (this.shared) {
+      this.values = this.values.clone();
+      this.shared = false;
+    }
+
+    return this.values;
+  }
+
+  // The current values as an immutable n x 1 matrix, without copying
+  public IDoubleMatrix toMatrix() {
+    this.shared = true;
+
+    return this.view();
+  }
+
+  private Full view() {
+    return new Full(this.shape(), this.values);
+  }
+
+  // this += scalar
+  public MutableVector addInPlace(double scalar) {
+    double[] values = this.writable();
+
+    DenseKernels.INSTANCE.add(values, 0, scalar, values, 0, values.length);
+
+    return this;
+  }
+
+  // this += other
+  public MutableVector addInPlace(IDoubleMatrix other) {
+    return this.axpy(1, other);
+  }
+
+  // this *= scalar
+  public MutableVector scaleInPlace(double scalar) {
+    double[] values = this.writable();
+
+    DenseKernels.INSTANCE.multiply(values, 0, scalar, values, 0, values.length);
+
+    return this;
+  }
+
+  // this += alpha * x
+  public MutableVector axpy(double alpha, IDoubleMatrix x) {
+    assert x != null;
+    assert x.shape().equals(this.shape());
+
+    if (alpha != 0) {
+      BaseMatrix.addScaled(x, alpha, this.writable());
+    }
+
+    return this;
+  }
+
+  // this += alpha * x
+  public MutableVector axpy(double alpha, MutableVector x) {
+    assert x != null;
+    assert x.values.length == this.values.length;
+
+    double[] values = this.writable();
+
+    DenseKernels.INSTANCE.axpy(alpha, x.values, 0, values, 0, values.length);
+
+    return this;
+  }
+
+  // this = matrix * x
+  public MutableVector assignProduct(IDoubleMatrix matrix, MutableVector x) {
+    assert matrix != null && x != null && x != this;
+    assert matrix.shape().rows == this.values.length;
+    assert matrix.shape().columns == x.values.length;
+
+    double[] values = this.writable();
+
+    if (matrix instanceof CSR) {
+      ((CSR) matrix).multiplyInto(x.values, values);
+    } else if (matrix instanceof MappedCSR) {
+      ((MappedCSR) matrix).multiplyInto(x.values, values);
+    } else {
+      matrix.multiplyAddInto(1, x.view(), 0, values);
+    }
+
+    return this;
+  }
+
+  // destination = matrix * this
+  public void multiplyInto(IDoubleMatrix matrix, MutableVector destination) {
+    assert destination != null;
+
+    destination.assignProduct(matrix, this);
+  }
+}
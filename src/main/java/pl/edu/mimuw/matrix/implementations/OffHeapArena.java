@@ -0,0 +1,165 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.Shape;
+
+// Owns the direct buffers of OffHeapFull matrices. Results of operations on
+// an off-heap matrix are allocated in the arena of that matrix, and closing
+// the arena invalidates all of them at once.
+//
+// Buffers are direct ByteBuffers, whose memory the JVM returns once they are
+// no longer reachable; close() drops every reference the arena's matrices
+// hold. A buffer holds at most 2^31 - 1 bytes, so larger matrices are split
+// into chunks of whole rows.
+//
+// map() puts a matrix over a file instead, so that it may be larger than RAM:
+// the OS pages it in as kernels stream through it.
+public final class OffHeapArena implements AutoCloseable {
+
+  private static final int MAX_CHUNK = Integer.MAX_VALUE / Double.BYTES;
+
+  private final int chunkSize;
+  private final List<OffHeapFull> matrices = new ArrayList<>();
+  private boolean closed;
+
+  public OffHeapArena() {
+    this(MAX_CHUNK);
+  }
+
+  // At most chunkSize elements per buffer, but always at least one row
+  public OffHeapArena(int chunkSize) {
+    assert 0 < chunkSize && chunkSize <= MAX_CHUNK;
+
+    this.chunkSize = chunkSize;
+  }
+
+  private int rowsPerChunk(Shape shape) {
+    assert shape.columns <= MAX_CHUNK;
+
+    return Math.max(1, this.chunkSize / shape.columns);
+  }
+
+  private static int chunkCount(Shape shape, int rowsPerChunk) {
+    return (int) (((long) shape.rows + rowsPerChunk - 1) / rowsPerChunk);
+  }
+
+  private OffHeapFull register(
+    Shape shape,
+    DoubleBuffer[] chunks,
+    int rowsPerChunk
+  ) {
+    OffHeapFull matrix = new OffHeapFull(this, shape, chunks, rowsPerChunk);
+
+    this.matrices.add(matrix);
+
+    return matrix;
+  }
+
+  public synchronized OffHeapFull allocate(Shape shape) {
+    assert !this.closed;
+    assert shape != null;
+
+    int rowsPerChunk = this.rowsPerChunk(shape);
+    DoubleBuffer[] chunks = new DoubleBuffer[chunkCount(shape, rowsPerChunk)];
+
+    for (int i = 0; i < chunks.length; i++) {
+      int rows = Math.min(rowsPerChunk, shape.rows - i * rowsPerChunk);
+
+      chunks[i] =
+        ByteBuffer
+          .allocateDirect(rows * shape.columns * Double.BYTES)
+          .order(ByteOrder.nativeOrder())
+          .asDoubleBuffer();
+    }
+
+    return this.register(shape, chunks, rowsPerChunk);
+  }
+
+  // A read-only matrix over a FULL file of MatrixFile, such as those written
+  // by OffHeapFull.write. Results of operations on it are still allocated in
+  // the arena.
+  public OffHeapFull map(Path path) throws IOException {
+    assert path != null;
+
+    // The mappings stay valid after the channel is closed
+    try (FileChannel channel = FileChannel.open(path)) {
+      MatrixFile.Header header = MatrixFile.Header.read(channel);
+
+      header.expect(MatrixFile.FULL);
+
+      return this.map(channel, header);
+    }
+  }
+
+  synchronized OffHeapFull map(FileChannel channel, MatrixFile.Header header)
+    throws IOException {
+    assert !this.closed;
+
+    Shape shape = header.shape;
+    int rowsPerChunk = this.rowsPerChunk(shape);
+    long chunkBytes = (long) rowsPerChunk * shape.columns * Double.BYTES;
+    DoubleBuffer[] chunks = new DoubleBuffer[chunkCount(shape, rowsPerChunk)];
+    long valueBytes = (long) shape.rows * shape.columns * Double.BYTES;
+
+    if (channel.size() != MatrixFile.HEADER_BYTES + valueBytes) {
+      throw new IOException(
+        "matrix file: " + channel.size() + " bytes for " + shape
+      );
+    }
+
+    for (int i = 0; i < chunks.length; i++) {
+      int rows = Math.min(rowsPerChunk, shape.rows - i * rowsPerChunk);
+
+      chunks[i] =
+        channel
+          .map(
+            FileChannel.MapMode.READ_ONLY,
+            MatrixFile.HEADER_BYTES + i * chunkBytes,
+            (long) rows * shape.columns * Double.BYTES
+          )
+          .order(ByteOrder.LITTLE_ENDIAN)
+          .asDoubleBuffer();
+    }
+
+    return this.register(shape, chunks, rowsPerChunk);
+  }
+
+  public OffHeapFull copyOf(IDoubleMatrix matrix) {
+    assert matrix != null;
+
+    OffHeapFull copy = this.allocate(matrix.shape());
+    double[] row = new double[matrix.shape().columns];
+
+    for (int r = 0; r < matrix.shape().rows; r++) {
+      Arrays.fill(row, 0);
+      OffHeapFull.addRow(matrix, r, 1, row);
+      copy.putRow(r, row);
+    }
+
+    return copy;
+  }
+
+  public synchronized boolean isClosed() {
+    return this.closed;
+  }
+
+  @Override
+  public synchronized void close() {
+    this.closed = true;
+
+    for (OffHeapFull matrix : this.matrices) {
+      matrix.release();
+    }
+
+    this.matrices.clear();
+  }
+}
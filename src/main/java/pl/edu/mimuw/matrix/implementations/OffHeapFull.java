@@ -0,0 +1,474 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
+import pl.edu.mimuw.matrix.Shape;
+
+// A dense row-major matrix outside the Java heap, allocated by an
+// OffHeapArena. Kernels read the buffers in place; only one row per block of
+// rows is staged on the heap while a result row is being computed. Every
+// operation with an off-heap operand and a dense result allocates the result
+// in the same arena. A matrix mapped from a file is read-only, and set()
+// throws ReadOnlyBufferException.
+public final class OffHeapFull extends BaseMatrix {
+
+  private final OffHeapArena arena;
+  private final Shape shape;
+  private final int rowsPerChunk;
+  private DoubleBuffer[] chunks; // null once the arena is closed
+
+  OffHeapFull(
+    OffHeapArena arena,
+    Shape shape,
+    DoubleBuffer[] chunks,
+    int rowsPerChunk
+  ) {
+    this.arena = arena;
+    this.shape = shape;
+    this.chunks = chunks;
+    this.rowsPerChunk = rowsPerChunk;
+  }
+
+  public OffHeapArena arena() {
+    return this.arena;
+  }
+
+  void release() {
+    this.chunks = null;
+  }
+
+  private DoubleBuffer chunk(int row) {
+    assert this.chunks != null : "the arena of this matrix is closed";
+
+    return this.chunks[row / this.rowsPerChunk];
+  }
+
+  private int base(int row) {
+    return (row % this.rowsPerChunk) * this.shape.columns;
+  }
+
+  void putRow(int row, double[] values) {
+    assert values.length == this.shape.columns;
+
+    this.chunk(row).put(this.base(row), values, 0, this.shape.columns);
+  }
+
+  public void set(int row, int column, double value) {
+    assert 0 <= row && row < this.shape.rows;
+    assert 0 <= column && column < this.shape.columns;
+
+    this.chunk(row).put(this.base(row) + column, value);
+  }
+
+  // Writes any matrix densely, in the format read by OffHeapArena.map, one
+  // row at a time
+  public static void write(Path path, IDoubleMatrix matrix) throws IOException {
+    assert path != null && matrix != null;
+
+    try (FileChannel channel = MatrixFile.create(path)) {
+      ChannelOutput output = new ChannelOutput(channel, 0);
+
+      MatrixFile.writeDense(output, matrix);
+      output.flush();
+    }
+  }
+
+  // row += scale * (row r of m)
+  static void addRow(IDoubleMatrix m, int r, double scale, double[] row) {
+    if (m instanceof OffHeapFull) {
+      OffHeapFull offHeap = (OffHeapFull) m;
+      DoubleBuffer chunk = offHeap.chunk(r);
+      int base = offHeap.base(r);
+
+      for (int c = 0; c < row.length; c++) {
+        row[c] += scale * chunk.get(base + c);
+      }
+    } else if (m instanceof Full) {
+      Full full = (Full) m;
+
+      DenseKernels.INSTANCE.axpy(
+        scale,
+        full.values(),
+        full.offset(r),
+        row,
+        0,
+        row.length
+      );
+    } else {
+      m.forEachInRow(
+        r,
+        (cellRow, column, value) -> row[column] += scale * value
+      );
+    }
+  }
+
+  // left * right, row by row into a new matrix of the arena
+  private OffHeapFull product(IDoubleMatrix left, IDoubleMatrix right) {
+    assert left.shape().multiplicationCompatible(right.shape());
+
+    // Every non-zero of left reads a whole row of right
+    IDoubleMatrix rows = rowMajor(right);
+    Shape shape = left.shape().multiplicationShape(right.shape());
+    OffHeapFull result = this.arena.allocate(shape);
+
+    MatrixParallelism.forEachRowBlockOfWork(
+      shape.rows,
+      (long) shape.rows * shape.columns * left.shape().columns,
+      (block, from, to) -> {
+        double[] row = new double[shape.columns];
+        IMatrixCellConsumer leftCell = (r, k, scalar) ->
+          addRow(rows, k, scalar, row);
+
+        for (int r = from; r < to; r++) {
+          Arrays.fill(row, 0);
+          left.forEachInRow(r, leftCell);
+          result.putRow(r, row);
+        }
+      }
+    );
+
+    return result;
+  }
+
+  // m + 1 * v^T, adding v to every row, into a new matrix of the arena
+  OffHeapFull plusEveryRow(IDoubleMatrix m, double[] v) {
+    assert m.shape().columns == v.length;
+
+    Shape shape = m.shape();
+    OffHeapFull result = this.arena.allocate(shape);
+    double[] row = new double[shape.columns];
+
+    for (int r = 0; r < shape.rows; r++) {
+      System.arraycopy(v, 0, row, 0, row.length);
+      addRow(m, r, 1, row);
+      result.putRow(r, row);
+    }
+
+    return result;
+  }
+
+  // left + sign * right into a new matrix of the arena
+  private OffHeapFull combine(
+    IDoubleMatrix left,
+    IDoubleMatrix right,
+    double sign
+  ) {
+    assert left.shape().equals(right.shape());
+
+    IDoubleMatrix leftRows = rowMajor(left);
+    IDoubleMatrix rightRows = rowMajor(right);
+    OffHeapFull result = this.arena.allocate(this.shape);
+    double[] row = new double[this.shape.columns];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      Arrays.fill(row, 0);
+      addRow(leftRows, r, 1, row);
+      addRow(rightRows, r, sign, row);
+      result.putRow(r, row);
+    }
+
+    return result;
+  }
+
+  @Override
+  public Shape shape() {
+    return this.shape;
+  }
+
+  @Override
+  public double get(int row, int column) {
+    assert 0 <= row && row < this.shape.rows;
+    assert 0 <= column && column < this.shape.columns;
+
+    return this.chunk(row).get(this.base(row) + column);
+  }
+
+  @Override
+  public IDoubleMatrix times(double scalar) {
+    if (scalar == 0) {
+      return new Zero(this.shape);
+    }
+
+    OffHeapFull result = this.arena.allocate(this.shape);
+    double[] row = new double[this.shape.columns];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      Arrays.fill(row, 0);
+      addRow(this, r, scalar, row);
+      result.putRow(r, row);
+    }
+
+    return result;
+  }
+
+  @Override
+  public IDoubleMatrix plus(double scalar) {
+    OffHeapFull result = this.arena.allocate(this.shape);
+    double[] row = new double[this.shape.columns];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      Arrays.fill(row, scalar);
+      addRow(this, r, 1, row);
+      result.putRow(r, row);
+    }
+
+    return result;
+  }
+
+  @Override
+  public IDoubleMatrix times(IDoubleMatrix other) {
+    assert other != null;
+
+    return this.product(this, other);
+  }
+
+  @Override
+  public IDoubleMatrix plus(IDoubleMatrix other) {
+    assert other != null;
+
+    return this.combine(this, other, 1);
+  }
+
+  @Override
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
+
+    return this.combine(this, other, -1);
+  }
+
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    for (int r = 0; r < this.shape.rows; r++) {
+      this.forEachInRow(r, consumer);
+    }
+  }
+
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.shape.rows;
+
+    DoubleBuffer chunk = this.chunk(row);
+    int base = this.base(row);
+
+    for (int c = 0; c < this.shape.columns; c++) {
+      double value = chunk.get(base + c);
+
+      if (value != 0) {
+        consumer.accept(row, c, value);
+      }
+    }
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert 0 <= column && column < this.shape.columns;
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      double value = this.chunk(r).get(this.base(r) + column);
+
+      if (value != 0) {
+        consumer.accept(r, column, value);
+      }
+    }
+  }
+
+  @Override
+  public double[][] data() {
+    double[][] data = new double[this.shape.rows][this.shape.columns];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      this.chunk(r).get(this.base(r), data[r], 0, this.shape.columns);
+    }
+
+    return data;
+  }
+
+  @Override
+  public double normOne() {
+    double[] columnSums = new double[this.shape.columns];
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      DoubleBuffer chunk = this.chunk(r);
+      int base = this.base(r);
+
+      for (int c = 0; c < this.shape.columns; c++) {
+        columnSums[c] += Math.abs(chunk.get(base + c));
+      }
+    }
+
+    double max = 0;
+
+    for (double sum : columnSums) {
+      max = Math.max(max, sum);
+    }
+
+    return max;
+  }
+
+  @Override
+  public double normInfinity() {
+    double max = 0;
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      DoubleBuffer chunk = this.chunk(r);
+      int base = this.base(r);
+      double sum = 0;
+
+      for (int c = 0; c < this.shape.columns; c++) {
+        sum += Math.abs(chunk.get(base + c));
+      }
+
+      max = Math.max(max, sum);
+    }
+
+    return max;
+  }
+
+  @Override
+  public double frobeniusNorm() {
+    double sum = 0;
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      DoubleBuffer chunk = this.chunk(r);
+      int base = this.base(r);
+
+      for (int c = 0; c < this.shape.columns; c++) {
+        double value = chunk.get(base + c);
+
+        sum += value * value;
+      }
+    }
+
+    return Math.sqrt(sum);
+  }
+
+  // Heap operands on the left keep the result off the heap
+
+  @Override
+  public IDoubleMatrix timesLeft(Zero other) {
+    assert other != null;
+    assert other.shape().columns == this.shape.rows;
+
+    return new Zero(Shape.matrix(other.shape().rows, this.shape.columns));
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSR other) {
+    return this.product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSC other) {
+    return this.product(other.toCSR(), this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Full other) {
+    return this.product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Diagonal other) {
+    return this.product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Vector other) {
+    return this.product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(AntiDiagonal other) {
+    return this.product(other, this);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Identity other) {
+    return this.combine(other, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Zero other) {
+    assert other != null;
+    assert other.shape().equals(this.shape);
+
+    return this;
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSR other) {
+    return this.combine(other, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSC other) {
+    return this.combine(other, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Full other) {
+    return this.combine(other, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Diagonal other) {
+    return this.combine(other, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Vector other) {
+    return this.combine(other, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(AntiDiagonal other) {
+    return this.combine(other, this, 1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Identity other) {
+    return this.combine(other, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Zero other) {
+    assert other != null;
+
+    return this.times(-1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSR other) {
+    return this.combine(other, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSC other) {
+    return this.combine(other, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Full other) {
+    return this.combine(other, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Diagonal other) {
+    return this.combine(other, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Vector other) {
+    return this.combine(other, this, -1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(AntiDiagonal other) {
+    return this.combine(other, this, -1);
+  }
+}
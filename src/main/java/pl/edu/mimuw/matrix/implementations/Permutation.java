@@ -0,0 +1,594 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.util.Arrays;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
+import pl.edu.mimuw.matrix.Shape;
+
+// A scaled permutation: row r holds scales[r] at column columns[r] and
+// nothing else, so P * x gathers x[columns[r]] into row r.
+//
+// Products with Full, CSR and Vector move rows (P * B) or columns (B * P)
+// instead of multiplying, in O(nnz) of the other operand. Composition stays
+// a permutation, and both the inverse and the transpose only swap the index
+// arrays. Scales are non-zero, null standing for all ones; Diagonal and
+// AntiDiagonal are the scaled identity and reversal.
+public final class Permutation extends BaseMatrix {
+
+  private final int[] columns;
+  private final int[] rows; // rows[columns[r]] == r
+  private final double[] scales;
+
+  public Permutation(int... columns) {
+    this(columns, null);
+  }
+
+  public Permutation(int[] columns, double[] scales) {
+    this(columns, inverse(columns), scales);
+  }
+
+  private Permutation(int[] columns, int[] rows, double[] scales) {
+    assert columns != null && rows != null;
+    assert columns.length > 0 && columns.length == rows.length;
+    assert scales == null || scales.length == columns.length;
+
+    this.columns = columns;
+    this.rows = rows;
+    this.scales = scales;
+
+    if (scales != null) {
+      for (double scale : scales) {
+        assert scale != 0 : "a scaled permutation has no zero scales";
+      }
+    }
+  }
+
+  private static int[] inverse(int[] columns) {
+    assert columns != null;
+
+    int[] rows = new int[columns.length];
+
+    Arrays.fill(rows, -1);
+
+    for (int r = 0; r < columns.length; r++) {
+      assert 0 <= columns[r] && columns[r] < columns.length;
+      assert rows[columns[r]] == -1 : "columns must be a permutation";
+
+      rows[columns[r]] = r;
+    }
+
+    return rows;
+  }
+
+  // The identity permutation collapses to Identity or Diagonal
+  private static IDoubleMatrix of(int[] columns, int[] rows, double[] scales) {
+    for (int r = 0; r < columns.length; r++) {
+      if (columns[r] != r) {
+        return new Permutation(columns, rows, scales);
+      }
+    }
+
+    for (int r = 0; scales != null && r < scales.length; r++) {
+      if (scales[r] != 1) {
+        return new Diagonal(scales);
+      }
+    }
+
+    return new Identity(columns.length);
+  }
+
+  // The permutation form of other, or null when it has none
+  private static Permutation permutation(IDoubleMatrix other) {
+    if (other instanceof Permutation) {
+      return (Permutation) other;
+    }
+
+    if (other instanceof Identity) {
+      int size = other.shape().rows;
+      int[] columns = new int[size];
+
+      for (int i = 0; i < size; i++) {
+        columns[i] = i;
+      }
+
+      return new Permutation(columns, columns, null);
+    }
+
+    if (other instanceof Diagonal) {
+      Diagonal diagonal = (Diagonal) other;
+      int size = diagonal.size();
+      int[] columns = new int[size];
+
+      for (int i = 0; i < size; i++) {
+        if (diagonal.values[i] == 0) {
+          return null;
+        }
+
+        columns[i] = diagonal.indexCompliment(i);
+      }
+
+      // indexCompliment is its own inverse
+      return new Permutation(columns, columns, diagonal.values);
+    }
+
+    return null;
+  }
+
+  public int size() {
+    return this.columns.length;
+  }
+
+  // The column of the only cell of row
+  public int column(int row) {
+    assert 0 <= row && row < this.size();
+
+    return this.columns[row];
+  }
+
+  // The row of the only cell of column
+  public int row(int column) {
+    assert 0 <= column && column < this.size();
+
+    return this.rows[column];
+  }
+
+  public double scale(int row) {
+    assert 0 <= row && row < this.size();
+
+    return this.scales == null ? 1 : this.scales[row];
+  }
+
+  // Scales indexed by column instead of row, in the transposed order
+  private double[] transposedScales(boolean reciprocal) {
+    if (this.scales == null) {
+      return null;
+    }
+
+    double[] scales = new double[this.size()];
+
+    for (int c = 0; c < scales.length; c++) {
+      double scale = this.scales[this.rows[c]];
+
+      scales[c] = reciprocal ? 1 / scale : scale;
+    }
+
+    return scales;
+  }
+
+  // O(1) for a plain permutation, where it equals the transpose
+  public Permutation inverse() {
+    return new Permutation(
+      this.rows,
+      this.columns,
+      this.transposedScales(true)
+    );
+  }
+
+  public Permutation transpose() {
+    return new Permutation(
+      this.rows,
+      this.columns,
+      this.transposedScales(false)
+    );
+  }
+
+  // The same matrix in CSR, sharing the column indices
+  public CSR toCSR() {
+    int size = this.size();
+    int[] rowNumbers = new int[size + 1];
+    int[] rowStarts = new int[size + 1];
+    double[] values = new double[size];
+
+    for (int r = 0; r <= size; r++) {
+      rowNumbers[r] = r;
+      rowStarts[r] = r;
+    }
+
+    for (int r = 0; r < size; r++) {
+      values[r] = this.scale(r);
+    }
+
+    return new CSR(values, rowNumbers, this.columns, rowStarts, this.shape());
+  }
+
+  @Override
+  public Shape shape() {
+    return Shape.matrix(this.size(), this.size());
+  }
+
+  // this * other: row r of other, scaled, moves to row rows[r]
+  @Override
+  public IDoubleMatrix times(IDoubleMatrix other) {
+    assert other != null;
+    assert this.size() == other.shape().rows;
+
+    if (other instanceof Full) {
+      return this.gather((Full) other);
+    }
+
+    if (other instanceof CSR) {
+      return this.gather((CSR) other);
+    }
+
+    if (other instanceof Vector) {
+      return this.gather((Vector) other);
+    }
+
+    Permutation permutation = permutation(other);
+
+    if (permutation != null) {
+      return this.compose(permutation);
+    }
+
+    return other.timesLeft(this.toCSR());
+  }
+
+  // Row r of the product is row columns[r] of other, times scales[r]
+  private IDoubleMatrix gather(Full other) {
+    int columns = other.shape().columns;
+    double[] data = new double[this.size() * columns];
+
+    for (int r = 0; r < this.size(); r++) {
+      int from = other.offset(this.columns[r]);
+
+      if (this.scales == null) {
+        System.arraycopy(other.values(), from, data, r * columns, columns);
+      } else {
+        DenseKernels.INSTANCE.multiply(
+          other.values(),
+          from,
+          this.scales[r],
+          data,
+          r * columns,
+          columns
+        );
+      }
+    }
+
+    return new Full(Shape.matrix(this.size(), columns), data);
+  }
+
+  private IDoubleMatrix gather(CSR other) {
+    double[] otherValues = other.values();
+    double[] values = new double[other.nnz];
+    int[] columns = new int[other.nnz];
+    int[] rowStarts = new int[other.ner + 1];
+    int[] rowNumbers = new int[other.ner + 1];
+    int ner = 0;
+    int nnz = 0;
+
+    for (int r = 0; r < this.size(); r++) {
+      int ri = other.getRowPointer(this.columns[r]);
+
+      if (ri == other.ner) {
+        continue;
+      }
+
+      int start = other.getRowStart(ri);
+      int length = other.getRowEnd(ri) - start;
+
+      rowNumbers[ner] = r;
+      rowStarts[ner] = nnz;
+      ner++;
+
+      System.arraycopy(other.columns(), start, columns, nnz, length);
+
+      if (this.scales == null) {
+        System.arraycopy(otherValues, start, values, nnz, length);
+      } else {
+        DenseKernels.INSTANCE.multiply(
+          otherValues,
+          start,
+          this.scales[r],
+          values,
+          nnz,
+          length
+        );
+      }
+
+      nnz += length;
+    }
+
+    rowStarts[ner] = nnz;
+    rowNumbers[ner] = this.size();
+
+    return new CSR(values, rowNumbers, columns, rowStarts, other.shape());
+  }
+
+  private IDoubleMatrix gather(Vector other) {
+    double[] vector = other.toArray();
+    double[] values = new double[this.size()];
+
+    for (int r = 0; r < values.length; r++) {
+      values[r] = this.scale(r) * vector[this.columns[r]];
+    }
+
+    return new Vector(values);
+  }
+
+  // this * other: row r takes the cell of row columns[r] of other
+  private IDoubleMatrix compose(Permutation other) {
+    assert other.size() == this.size();
+
+    int size = this.size();
+    int[] columns = new int[size];
+    int[] rows = new int[size];
+    double[] scales = null;
+
+    if (this.scales != null || other.scales != null) {
+      scales = new double[size];
+    }
+
+    for (int r = 0; r < size; r++) {
+      columns[r] = other.columns[this.columns[r]];
+      rows[columns[r]] = r;
+
+      if (scales != null) {
+        scales[r] = this.scale(r) * other.scale(this.columns[r]);
+      }
+    }
+
+    return of(columns, rows, scales);
+  }
+
+  @Override
+  public IDoubleMatrix times(double scalar) {
+    if (scalar == 0) {
+      return new Zero(this.shape());
+    }
+
+    if (scalar == 1) {
+      return this;
+    }
+
+    double[] scales = new double[this.size()];
+
+    for (int r = 0; r < scales.length; r++) {
+      scales[r] = this.scale(r) * scalar;
+    }
+
+    return new Permutation(this.columns, this.rows, scales);
+  }
+
+  // Sums fill other cells than the permuted ones, so they are left to CSR
+
+  @Override
+  public IDoubleMatrix plus(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().equals(this.shape());
+
+    return this.toCSR().plus(other);
+  }
+
+  @Override
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().equals(this.shape());
+
+    return this.toCSR().minus(other);
+  }
+
+  @Override
+  public IDoubleMatrix plus(double scalar) {
+    return ShiftedMatrix.shift(this, scalar);
+  }
+
+  @Override
+  public double get(int row, int column) {
+    assert 0 <= row && row < this.size();
+    assert 0 <= column && column < this.size();
+
+    return this.columns[row] == column ? this.scale(row) : 0;
+  }
+
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    for (int r = 0; r < this.size(); r++) {
+      consumer.accept(r, this.columns[r], this.scale(r));
+    }
+  }
+
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.size();
+
+    consumer.accept(row, this.columns[row], this.scale(row));
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert 0 <= column && column < this.size();
+
+    int row = this.rows[column];
+
+    consumer.accept(row, column, this.scale(row));
+  }
+
+  @Override
+  public double[][] data() {
+    double[][] data = new double[this.size()][this.size()];
+
+    for (int r = 0; r < this.size(); r++) {
+      data[r][this.columns[r]] = this.scale(r);
+    }
+
+    return data;
+  }
+
+  // Every row and every column holds exactly one cell
+
+  @Override
+  public double normOne() {
+    if (this.scales == null) {
+      return 1;
+    }
+
+    double max = 0;
+
+    for (double scale : this.scales) {
+      max = Math.max(max, Math.abs(scale));
+    }
+
+    return max;
+  }
+
+  @Override
+  public double normInfinity() {
+    return this.normOne();
+  }
+
+  @Override
+  public double frobeniusNorm() {
+    if (this.scales == null) {
+      return Math.sqrt(this.size());
+    }
+
+    return Math.sqrt(
+      DenseKernels.INSTANCE.sumSquares(this.scales, 0, this.size())
+    );
+  }
+
+  // other * this: column c of other, scaled, moves to column columns[c]
+
+  @Override
+  public IDoubleMatrix timesLeft(Full other) {
+    assert other != null;
+    assert other.shape().columns == this.size();
+
+    int size = this.size();
+    int rows = other.shape().rows;
+    double[] data = new double[rows * size];
+
+    for (int r = 0; r < rows; r++) {
+      int from = other.offset(r);
+
+      for (int c = 0; c < size; c++) {
+        data[r * size + this.columns[c]] =
+          this.scale(c) * other.values()[from + c];
+      }
+    }
+
+    return new Full(Shape.matrix(rows, size), data);
+  }
+
+  // Relabelling the columns unsorts the rows, so the entries are regrouped
+  // by column and back into rows, two counting sorts in O(nnz + size)
+  @Override
+  public IDoubleMatrix timesLeft(CSR other) {
+    assert other != null;
+    assert other.shape().columns == this.size();
+
+    double[] values = new double[other.nnz];
+    int[] columns = new int[other.nnz];
+
+    for (int ptr = 0; ptr < other.nnz; ptr++) {
+      int c = other.getColumn(ptr);
+
+      columns[ptr] = this.columns[c];
+      values[ptr] = other.getValue(ptr) * this.scale(c);
+    }
+
+    CompressedTranspose byColumn = new CompressedTranspose(
+      values,
+      columns,
+      other.rowStarts(),
+      other.rowNumbers(),
+      this.size()
+    );
+    CompressedTranspose byRow = new CompressedTranspose(
+      byColumn.value,
+      byColumn.index,
+      byColumn.start,
+      byColumn.major,
+      other.shape().rows
+    );
+
+    return new CSR(
+      byRow.value,
+      byRow.major,
+      byRow.index,
+      byRow.start,
+      other.shape()
+    );
+  }
+
+  private IDoubleMatrix timesLeftGeneric(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().columns == this.size();
+
+    Permutation permutation = permutation(other);
+
+    if (permutation != null) {
+      return permutation.compose(this);
+    }
+
+    return other.times(this.toCSR());
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Zero other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Diagonal other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Vector other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(AntiDiagonal other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  // other + this
+
+  private IDoubleMatrix plusLeftGeneric(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().equals(this.shape());
+
+    return other.plus(this.toCSR());
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Identity other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Zero other) {
+    assert other != null;
+    assert other.shape().equals(this.shape());
+
+    return this;
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSR other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Full other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Diagonal other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Vector other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(AntiDiagonal other) {
+    return this.plusLeftGeneric(other);
+  }
+}
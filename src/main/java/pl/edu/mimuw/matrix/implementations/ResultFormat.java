@@ -0,0 +1,187 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.util.Arrays;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.Shape;
+
+// Picks the representation of a computed result from its measured density.
+// Dense results at most sparseDensity full are stored as CSR and sparse
+// results more than denseDensity full as Full. Between the two thresholds a
+// result keeps the format it was computed in, so values close to one
+// threshold do not flip formats with every operation.
+public final class ResultFormat {
+
+  private static volatile double sparseDensity = 0.1;
+  private static volatile double denseDensity = 0.5;
+
+  private ResultFormat() {}
+
+  public static double sparseDensity() {
+    return sparseDensity;
+  }
+
+  public static double denseDensity() {
+    return denseDensity;
+  }
+
+  // 0, 1 turns off switching between CSR and Full
+  public static void setThresholds(double sparse, double dense) {
+    assert 0 <= sparse && sparse <= dense && dense <= 1;
+
+    sparseDensity = sparse;
+    denseDensity = dense;
+  }
+
+  // data is row-major with the rows of shape laid out without gaps
+  static IDoubleMatrix dense(Shape shape, double[] data) {
+    assert shape != null && data != null;
+
+    int nnz = 0;
+
+    for (double v : data) {
+      nnz += v != 0 ? 1 : 0;
+    }
+
+    return dense(shape, data, nnz);
+  }
+
+  // nnz is the number of non-zero entries of data, already counted by the
+  // caller
+  static IDoubleMatrix dense(Shape shape, double[] data, int nnz) {
+    assert shape != null && data != null;
+    assert data.length == shape.rows * shape.columns;
+
+    if (nnz == 0) {
+      return new Zero(shape);
+    }
+
+    if (shape.rows == shape.columns && nnz <= shape.rows) {
+      IDoubleMatrix diagonal = diagonal(shape.rows, data, nnz);
+
+      if (diagonal != null) {
+        return diagonal;
+      }
+    }
+
+    if (nnz <= sparseDensity * data.length) {
+      return sparse(shape, data, nnz);
+    }
+
+    if (nnz == data.length && shape.rows > 1 && isConstant(data)) {
+      return ShiftedMatrix.shift(new Zero(shape), data[0]);
+    }
+
+    return new Full(shape, data);
+  }
+
+  // Results that are not CSR are already as compact as they get
+  static IDoubleMatrix sparse(IDoubleMatrix result) {
+    assert result != null;
+
+    if (!(result instanceof CSR)) {
+      return result;
+    }
+
+    CSR csr = (CSR) result;
+    Shape shape = csr.shape();
+
+    if (csr.nnz > denseDensity * shape.rows * shape.columns) {
+      return csr.toFull();
+    }
+
+    // A Diagonal stores every row, so hypersparse diagonals stay in CSR
+    if (
+      shape.rows == shape.columns &&
+      csr.nnz == csr.ner &&
+      csr.nnz >= sparseDensity * shape.rows
+    ) {
+      IDoubleMatrix diagonal = diagonal(csr);
+
+      if (diagonal != null) {
+        return diagonal;
+      }
+    }
+
+    return csr;
+  }
+
+  private static IDoubleMatrix diagonal(int size, double[] data, int nnz) {
+    double[] values = new double[size];
+    int found = 0;
+
+    for (int i = 0; i < size; i++) {
+      values[i] = data[i * size + i];
+      found += values[i] != 0 ? 1 : 0;
+    }
+
+    return found == nnz ? new Diagonal(values) : null;
+  }
+
+  private static IDoubleMatrix diagonal(CSR csr) {
+    int[] rowPointer = csr.rowNumbers();
+    int[] column = csr.columns();
+
+    for (int ri = 0; ri < csr.ner; ri++) {
+      if (column[ri] != rowPointer[ri]) {
+        return null;
+      }
+    }
+
+    double[] values = new double[csr.shape().rows];
+
+    for (int ri = 0; ri < csr.ner; ri++) {
+      values[rowPointer[ri]] = csr.values()[ri];
+    }
+
+    return new Diagonal(values);
+  }
+
+  private static boolean isConstant(double[] data) {
+    for (double v : data) {
+      if (v != data[0]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static CSR sparse(Shape shape, double[] data, int nnz) {
+    double[] value = new double[nnz];
+    int[] column = new int[nnz];
+    int[] row = new int[shape.rows + 1];
+    int[] rowPointer = new int[shape.rows + 1];
+    int ptr = 0;
+    int ner = 0;
+
+    for (int r = 0; r < shape.rows; r++) {
+      int start = ptr;
+
+      for (int c = 0; c < shape.columns; c++) {
+        double v = data[r * shape.columns + c];
+
+        if (v != 0) {
+          value[ptr] = v;
+          column[ptr++] = c;
+        }
+      }
+
+      if (ptr > start) {
+        row[ner] = start;
+        rowPointer[ner++] = r;
+      }
+    }
+
+    assert ptr == nnz;
+
+    if (ner < shape.rows) {
+      row = Arrays.copyOf(row, ner + 1);
+      rowPointer = Arrays.copyOf(rowPointer, ner + 1);
+    }
+
+    row[ner] = nnz;
+    rowPointer[ner] = shape.rows;
+
+    return new CSR(value, rowPointer, column, row, shape);
+  }
+}
@@ -1,8 +1,9 @@
 package pl.edu.mimuw.matrix.implementations;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
 import pl.edu.mimuw.matrix.IDoubleMatrix;
-import pl.edu.mimuw.matrix.MatrixCellValue;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
 import pl.edu.mimuw.matrix.Shape;
 
 public class RowMatrix extends BaseMatrix {
@@ -23,6 +24,15 @@ public class RowMatrix extends BaseMatrix {
     this.values = values;
   }
 
+  // 1 * values^T, sharing values
+  LowRankMatrix toLowRank() {
+    double[] ones = new double[this.shape.rows];
+
+    Arrays.fill(ones, 1);
+
+    return new LowRankMatrix(this.shape, 1, ones, this.values);
+  }
+
   @Override
   public IDoubleMatrix timesLeft(Zero other) {
     assert other != null;
@@ -36,52 +46,41 @@ public class RowMatrix extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    ArrayList<MatrixCellValue> values = new ArrayList<>();
-    MatrixCellValue[] data = new MatrixCellValue[0];
+    // Every row of this is the same, so row r of the product is
+    // (sum of row r of other) * values
+    Shape newShape = Shape.matrix(other.shape().rows, this.shape.columns);
+    CSRBuilder builder = new CSRBuilder(
+      newShape,
+      other.ner * this.shape.columns
+    );
 
     for (int ri = 0; ri < other.ner; ri++) {
-      for (int c = 0; c < this.shape.columns; c++) {
-        double value = 0;
-
-        for (
-          int ptr = other.getRowStart(ri);
-          ptr < other.getRowEnd(ri);
-          ptr++
-        ) {
-          value += other.getValue(ptr) * this.get(other.getColumn(ptr), c);
-        }
-
-        if (value != 0) {
-          values.add(new MatrixCellValue(other.getRowNumber(ri), c, value));
-        }
+      double sum = 0;
+
+      for (int ptr = other.getRowStart(ri); ptr < other.getRowEnd(ri); ptr++) {
+        sum += other.getValue(ptr);
       }
-    }
 
-    Shape newShape = Shape.matrix(other.shape().rows, this.shape.columns);
+      if (sum == 0) {
+        continue;
+      }
 
-    if (values.size() == 0) {
-      return new Zero(newShape);
+      for (int c = 0; c < this.shape.columns; c++) {
+        builder.add(other.getRowNumber(ri), c, sum * this.values[c]);
+      }
     }
 
-    return new CSR(newShape, values.toArray(data));
+    return builder.build();
   }
 
+  // Products keep the rank-1 factors instead of filling every cell
+
   @Override
   public IDoubleMatrix timesLeft(Diagonal other) {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    double[][] data = new double[other.shape().rows][this.shape().columns];
-
-    for (int r = 0; r < other.shape().rows; r++) {
-      double scalar = other.get(r, other.indexCompliment(r));
-
-      for (int c = 0; c < this.shape.columns; c++) {
-        data[r][c] = scalar * this.get(other.indexCompliment(r), c);
-      }
-    }
-
-    return new Full(data);
+    return this.toLowRank().timesLeft(other);
   }
 
   @Override
@@ -89,15 +88,15 @@ public class RowMatrix extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
 
-    double[][] data = new double[other.shape().rows][this.shape.columns];
+    return this.toLowRank().timesLeft(other);
+  }
 
-    for (int r = 0; r < other.shape().rows; r++) {
-      for (int c = 0; c < this.shape.columns; c++) {
-        data[r][c] = other.get(r, 0) * this.get(0, c);
-      }
-    }
+  @Override
+  public IDoubleMatrix timesLeft(Full other) {
+    assert other != null;
+    assert other.shape().columns == this.shape.rows;
 
-    return new Full(data);
+    return this.toLowRank().timesLeft(other);
   }
 
   @Override
@@ -109,7 +108,7 @@ public class RowMatrix extends BaseMatrix {
   public IDoubleMatrix times(IDoubleMatrix other) {
     assert other != null;
 
-    return super.times(other);
+    return this.toLowRank().times(other);
   }
 
   @Override
@@ -221,6 +220,10 @@ public class RowMatrix extends BaseMatrix {
     assert other != null;
     assert other.shape().equals(this.shape);
 
+    if (other instanceof RowMatrix || other instanceof LowRankMatrix) {
+      return this.toLowRank().plus(other);
+    }
+
     double[][] data = this.data();
 
     for (int r = 0; r < this.shape.rows; r++) {
@@ -255,6 +258,37 @@ public class RowMatrix extends BaseMatrix {
     return this.values[column];
   }
 
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    for (int r = 0; r < this.shape.rows; r++) {
+      this.forEachInRow(r, consumer);
+    }
+  }
+
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.shape.rows;
+
+    for (int c = 0; c < this.shape.columns; c++) {
+      if (this.values[c] != 0) {
+        consumer.accept(row, c, this.values[c]);
+      }
+    }
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert 0 <= column && column < this.shape.columns;
+
+    if (this.values[column] == 0) {
+      return;
+    }
+
+    for (int r = 0; r < this.shape.rows; r++) {
+      consumer.accept(r, column, this.values[column]);
+    }
+  }
+
   @Override
   public double[][] data() {
     double[][] data = new double[this.shape.rows][this.shape.columns];
@@ -289,7 +323,13 @@ public class RowMatrix extends BaseMatrix {
 
   @Override
   public double frobeniusNorm() {
-    return Math.sqrt(this.shape.rows * this.normInfinity());
+    double sum = 0;
+
+    for (double v : this.values) {
+      sum += v * v;
+    }
+
+    return Math.sqrt(this.shape.rows * sum);
   }
 
   @Override
@@ -298,24 +338,26 @@ public class RowMatrix extends BaseMatrix {
   }
 
   @Override
-  public String toString() {
+  public void writeTo(Appendable out) throws IOException {
     if (this.values.length == 0) {
-      return "\n";
+      out.append('\n');
+
+      return;
     }
 
-    String out = super.toString();
-    String row = "";
+    this.writeHeader(out);
+
+    // Every row is the same, so it is rendered once
+    StringBuilder row = new StringBuilder();
 
     for (int i = 0; i < this.values.length - 1; i++) {
-      row += this.values[i] + " ";
+      row.append(this.values[i]).append(' ');
     }
 
-    row += this.values[this.values.length - 1] + "\n";
+    row.append(this.values[this.values.length - 1]).append('\n');
 
     for (int i = 0; i < this.shape.rows; i++) {
-      out += row;
+      out.append(row);
     }
-
-    return out;
   }
 }
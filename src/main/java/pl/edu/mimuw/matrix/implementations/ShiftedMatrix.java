@@ -0,0 +1,492 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.util.Arrays;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
+import pl.edu.mimuw.matrix.Shape;
+
+// base + shift * 1 * 1^T, every cell of base shifted by the same scalar.
+//
+// Adding a constant to a structured matrix keeps the structure: cells are
+// read from base, norms are computed from its non-zero cells, and products
+// are base products followed by a rank-1 update,
+//   (A + s11^T)B = AB + s1(1^T B),   B(A + s11^T) = BA + s(B1)1^T,
+// which stays shifted whenever the update is constant. The dense values
+// are only built by data().
+public final class ShiftedMatrix extends BaseMatrix {
+
+  private final IDoubleMatrix base;
+  private final double shift;
+
+  public ShiftedMatrix(IDoubleMatrix base, double shift) {
+    assert base != null;
+
+    this.base = base;
+    this.shift = shift;
+  }
+
+  // base + shift, collapsing nested shifts. Dense and lazy matrices store or
+  // defer every cell anyway, and a low-rank one takes the shift as one more
+  // rank-1 term, so they add the shift themselves.
+  static IDoubleMatrix shift(IDoubleMatrix base, double shift) {
+    assert base != null;
+
+    if (shift == 0) {
+      return base;
+    }
+
+    if (base instanceof ShiftedMatrix) {
+      ShiftedMatrix shifted = (ShiftedMatrix) base;
+
+      return shift(shifted.base, shifted.shift + shift);
+    }
+
+    if (
+      base instanceof Full ||
+      base instanceof OffHeapFull ||
+      base instanceof LazyMatrix ||
+      base instanceof LowRankMatrix
+    ) {
+      return base.plus(shift);
+    }
+
+    return new ShiftedMatrix(base, shift);
+  }
+
+  public IDoubleMatrix base() {
+    return this.base;
+  }
+
+  public double shift() {
+    return this.shift;
+  }
+
+  @Override
+  public Shape shape() {
+    return this.base.shape();
+  }
+
+  // Sums of the rows of m, reading shifted matrices from their base
+  private static double[] rowSums(IDoubleMatrix m) {
+    if (m instanceof ShiftedMatrix) {
+      ShiftedMatrix shifted = (ShiftedMatrix) m;
+      double[] sums = rowSums(shifted.base);
+
+      for (int r = 0; r < sums.length; r++) {
+        sums[r] += shifted.shift * m.shape().columns;
+      }
+
+      return sums;
+    }
+
+    double[] sums = new double[m.shape().rows];
+
+    m.forEachNonZero((row, column, value) -> sums[row] += value);
+
+    return sums;
+  }
+
+  private static double[] columnSums(IDoubleMatrix m) {
+    if (m instanceof ShiftedMatrix) {
+      ShiftedMatrix shifted = (ShiftedMatrix) m;
+      double[] sums = columnSums(shifted.base);
+
+      for (int c = 0; c < sums.length; c++) {
+        sums[c] += shifted.shift * m.shape().rows;
+      }
+
+      return sums;
+    }
+
+    double[] sums = new double[m.shape().columns];
+
+    m.forEachNonZero((row, column, value) -> sums[column] += value);
+
+    return sums;
+  }
+
+  private static double[] constant(int length, double value) {
+    double[] values = new double[length];
+
+    Arrays.fill(values, value);
+
+    return values;
+  }
+
+  private static boolean isConstant(double[] values) {
+    for (double v : values) {
+      if (v != values[0]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  // product + u * v^T. A constant update only shifts product, any other
+  // fills every cell.
+  private static IDoubleMatrix plusOuter(
+    IDoubleMatrix product,
+    double[] u,
+    double[] v
+  ) {
+    if (isConstant(u) && isConstant(v)) {
+      return shift(product, u[0] * v[0]);
+    }
+
+    Shape shape = product.shape();
+    double[] data = new double[shape.rows * shape.columns];
+
+    addScaled(product, 1, data);
+
+    for (int r = 0; r < shape.rows; r++) {
+      DenseKernels.INSTANCE.axpy(
+        u[r],
+        v,
+        0,
+        data,
+        r * shape.columns,
+        shape.columns
+      );
+    }
+
+    return ResultFormat.dense(shape, data);
+  }
+
+  @Override
+  public IDoubleMatrix times(IDoubleMatrix other) {
+    assert other != null;
+    assert this.shape().columns == other.shape().rows;
+
+    double[] sums = columnSums(other);
+
+    for (int c = 0; c < sums.length; c++) {
+      sums[c] *= this.shift;
+    }
+
+    // A dense result with an off-heap operand stays in its arena
+    if (other instanceof OffHeapFull) {
+      return ((OffHeapFull) other).plusEveryRow(this.base.times(other), sums);
+    }
+
+    return plusOuter(
+      this.base.times(other),
+      constant(this.shape().rows, 1),
+      sums
+    );
+  }
+
+  @Override
+  public IDoubleMatrix times(double scalar) {
+    if (scalar == 0) {
+      return new Zero(this.shape());
+    }
+
+    return shift(this.base.times(scalar), this.shift * scalar);
+  }
+
+  @Override
+  public IDoubleMatrix plus(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().equals(this.shape());
+
+    return shift(this.base.plus(other), this.shift);
+  }
+
+  @Override
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().equals(this.shape());
+
+    return shift(this.base.minus(other), this.shift);
+  }
+
+  @Override
+  public IDoubleMatrix plus(double scalar) {
+    return shift(this, scalar);
+  }
+
+  @Override
+  public double get(int row, int column) {
+    return this.base.get(row, column) + this.shift;
+  }
+
+  // Row values of base are gathered into values, which must be zeroed
+  private void forEachInRow(
+    int row,
+    double[] values,
+    IMatrixCellConsumer consumer
+  ) {
+    this.base.forEachInRow(row, (r, column, value) -> values[column] = value);
+
+    for (int c = 0; c < values.length; c++) {
+      double value = values[c] + this.shift;
+
+      values[c] = 0;
+
+      if (value != 0) {
+        consumer.accept(row, c, value);
+      }
+    }
+  }
+
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    double[] values = new double[this.shape().columns];
+
+    for (int r = 0; r < this.shape().rows; r++) {
+      this.forEachInRow(r, values, consumer);
+    }
+  }
+
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.shape().rows;
+
+    this.forEachInRow(row, new double[this.shape().columns], consumer);
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert 0 <= column && column < this.shape().columns;
+
+    double[] values = new double[this.shape().rows];
+
+    this.base.forEachInColumn(column, (row, c, value) -> values[row] = value);
+
+    for (int r = 0; r < values.length; r++) {
+      double value = values[r] + this.shift;
+
+      if (value != 0) {
+        consumer.accept(r, column, value);
+      }
+    }
+  }
+
+  @Override
+  public double[][] data() {
+    double[][] data = this.base.data();
+
+    for (double[] row : data) {
+      for (int c = 0; c < row.length; c++) {
+        row[c] += this.shift;
+      }
+    }
+
+    return data;
+  }
+
+  // Cells missing from base hold |shift|, the stored ones |value + shift|
+
+  @Override
+  public double normOne() {
+    Shape shape = this.shape();
+    double shift = this.shift;
+    double[] sums = new double[shape.columns];
+    int[] counts = new int[shape.columns];
+
+    this.base.forEachNonZero((row, column, value) -> {
+      sums[column] += Math.abs(value + shift);
+      counts[column]++;
+    });
+
+    double max = 0;
+
+    for (int c = 0; c < shape.columns; c++) {
+      max =
+        Math.max(max, sums[c] + (shape.rows - counts[c]) * Math.abs(shift));
+    }
+
+    return max;
+  }
+
+  @Override
+  public double normInfinity() {
+    Shape shape = this.shape();
+    double shift = this.shift;
+    double[] sums = new double[shape.rows];
+    int[] counts = new int[shape.rows];
+
+    this.base.forEachNonZero((row, column, value) -> {
+      sums[row] += Math.abs(value + shift);
+      counts[row]++;
+    });
+
+    double max = 0;
+
+    for (int r = 0; r < shape.rows; r++) {
+      max =
+        Math.max(max, sums[r] + (shape.columns - counts[r]) * Math.abs(shift));
+    }
+
+    return max;
+  }
+
+  @Override
+  public double frobeniusNorm() {
+    Shape shape = this.shape();
+    double shift = this.shift;
+    double[] sum = new double[1];
+    long[] count = new long[1];
+
+    this.base.forEachNonZero((row, column, value) -> {
+      sum[0] += (value + shift) * (value + shift);
+      count[0]++;
+    });
+
+    long missing = (long) shape.rows * shape.columns - count[0];
+
+    return Math.sqrt(sum[0] + missing * shift * shift);
+  }
+
+  // other * (base + shift), where other's row sums scale the update
+  private IDoubleMatrix timesLeftGeneric(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().columns == this.shape().rows;
+
+    double[] sums = rowSums(other);
+
+    for (int r = 0; r < sums.length; r++) {
+      sums[r] *= this.shift;
+    }
+
+    return plusOuter(
+      other.times(this.base),
+      sums,
+      constant(this.shape().columns, 1)
+    );
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Zero other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSR other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSC other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Full other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Diagonal other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(Vector other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(AntiDiagonal other) {
+    return this.timesLeftGeneric(other);
+  }
+
+  // other + (base + shift) = (other + base) + shift
+
+  private IDoubleMatrix plusLeftGeneric(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().equals(this.shape());
+
+    return shift(other.plus(this.base), this.shift);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Identity other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Zero other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSR other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(CSC other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Full other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Diagonal other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(Vector other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix plusLeft(AntiDiagonal other) {
+    return this.plusLeftGeneric(other);
+  }
+
+  // other - (base + shift) = (other - base) - shift
+
+  private IDoubleMatrix minusLeftGeneric(IDoubleMatrix other) {
+    assert other != null;
+    assert other.shape().equals(this.shape());
+
+    return shift(other.minus(this.base), -this.shift);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Identity other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Zero other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSR other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSC other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Full other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Diagonal other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Vector other) {
+    return this.minusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(AntiDiagonal other) {
+    return this.minusLeftGeneric(other);
+  }
+}
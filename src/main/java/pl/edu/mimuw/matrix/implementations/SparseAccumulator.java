@@ -0,0 +1,113 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.util.Arrays;
+
+// Collects the entries of a single sparse output row. Narrow rows are
+// accumulated in a dense array indexed by column, wide ones in an open
+// addressing hash table sized by the largest number of products per row.
+final class SparseAccumulator {
+
+  private static final int DENSE_COLUMN_LIMIT = 1 << 20;
+  private static final int EMPTY = -1;
+
+  private final boolean dense;
+  private final double[] values;
+  private final int[] keys; // hash mode only
+  private final int mask;
+  private final int[] touched;
+  private int size;
+
+  SparseAccumulator(int columns, int maxRowProducts) {
+    assert columns > 0;
+    assert maxRowProducts >= 0;
+
+    int capacity = Math.min(columns, Math.max(maxRowProducts, 1));
+
+    this.dense = columns <= DENSE_COLUMN_LIMIT;
+    this.touched = new int[capacity];
+
+    if (this.dense) {
+      this.values = new double[columns];
+      this.keys = new int[columns];
+      this.mask = 0;
+
+      Arrays.fill(this.keys, EMPTY);
+    } else {
+      int slots = Integer.highestOneBit(capacity) << 2;
+
+      this.values = new double[slots];
+      this.keys = new int[slots];
+      this.mask = slots - 1;
+
+      Arrays.fill(this.keys, EMPTY);
+    }
+  }
+
+  private int slot(int column) {
+    if (this.dense) {
+      return column;
+    }
+
+    int s = (column * 0x9E3779B9) & this.mask;
+
+    while (this.keys[s] != EMPTY && this.keys[s] != column) {
+      s = (s + 1) & this.mask;
+    }
+
+    return s;
+  }
+
+  void add(int column, double value) {
+    int s = this.slot(column);
+
+    if (this.keys[s] == EMPTY) {
+      this.keys[s] = column;
+      this.values[s] = value;
+      this.touched[this.size++] = column;
+    } else {
+      this.values[s] += value;
+    }
+  }
+
+  int size() {
+    return this.size;
+  }
+
+  void clear() {
+    // Resolve every slot before emptying any of them, so that probe chains
+    // stay intact while they are being looked up.
+    for (int i = 0; i < this.size; i++) {
+      this.touched[i] = this.slot(this.touched[i]);
+    }
+
+    for (int i = 0; i < this.size; i++) {
+      this.keys[this.touched[i]] = EMPTY;
+      this.values[this.touched[i]] = 0;
+    }
+
+    this.size = 0;
+  }
+
+  // Writes the accumulated row sorted by column, skipping entries that
+  // cancelled out, and clears the accumulator. Returns the number written.
+  int drain(int[] column, double[] value, int offset) {
+    Arrays.sort(this.touched, 0, this.size);
+
+    int written = 0;
+
+    for (int i = 0; i < this.size; i++) {
+      int c = this.touched[i];
+      double v = this.values[this.slot(c)];
+
+      if (v != 0) {
+        column[offset + written] = c;
+        value[offset + written] = v;
+        written++;
+      }
+    }
+
+    this.clear();
+
+    return written;
+  }
+}
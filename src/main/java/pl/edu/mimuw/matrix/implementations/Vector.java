@@ -1,7 +1,9 @@
 package pl.edu.mimuw.matrix.implementations;
 
+import java.io.IOException;
 import java.util.Arrays;
 import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
 import pl.edu.mimuw.matrix.Shape;
 
 public class Vector extends BaseMatrix {
@@ -42,11 +44,38 @@ public class Vector extends BaseMatrix {
     this.index[nnz] = values.length;
   }
 
-  private Vector(double[] value, int[] index) {
+  // Both arrays end with a sentinel: value 0 at index numberOfRows()
+  Vector(double[] value, int[] index) {
     this.value = value;
     this.index = index;
   }
 
+  double[] values() {
+    return this.value;
+  }
+
+  int[] indices() {
+    return this.index;
+  }
+
+  double[] toArray() {
+    double[] values = new double[this.numberOfRows()];
+
+    for (int i = 0; i < this.index.length - 1; i++) {
+      values[this.index[i]] = this.value[i];
+    }
+
+    return values;
+  }
+
+  public MutableVector toMutable() {
+    return MutableVector.copyOf(this);
+  }
+
+  int nnz() {
+    return this.index.length - 1;
+  }
+
   public int numberOfRows() {
     return this.index[this.index.length - 1];
   }
@@ -63,30 +92,21 @@ public class Vector extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.numberOfRows();
 
-    double[] values = new double[this.numberOfRows()];
+    double[] values = new double[other.shape().rows];
 
-    for (int i = 0; i < this.numberOfRows(); i++) {
-      int rowPtr = other.getRowPointer(i);
-      int thisRowIndex = 0;
-      values[i] = 0;
-
-      for (
-        int j = other.getRowStart(rowPtr);
-        j < other.getRowEnd(rowPtr);
-        j++
-      ) {
-        int columnIndex = other.getColumn(j);
-
-        // Move the vector pointer
-        while (columnIndex > this.index[thisRowIndex]) {
-          thisRowIndex++;
-        }
+    other.multiplyInto(this, values);
 
-        if (this.index[thisRowIndex] == columnIndex) {
-          values[i] += other.getValue(j) * this.value[thisRowIndex];
-        }
-      }
-    }
+    return new Vector(values);
+  }
+
+  @Override
+  public IDoubleMatrix timesLeft(CSC other) {
+    assert other != null;
+    assert other.shape().columns == this.numberOfRows();
+
+    double[] values = new double[other.shape().rows];
+
+    other.multiplyInto(this, values);
 
     return new Vector(values);
   }
@@ -124,12 +144,13 @@ public class Vector extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.numberOfRows();
 
-    Shape otherShape = other.shape();
-    double[] newValue = new double[otherShape.rows];
+    // Entry k moves to row indexCompliment(k), scaled by that row's value
+    double[] newValue = new double[other.shape().rows];
 
     for (int i = 0; i < this.index.length - 1; i++) {
-      newValue[this.index[i]] =
-        this.value[i] * other.get(this.index[i], this.index[i]);
+      int row = other.indexCompliment(this.index[i]);
+
+      newValue[row] = other.values[row] * this.value[i];
     }
 
     return new Vector(newValue);
@@ -140,16 +161,7 @@ public class Vector extends BaseMatrix {
     assert other != null;
     assert other.shape().columns == this.numberOfRows();
 
-    Shape otherShape = other.shape();
-    double[] newValue = new double[otherShape.rows];
-
-    for (int i = 0; i < this.index.length - 1; i++) {
-      int otherIndex = otherShape.rows - this.index[i] - 1;
-      newValue[this.index[i]] =
-        this.value[i] * other.get(otherIndex, otherIndex);
-    }
-
-    return new Vector(newValue);
+    return this.timesLeft((Diagonal) other);
   }
 
   @Override
@@ -213,12 +225,11 @@ public class Vector extends BaseMatrix {
     assert this.shape().equals(other.shape());
 
     double[] newData = new double[this.numberOfRows()];
-    double[][] oldData = other.data();
 
     int iThis = 0;
 
-    for (int i = 0; i < oldData.length; i++) {
-      double newValue = oldData[i][0];
+    for (int i = 0; i < newData.length; i++) {
+      double newValue = other.get(i, 0);
 
       if (this.index[iThis] == i) {
         newValue += this.value[iThis++];
@@ -266,6 +277,13 @@ public class Vector extends BaseMatrix {
     return other.plusLeft(this);
   }
 
+  @Override
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
+
+    return other.minusLeft(this);
+  }
+
   @Override
   public IDoubleMatrix plus(double scalar) {
     if (Math.abs(scalar) == 0) return this;
@@ -298,6 +316,31 @@ public class Vector extends BaseMatrix {
     return 0;
   }
 
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {
+    for (int i = 0; i < this.index.length - 1; i++) {
+      consumer.accept(this.index[i], 0, this.value[i]);
+    }
+  }
+
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.numberOfRows();
+
+    int i = Arrays.binarySearch(this.index, 0, this.index.length - 1, row);
+
+    if (i >= 0) {
+      consumer.accept(row, 0, this.value[i]);
+    }
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert column == 0;
+
+    this.forEachNonZero(consumer);
+  }
+
   @Override
   public double[][] data() {
     // ∀i in I[value]. value[i] = v[sum{ offset[j] | 0 <= j <= i }]
@@ -357,6 +400,16 @@ public class Vector extends BaseMatrix {
 
   @Override
   public IDoubleMatrix plusLeft(Vector other) {
+    return this.merge(other, 1);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Vector other) {
+    return this.merge(other, -1);
+  }
+
+  // other + sign * this, merging the stored rows of both in one pass
+  private IDoubleMatrix merge(Vector other, double sign) {
     assert other != null;
     assert other.numberOfRows() == this.numberOfRows();
 
@@ -372,7 +425,7 @@ public class Vector extends BaseMatrix {
       )
     ) {
       if (this.index[iThis] == other.index[iOther]) {
-        double newValue = this.value[iThis] + other.value[iOther];
+        double newValue = sign * this.value[iThis] + other.value[iOther];
 
         if (newValue != 0) {
           newValues[iNew] = newValue;
@@ -384,7 +437,7 @@ public class Vector extends BaseMatrix {
         iThis++;
         iOther++;
       } else if (this.index[iThis] < other.index[iOther]) {
-        newValues[iNew] = this.value[iThis];
+        newValues[iNew] = sign * this.value[iThis];
         newIndex[iNew] = this.index[iThis];
 
         iNew++;
@@ -408,13 +461,20 @@ public class Vector extends BaseMatrix {
   }
 
   @Override
-  public String toString() {
-    String out = super.toString();
+  public void writeTo(Appendable out) throws IOException {
+    this.writeHeader(out);
+
+    // Stored entries are sorted by row, so one walk over them suffices
+    int i = 0;
 
     for (int r = 0; r < this.numberOfRows(); r++) {
-      out += this.get(r, 0) + "\n";
-    }
+      double value = 0;
+
+      if (this.index[i] == r) {
+        value = this.value[i++];
+      }
 
-    return out;
+      out.append(Double.toString(value)).append('\n');
+    }
   }
 }
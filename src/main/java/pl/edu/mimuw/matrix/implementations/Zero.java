@@ -1,6 +1,8 @@
 package pl.edu.mimuw.matrix.implementations;
 
+import java.io.IOException;
 import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.IMatrixCellConsumer;
 import pl.edu.mimuw.matrix.Shape;
 
 public class Zero extends BaseMatrix {
@@ -40,19 +42,15 @@ public class Zero extends BaseMatrix {
   }
 
   @Override
-  public IDoubleMatrix plus(double scalar) {
-    if (Math.abs(scalar) == 0) {
-      return this;
-    }
+  public IDoubleMatrix minus(IDoubleMatrix other) {
+    assert other != null;
 
-    double[][] values = new double[this.shape.rows][this.shape.columns];
-    for (int i = 0; i < this.shape.rows; i++) {
-      for (int j = 0; j < this.shape.columns; j++) {
-        values[i][j] = scalar;
-      }
-    }
+    return other.minusLeft(this);
+  }
 
-    return new Full(values);
+  @Override
+  public IDoubleMatrix plus(double scalar) {
+    return ShiftedMatrix.shift(this, scalar);
   }
 
   @Override
@@ -63,6 +61,19 @@ public class Zero extends BaseMatrix {
     return 0;
   }
 
+  @Override
+  public void forEachNonZero(IMatrixCellConsumer consumer) {}
+
+  @Override
+  public void forEachInRow(int row, IMatrixCellConsumer consumer) {
+    assert 0 <= row && row < this.shape.rows;
+  }
+
+  @Override
+  public void forEachInColumn(int column, IMatrixCellConsumer consumer) {
+    assert 0 <= column && column < this.shape.columns;
+  }
+
   @Override
   public double[][] data() {
     double[][] data = new double[shape.rows][shape.columns];
@@ -113,6 +124,11 @@ public class Zero extends BaseMatrix {
     return plusLeftGeneric(other);
   }
 
+  @Override
+  public IDoubleMatrix plusLeft(CSC other) {
+    return plusLeftGeneric(other);
+  }
+
   @Override
   public IDoubleMatrix plusLeft(Full other) {
     return plusLeftGeneric(other);
@@ -138,6 +154,48 @@ public class Zero extends BaseMatrix {
     return plusLeftGeneric(other);
   }
 
+  // other - 0 is other, just like other + 0
+
+  @Override
+  public IDoubleMatrix minusLeft(Identity other) {
+    return plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Zero other) {
+    return plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSR other) {
+    return plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(CSC other) {
+    return plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Full other) {
+    return plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Diagonal other) {
+    return plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(Vector other) {
+    return plusLeftGeneric(other);
+  }
+
+  @Override
+  public IDoubleMatrix minusLeft(AntiDiagonal other) {
+    return plusLeftGeneric(other);
+  }
+
   private IDoubleMatrix timesLeftGeneric(IDoubleMatrix other) {
     assert other != null;
     assert other.shape().columns == this.shape.rows;
@@ -155,6 +213,11 @@ public class Zero extends BaseMatrix {
     return timesLeftGeneric(other);
   }
 
+  @Override
+  public IDoubleMatrix timesLeft(CSC other) {
+    return timesLeftGeneric(other);
+  }
+
   @Override
   public IDoubleMatrix timesLeft(Full other) {
     return timesLeftGeneric(other);
@@ -176,9 +239,8 @@ public class Zero extends BaseMatrix {
   }
 
   @Override
-  public String toString() {
-    String out = super.toString();
-    String row = "";
+  public void writeTo(Appendable out) throws IOException {
+    String row;
 
     switch (this.shape.columns) {
       case 1:
@@ -192,10 +254,10 @@ public class Zero extends BaseMatrix {
         break;
     }
 
+    this.writeHeader(out);
+
     for (int i = 0; i < this.shape.rows; i++) {
-      out += row;
+      out.append(row);
     }
-
-    return out;
   }
 }
@@ -0,0 +1,141 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Compares the scalar kernels with the ones picked at startup, run with
+// ./gradlew -Psimd simdBenchmark
+public final class DenseKernelsBenchmark {
+
+  private static final int LENGTH = 1 << 16;
+  private static final int KC = 256;
+  private static final int WARMUP = 20000;
+  private static final int RUNS = 15;
+  private static final int REPEATS = 100;
+
+  private static double sink;
+
+  private DenseKernelsBenchmark() {}
+
+  private interface Kernel {
+    void run(DenseKernels kernels);
+  }
+
+  public static void main(String[] args) {
+    Random random = new Random(42);
+    double[] x = random.doubles(LENGTH, -1, 1).toArray();
+    double[] y = random.doubles(LENGTH, -1, 1).toArray();
+    double[] out = new double[LENGTH];
+    double[] packedA = random.doubles(4 * KC, -1, 1).toArray();
+    double[] packedB = random.doubles(4 * KC, -1, 1).toArray();
+    double[] tile = new double[16];
+
+    DenseKernels scalar = new DenseKernels();
+    DenseKernels selected = DenseKernels.INSTANCE;
+
+    System.out.printf(
+      "%-14s %12s %12s %8s  (%s)%n",
+      "kernel",
+      "scalar ns",
+      "selected ns",
+      "speedup",
+      selected.name()
+    );
+
+    report(
+      "add scalar",
+      LENGTH,
+      scalar,
+      selected,
+      k -> k.add(x, 0, 1.5, out, 0, LENGTH)
+    );
+    report(
+      "multiply",
+      LENGTH,
+      scalar,
+      selected,
+      k -> k.multiply(x, 0, 1.5, out, 0, LENGTH)
+    );
+    report(
+      "add",
+      LENGTH,
+      scalar,
+      selected,
+      k -> k.add(x, 0, y, 0, out, 0, LENGTH)
+    );
+    report(
+      "sumAbs",
+      LENGTH,
+      scalar,
+      selected,
+      k -> sink += k.sumAbs(x, 0, LENGTH)
+    );
+    report(
+      "sumSquares",
+      LENGTH,
+      scalar,
+      selected,
+      k -> sink += k.sumSquares(x, 0, LENGTH)
+    );
+    report(
+      "axpy",
+      LENGTH,
+      scalar,
+      selected,
+      k -> k.axpy(0.5, x, 0, out, 0, LENGTH)
+    );
+    report(
+      "gemm4x4",
+      16 * KC,
+      scalar,
+      selected,
+      k -> k.gemm4x4(KC, packedA, 0, packedB, 0, tile, 0, 4)
+    );
+
+    if (sink == 42) {
+      System.out.println();
+    }
+  }
+
+  private static void report(
+    String name,
+    int operations,
+    DenseKernels scalar,
+    DenseKernels selected,
+    Kernel kernel
+  ) {
+    double scalarTime = measure(scalar, kernel) / operations;
+    double selectedTime = measure(selected, kernel) / operations;
+
+    System.out.printf(
+      "%-14s %12.4f %12.4f %7.2fx%n",
+      name,
+      scalarTime,
+      selectedTime,
+      scalarTime / selectedTime
+    );
+  }
+
+  // Median time of one call in nanoseconds
+  private static double measure(DenseKernels kernels, Kernel kernel) {
+    for (int i = 0; i < WARMUP; i++) {
+      kernel.run(kernels);
+    }
+
+    double[] times = new double[RUNS];
+
+    for (int run = 0; run < RUNS; run++) {
+      long start = System.nanoTime();
+
+      for (int i = 0; i < REPEATS; i++) {
+        kernel.run(kernels);
+      }
+
+      times[run] = (double) (System.nanoTime() - start) / REPEATS;
+    }
+
+    Arrays.sort(times);
+
+    return times[RUNS / 2];
+  }
+}
@@ -0,0 +1,279 @@
+package pl.edu.mimuw.matrix.implementations;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// jdk.incubator.vector implementation of DenseKernels, loaded reflectively.
+// Every loop runs whole vectors of the preferred species and leaves the tail
+// to the scalar implementation.
+final class VectorDenseKernels extends DenseKernels {
+
+  private static final VectorSpecies<Double> SPECIES =
+    DoubleVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Double> TILE = DoubleVector.SPECIES_256;
+
+  // The 4 x 4 tile needs native 256-bit vectors, emulated ones are slower
+  // than the scalar kernel
+  private static final boolean VECTOR_TILE = SPECIES.vectorBitSize() >= 256;
+
+  VectorDenseKernels() {}
+
+  @Override
+  String name() {
+    return "vector " + SPECIES.vectorBitSize() + "-bit";
+  }
+
+  @Override
+  int add(
+    double[] src,
+    int srcOffset,
+    double scalar,
+    double[] dst,
+    int dstOffset,
+    int length
+  ) {
+    int bound = SPECIES.loopBound(length);
+    int nnz = 0;
+    int i = 0;
+
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector v = DoubleVector
+        .fromArray(SPECIES, src, srcOffset + i)
+        .add(scalar);
+
+      v.intoArray(dst, dstOffset + i);
+      nnz += v.compare(VectorOperators.NE, 0).trueCount();
+    }
+
+    return (
+      nnz +
+      super.add(src, srcOffset + i, scalar, dst, dstOffset + i, length - i)
+    );
+  }
+
+  @Override
+  int multiply(
+    double[] src,
+    int srcOffset,
+    double scalar,
+    double[] dst,
+    int dstOffset,
+    int length
+  ) {
+    int bound = SPECIES.loopBound(length);
+    int nnz = 0;
+    int i = 0;
+
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector v = DoubleVector
+        .fromArray(SPECIES, src, srcOffset + i)
+        .mul(scalar);
+
+      v.intoArray(dst, dstOffset + i);
+      nnz += v.compare(VectorOperators.NE, 0).trueCount();
+    }
+
+    return (
+      nnz +
+      super.multiply(src, srcOffset + i, scalar, dst, dstOffset + i, length - i)
+    );
+  }
+
+  @Override
+  int add(
+    double[] a,
+    int aOffset,
+    double[] b,
+    int bOffset,
+    double[] dst,
+    int dstOffset,
+    int length
+  ) {
+    int bound = SPECIES.loopBound(length);
+    int nnz = 0;
+    int i = 0;
+
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector v = DoubleVector
+        .fromArray(SPECIES, a, aOffset + i)
+        .add(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+
+      v.intoArray(dst, dstOffset + i);
+      nnz += v.compare(VectorOperators.NE, 0).trueCount();
+    }
+
+    return (
+      nnz +
+      super.add(
+        a,
+        aOffset + i,
+        b,
+        bOffset + i,
+        dst,
+        dstOffset + i,
+        length - i
+      )
+    );
+  }
+
+  @Override
+  int subtract(
+    double[] a,
+    int aOffset,
+    double[] b,
+    int bOffset,
+    double[] dst,
+    int dstOffset,
+    int length
+  ) {
+    int bound = SPECIES.loopBound(length);
+    int nnz = 0;
+    int i = 0;
+
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector v = DoubleVector
+        .fromArray(SPECIES, a, aOffset + i)
+        .sub(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+
+      v.intoArray(dst, dstOffset + i);
+      nnz += v.compare(VectorOperators.NE, 0).trueCount();
+    }
+
+    return (
+      nnz +
+      super.subtract(
+        a,
+        aOffset + i,
+        b,
+        bOffset + i,
+        dst,
+        dstOffset + i,
+        length - i
+      )
+    );
+  }
+
+  @Override
+  void accumulateAbs(
+    double[] src,
+    int srcOffset,
+    double[] dst,
+    int dstOffset,
+    int length
+  ) {
+    int bound = SPECIES.loopBound(length);
+    int i = 0;
+
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector
+        .fromArray(SPECIES, src, srcOffset + i)
+        .abs()
+        .add(DoubleVector.fromArray(SPECIES, dst, dstOffset + i))
+        .intoArray(dst, dstOffset + i);
+    }
+
+    super.accumulateAbs(src, srcOffset + i, dst, dstOffset + i, length - i);
+  }
+
+  @Override
+  double sumAbs(double[] src, int offset, int length) {
+    int bound = SPECIES.loopBound(length);
+    DoubleVector sum = DoubleVector.zero(SPECIES);
+    int i = 0;
+
+    for (; i < bound; i += SPECIES.length()) {
+      sum = sum.add(DoubleVector.fromArray(SPECIES, src, offset + i).abs());
+    }
+
+    return (
+      sum.reduceLanes(VectorOperators.ADD) +
+      super.sumAbs(src, offset + i, length - i)
+    );
+  }
+
+  @Override
+  double sumSquares(double[] src, int offset, int length) {
+    int bound = SPECIES.loopBound(length);
+    DoubleVector sum = DoubleVector.zero(SPECIES);
+    int i = 0;
+
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector v = DoubleVector.fromArray(SPECIES, src, offset + i);
+
+      sum = v.fma(v, sum);
+    }
+
+    return (
+      sum.reduceLanes(VectorOperators.ADD) +
+      super.sumSquares(src, offset + i, length - i)
+    );
+  }
+
+  @Override
+  void axpy(
+    double alpha,
+    double[] x,
+    int xOffset,
+    double[] y,
+    int yOffset,
+    int length
+  ) {
+    int bound = SPECIES.loopBound(length);
+    DoubleVector scale = DoubleVector.broadcast(SPECIES, alpha);
+    int i = 0;
+
+    for (; i < bound; i += SPECIES.length()) {
+      DoubleVector
+        .fromArray(SPECIES, x, xOffset + i)
+        .fma(scale, DoubleVector.fromArray(SPECIES, y, yOffset + i))
+        .intoArray(y, yOffset + i);
+    }
+
+    super.axpy(alpha, x, xOffset + i, y, yOffset + i, length - i);
+  }
+
+  @Override
+  void gemm4x4(
+    int kc,
+    double[] a,
+    int aAt,
+    double[] b,
+    int bAt,
+    double[] c,
+    int cAt,
+    int ldc
+  ) {
+    if (!VECTOR_TILE) {
+      super.gemm4x4(kc, a, aAt, b, bAt, c, cAt, ldc);
+
+      return;
+    }
+
+    // One vector per row of the tile, rows of A broadcast against B
+    DoubleVector c0 = DoubleVector.zero(TILE);
+    DoubleVector c1 = DoubleVector.zero(TILE);
+    DoubleVector c2 = DoubleVector.zero(TILE);
+    DoubleVector c3 = DoubleVector.zero(TILE);
+
+    for (int p = 0; p < kc; p++) {
+      DoubleVector row = DoubleVector.fromArray(TILE, b, bAt);
+
+      c0 = row.fma(DoubleVector.broadcast(TILE, a[aAt]), c0);
+      c1 = row.fma(DoubleVector.broadcast(TILE, a[aAt + 1]), c1);
+      c2 = row.fma(DoubleVector.broadcast(TILE, a[aAt + 2]), c2);
+      c3 = row.fma(DoubleVector.broadcast(TILE, a[aAt + 3]), c3);
+
+      aAt += 4;
+      bAt += 4;
+    }
+
+    c0.add(DoubleVector.fromArray(TILE, c, cAt)).intoArray(c, cAt);
+    cAt += ldc;
+    c1.add(DoubleVector.fromArray(TILE, c, cAt)).intoArray(c, cAt);
+    cAt += ldc;
+    c2.add(DoubleVector.fromArray(TILE, c, cAt)).intoArray(c, cAt);
+    cAt += ldc;
+    c3.add(DoubleVector.fromArray(TILE, c, cAt)).intoArray(c, cAt);
+  }
+}
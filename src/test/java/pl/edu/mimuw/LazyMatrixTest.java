@@ -0,0 +1,107 @@
+package pl.edu.mimuw;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.implementations.LazyMatrix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.lazy;
+
+public class LazyMatrixTest {
+
+  @ParameterizedTest
+  @ArgumentsSource(TestMatrixSameArgumentProvider.class)
+  void testElementwiseChainMatchesEager(IDoubleMatrix l, IDoubleMatrix r) {
+    final var expected = l.plus(r).minus(r.times(3)).times(2).plus(1).data();
+    final var result = lazy(l).plus(r).minus(r.times(3)).times(2).plus(1);
+
+    assertTrue(result instanceof LazyMatrix);
+    assertArrayEqualsWithTestPrecision(expected, result.data());
+    assertEquals(expected[1][2], result.get(1, 2), TEST_PRECISION);
+  }
+
+  @ParameterizedTest
+  @ArgumentsSource(TestMatrixArgumentProvider.class)
+  void testNormsMatchEager(IDoubleMatrix m) {
+    final var eager = m.plus(m).times(-0.5).minus(m);
+    final var result = lazy(m).plus(m).times(-0.5).minus(m);
+
+    assertEquals(eager.normOne(), result.normOne(), TEST_PRECISION);
+    assertEquals(eager.normInfinity(), result.normInfinity(), TEST_PRECISION);
+    assertEquals(eager.frobeniusNorm(), result.frobeniusNorm(), TEST_PRECISION);
+  }
+
+  @Test
+  void testProductOfChains() {
+    final var expected = FULL_2X3.plus(SPARSE_2X3)
+      .times(2)
+      .times(SPARSE_3X2.minus(ZERO_3X2).times(3))
+      .data();
+    final var result = lazy(FULL_2X3).plus(SPARSE_2X3)
+      .times(2)
+      .times(lazy(SPARSE_3X2).minus(ZERO_3X2).times(3));
+
+    assertArrayEqualsWithTestPrecision(expected, result.data());
+  }
+
+  @Test
+  void testMultiplyAdd() {
+    final var result = lazy(SPARSE_2X3)
+      .multiplyAdd(2, FULL_3X2, -1, FULL_2X3.times(FULL_3X2));
+
+    assertTrue(result instanceof LazyMatrix);
+    assertArrayEqualsWithTestPrecision(
+      FULL_2X3.times(FULL_3X2).data(),
+      result.data()
+    );
+  }
+
+  @Test
+  void testEagerOperandOnTheLeftStaysLazy() {
+    final var sum = DIAGONAL_3X3.plus(lazy(ANTI_DIAGONAL_3X3));
+    final var product = FULL_2X3.times(lazy(SPARSE_3X2));
+
+    assertTrue(sum instanceof LazyMatrix);
+    assertTrue(product instanceof LazyMatrix);
+    assertArrayEqualsWithTestPrecision(
+      DIAGONAL_3X3.plus(ANTI_DIAGONAL_3X3).data(),
+      sum.data()
+    );
+    assertArrayEqualsWithTestPrecision(
+      FULL_2X3.times(SPARSE_3X2).data(),
+      product.data()
+    );
+  }
+
+  @Test
+  void testSharedNodeIsEvaluatedOnce() {
+    final var shared = (LazyMatrix) lazy(SPARSE_2X3).times(FULL_3X2);
+    final var result = (LazyMatrix) shared.plus(shared.times(2)).minus(shared);
+
+    assertArrayEqualsWithTestPrecision(
+      SPARSE_2X3.times(FULL_3X2).times(2).data(),
+      result.data()
+    );
+    assertSame(shared.evaluate(), shared.evaluate());
+    assertSame(result.evaluate(), result.evaluate());
+  }
+
+  @Test
+  void testStructuredSumKeepsStructure() {
+    final var result = (LazyMatrix) lazy(DIAGONAL_3X3).plus(ID_3).times(2);
+
+    assertArrayEqualsWithTestPrecision(
+      DIAGONAL_3X3.plus(ID_3).times(2).data(),
+      result.data()
+    );
+    assertEquals(
+      DIAGONAL_3X3.plus(ID_3).getClass(),
+      result.evaluate().getClass()
+    );
+  }
+}
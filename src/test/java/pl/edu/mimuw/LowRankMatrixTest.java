@@ -0,0 +1,152 @@
+package pl.edu.mimuw;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.implementations.LowRankMatrix;
+import pl.edu.mimuw.matrix.implementations.RowMatrix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.*;
+import static pl.edu.mimuw.matrix.MatrixCellValue.cell;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+public class LowRankMatrixTest {
+
+  private static double[] factor(int n, int rank, int seed) {
+    final var values = new double[n * rank];
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (i * seed) % 7 - 3;
+    }
+
+    return values;
+  }
+
+  private static LowRankMatrix lowRank(int rows, int columns, int seed) {
+    return new LowRankMatrix(
+      matrix(rows, columns),
+      2,
+      factor(rows, 2, seed),
+      factor(columns, 2, seed + 2)
+    );
+  }
+
+  @Test
+  void testCellsAndNorms() {
+    final var m = lowRank(20, 15, 3);
+    final var expected = dense(m);
+
+    assertEquals(expected.get(4, 9), m.get(4, 9), TEST_PRECISION);
+    assertEquals(expected.normOne(), m.normOne(), TEST_PRECISION);
+    assertEquals(expected.normInfinity(), m.normInfinity(), TEST_PRECISION);
+    assertEquals(
+      expected.frobeniusNorm(),
+      m.frobeniusNorm(),
+      TEST_PRECISION
+    );
+  }
+
+  @Test
+  void testProductsStayFactored() {
+    final var m = lowRank(20, 15, 3);
+    final var expected = dense(m);
+    final var left = sparse(matrix(4, 20), cell(0, 3, 2), cell(3, 19, -1));
+    final var right = lowRank(15, 30, 5);
+    final var results = new IDoubleMatrix[] {
+      left.times(m),
+      dense(left).times(m),
+      m.times(right),
+      m.times(dense(right)),
+      m.times(right.times(2)).times(-1),
+    };
+    final var expectedResults = new IDoubleMatrix[] {
+      left.times(expected),
+      left.times(expected),
+      expected.times(dense(right)),
+      expected.times(dense(right)),
+      expected.times(dense(right)).times(-2),
+    };
+
+    for (int i = 0; i < results.length; i++) {
+      assertTrue(results[i] instanceof LowRankMatrix);
+      assertSameCells(expectedResults[i], results[i]);
+    }
+  }
+
+  @Test
+  void testSumsStayFactored() {
+    final var a = lowRank(20, 15, 3);
+    final var b = lowRank(20, 15, 4);
+    final var sum = a.plus(b).minus(a.times(3)).plus(1.5);
+
+    assertTrue(sum instanceof LowRankMatrix);
+    assertEquals(7, ((LowRankMatrix) sum).rank());
+    assertSameCells(dense(a).plus(b).minus(a.times(3)).plus(1.5), sum);
+
+    final var filled = a.plus(identity(20).times(dense(b)));
+
+    assertSameCells(dense(a).plus(b), filled);
+
+    final var zero = zero(matrix(20, 15));
+    final var constant = zero.plus(2);
+
+    assertSame(a, a.plus(zero));
+    assertSame(a, a.minus(zero));
+    assertTrue(a.plus(constant) instanceof LowRankMatrix);
+    assertTrue(a.minus(constant) instanceof LowRankMatrix);
+    assertEquals(3, ((LowRankMatrix) a.plus(constant)).rank());
+    assertSameCells(dense(a).plus(2), a.plus(constant));
+    assertSameCells(dense(a).minus(2), a.minus(constant));
+  }
+
+  @Test
+  void testRankOneMatrices() {
+    final var row = new RowMatrix(matrix(1, 4), new double[] { 1, 0, 2, 3 });
+    final var products = new IDoubleMatrix[] {
+      DIAGONAL_3X3.times(ROW_3X2),
+      ANTI_DIAGONAL_3X3.times(ROW_3X2.plus(ROW_3X2.times(2))),
+      COLUMN_3X2.times(FULL_3X2),
+      VECTOR_3.times(row),
+      FULL_2X3.times(ROW_3X2),
+    };
+    final var expected = new IDoubleMatrix[] {
+      DIAGONAL_3X3.times(dense(ROW_3X2)),
+      ANTI_DIAGONAL_3X3.times(dense(ROW_3X2).times(3)),
+      dense(COLUMN_3X2).times(FULL_3X2),
+      VECTOR_3.times(dense(row)),
+      FULL_2X3.times(dense(ROW_3X2)),
+    };
+
+    for (int i = 0; i < products.length; i++) {
+      assertSameCells(expected[i], products[i]);
+    }
+
+    assertTrue(VECTOR_3.times(row) instanceof LowRankMatrix);
+  }
+
+  @Test
+  void testLargeOuterProduct() {
+    final var size = 100_000;
+    final var u = new double[size];
+    final var v = new double[size];
+
+    for (int i = 0; i < size; i++) {
+      u[i] = i % 3;
+      v[i] = 1;
+    }
+
+    final var outer = LowRankMatrix.outer(u, v);
+    final var update = outer.plus(outer.times(-0.5)).times(identity(size));
+
+    assertTrue(update instanceof LowRankMatrix);
+    assertEquals(0.5, update.get(4, 77), TEST_PRECISION);
+    assertEquals(
+      Math.sqrt(0.25 * size * (33_333 + 4 * 33_333)),
+      update.frobeniusNorm(),
+      TEST_PRECISION
+    );
+  }
+}
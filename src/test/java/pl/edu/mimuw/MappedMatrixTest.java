@@ -0,0 +1,201 @@
+package pl.edu.mimuw;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import org.junit.jupiter.api.Test;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.MatrixCellValue;
+import pl.edu.mimuw.matrix.implementations.MappedCSR;
+import pl.edu.mimuw.matrix.implementations.MatrixFile;
+import pl.edu.mimuw.matrix.implementations.MutableVector;
+import pl.edu.mimuw.matrix.implementations.OffHeapArena;
+import pl.edu.mimuw.matrix.implementations.OffHeapFull;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.full;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.sparse;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.sparseColumns;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.vector;
+import static pl.edu.mimuw.matrix.MatrixCellValue.cell;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+public class MappedMatrixTest {
+
+  // Empty rows at the start, in the middle and at the end
+  private static final IDoubleMatrix SPARSE_5X4 = sparse(
+    matrix(5, 4),
+    cell(1, 0, 2),
+    cell(1, 3, -1),
+    cell(3, 1, 4),
+    cell(3, 2, -3)
+  );
+
+  private static void assertSameMatrix(
+    IDoubleMatrix expected,
+    IDoubleMatrix actual
+  ) {
+    assertEquals(expected.shape(), actual.shape());
+    assertArrayEqualsWithTestPrecision(expected.data(), actual.data());
+    assertEquals(expected.normOne(), actual.normOne(), TEST_PRECISION);
+    assertEquals(
+      expected.normInfinity(),
+      actual.normInfinity(),
+      TEST_PRECISION
+    );
+    assertEquals(
+      expected.frobeniusNorm(),
+      actual.frobeniusNorm(),
+      TEST_PRECISION
+    );
+
+    for (int r = 0; r < expected.shape().rows; r++) {
+      for (int c = 0; c < expected.shape().columns; c++) {
+        assertEquals(expected.get(r, c), actual.get(r, c), TEST_PRECISION);
+      }
+    }
+  }
+
+  @Test
+  void testMappedCSR() throws IOException {
+    final Path file = Files.createTempFile("matrix", ".csr");
+
+    try {
+      MappedCSR.write(file, SPARSE_5X4);
+
+      final var m = MappedCSR.map(file);
+
+      assertEquals(4, m.nnz);
+      assertEquals(2, m.ner);
+      assertSameMatrix(SPARSE_5X4, m);
+      assertSameMatrix(SPARSE_5X4, m.toCSR());
+
+      final var y = new double[5];
+
+      m.multiplyInto(new double[]{ 1, 2, 3, 4 }, y);
+
+      assertArrayEqualsWithTestPrecision(
+        SPARSE_5X4.times(vector(1, 2, 3, 4)).data(),
+        new double[][]{ { y[0] }, { y[1] }, { y[2] }, { y[3] }, { y[4] } }
+      );
+
+      final var x = new MutableVector(1, 2, 3, 4);
+
+      assertArrayEqualsWithTestPrecision(
+        SPARSE_5X4.times(vector(1, 2, 3, 4)).data(),
+        new MutableVector(5).assignProduct(m, x).toMatrix().data()
+      );
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void testMappedCSROperations() throws IOException {
+    final Path file = Files.createTempFile("matrix", ".csr");
+
+    try {
+      MappedCSR.write(file, SPARSE_3X2);
+
+      final var m = MappedCSR.map(file);
+
+      assertSameMatrix(SPARSE_3X2.times(FULL_2X3), m.times(FULL_2X3));
+      assertSameMatrix(FULL_2X3.times(SPARSE_3X2), FULL_2X3.times(m));
+      assertSameMatrix(SPARSE_2X3.times(SPARSE_3X2), SPARSE_2X3.times(m));
+      assertSameMatrix(SPARSE_3X2.times(-2), m.times(-2));
+      assertSameMatrix(SPARSE_3X2.plus(3), m.plus(3));
+      assertSameMatrix(SPARSE_3X2.plus(SPARSE_3X2), m.plus(SPARSE_3X2));
+      assertSameMatrix(SPARSE_3X2.plus(SPARSE_3X2), SPARSE_3X2.plus(m));
+      assertSameMatrix(FULL_3X2.minus(SPARSE_3X2), FULL_3X2.minus(m));
+      assertSameMatrix(SPARSE_3X2.minus(FULL_3X2), m.minus(FULL_3X2));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static MatrixCellValue[] cells(IDoubleMatrix m) {
+    final var cells = new ArrayList<MatrixCellValue>();
+
+    m.forEachNonZero((r, c, value) -> cells.add(cell(r, c, value)));
+
+    return cells.toArray(new MatrixCellValue[0]);
+  }
+
+  @Test
+  void testLoadedCSRSums() throws IOException {
+    final Path file = Files.createTempFile("matrix", ".csr");
+    // Non-empty rows where SPARSE_5X4 has empty ones, and past its last one
+    final var other = sparse(
+      matrix(5, 4),
+      cell(0, 2, 1),
+      cell(3, 2, 3),
+      cell(4, 0, -2)
+    );
+    final var expected = full(SPARSE_5X4.data());
+
+    try {
+      MappedCSR.write(file, SPARSE_5X4);
+
+      final var csr = MappedCSR.map(file).toCSR();
+      final var read = MatrixFile.read(file);
+
+      MatrixFile.write(file, sparseColumns(matrix(5, 4), cells(SPARSE_5X4)));
+
+      final var csc = MatrixFile.read(file);
+
+      for (final var m : new IDoubleMatrix[] { csr, read, csc }) {
+        assertSameMatrix(expected.plus(other), m.plus(other));
+        assertSameMatrix(expected.plus(other), other.plus(m));
+        assertSameMatrix(expected.minus(other), m.minus(other));
+        assertSameMatrix(other.minus(expected), other.minus(m));
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void testMappedFull() throws IOException {
+    final Path file = Files.createTempFile("matrix", ".bin");
+
+    try {
+      OffHeapFull.write(file, SPARSE_5X4);
+
+      // Two rows per mapping, so the last one holds a single row
+      try (final var arena = new OffHeapArena(8)) {
+        final var m = arena.map(file);
+
+        assertSameMatrix(SPARSE_5X4, m);
+        assertSameMatrix(SPARSE_5X4.times(2).plus(1), m.times(2).plus(1));
+
+        final var right = full(
+          new double[][]{ { 1, 2 }, { 3, 4 }, { 5, 6 }, { 7, 8 } }
+        );
+
+        assertSameMatrix(SPARSE_5X4.times(right), m.times(right));
+        assertTrue(m.plus(SPARSE_5X4) instanceof OffHeapFull);
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void testMapChecksTheFileType() throws IOException {
+    final Path file = Files.createTempFile("matrix", ".bin");
+
+    try (final var arena = new OffHeapArena()) {
+      OffHeapFull.write(file, SPARSE_5X4);
+      assertThrows(IOException.class, () -> MappedCSR.map(file));
+
+      MappedCSR.write(file, SPARSE_5X4);
+      assertThrows(IOException.class, () -> arena.map(file));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
@@ -5,9 +5,16 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ArgumentsSource;
 import pl.edu.mimuw.matrix.DoubleMatrixFactory;
 import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.implementations.AntiDiagonal;
+import pl.edu.mimuw.matrix.implementations.CSR;
+import pl.edu.mimuw.matrix.implementations.Vector;
+import pl.edu.mimuw.matrix.implementations.Zero;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.DIAGONAL_3X3;
 import static pl.edu.mimuw.TestMatrixData.TEST_PRECISION;
+import static pl.edu.mimuw.TestMatrixData.VECTOR_3;
 import static pl.edu.mimuw.TestMatrixData.assertArrayEqualsWithTestPrecision;
 import static pl.edu.mimuw.matrix.DoubleMatrixFactory.zero;
 import static pl.edu.mimuw.matrix.MatrixCellValue.cell;
@@ -54,6 +61,82 @@ public class MatrixBinaryOperationTest {
     assertArrayEqualsWithTestPrecision(expectedResult, result);
   }
 
+  @ParameterizedTest
+  @ArgumentsSource(TestMatrixTransposedShapeArgumentProvider.class)
+  void testMultiplyAdd(IDoubleMatrix l, IDoubleMatrix r) {
+    final var addend = DoubleMatrixFactory.full(matrix(2, 2), 1, -1, 0, 2);
+    final var result = l.multiplyAdd(2, r, -3, addend).data();
+
+    final var expectedResult = new double[][]{
+      new double[]{41, 59},
+      new double[]{98, 122},
+    };
+
+    assertArrayEqualsWithTestPrecision(expectedResult, result);
+  }
+
+  @Test
+  void testMultiplyAddIntoStructuredMatrices() {
+    final var b = DoubleMatrixFactory.full(matrix(3, 2), 1, 2, 3, 4, 5, 6);
+    final var operands = new IDoubleMatrix[]{
+      DoubleMatrixFactory.diagonal(1, -2, 3),
+      DoubleMatrixFactory.antiDiagonal(4, 0, 5),
+      DoubleMatrixFactory.identity(3),
+      DoubleMatrixFactory.sparse(matrix(3, 3), cell(0, 2, 1), cell(2, 0, -1)),
+      zero(matrix(3, 3)),
+    };
+
+    for (final var a : operands) {
+      final var c = new double[]{1, 2, 3, 4, 5, 6};
+      final var expected = a.times(b).times(0.5)
+        .plus(DoubleMatrixFactory.full(matrix(3, 2), c).times(2));
+
+      a.multiplyAddInto(0.5, b, 2, c);
+
+      assertArrayEqualsWithTestPrecision(
+        expected.data(),
+        DoubleMatrixFactory.full(matrix(3, 2), c).data()
+      );
+    }
+
+    final var v = DoubleMatrixFactory.vector(1, 2, 3);
+    final var row = DoubleMatrixFactory.full(matrix(1, 2), 4, 5);
+    final var c = new double[]{Double.NaN, 0, 0, 0, 0, 0};
+
+    v.multiplyAddInto(1, row, 0, c);
+
+    assertArrayEqualsWithTestPrecision(
+      v.times(row).data(),
+      DoubleMatrixFactory.full(matrix(3, 2), c).data()
+    );
+  }
+
+  @Test
+  void testMultiplyAddIntoLargeFullMatrices() {
+    final int n = 45;
+    final var a = new double[n * n];
+    final var b = new double[n * n];
+    final var c = new double[n * n];
+
+    for (int i = 0; i < n * n; i++) {
+      a[i] = (i * 7) % 13 - 6;
+      b[i] = (i * 5) % 11 - 5;
+      c[i] = i % 3;
+    }
+
+    final var l = DoubleMatrixFactory.full(matrix(n, n), a);
+    final var r = DoubleMatrixFactory.full(matrix(n, n), b);
+    final var expected = l.times(r).times(-1.5)
+      .plus(DoubleMatrixFactory.full(matrix(n, n), c.clone()).times(0.25));
+
+    l.multiplyAddInto(-1.5, r, 0.25, c);
+
+    assertArrayEqualsWithTestPrecision(
+      expected.data(),
+      DoubleMatrixFactory.full(matrix(n, n), c).data()
+    );
+  }
+
   @ParameterizedTest
   @ArgumentsSource(TestMatrixArgumentProvider.class)
   void testTimesScalar(IDoubleMatrix m) {
@@ -160,6 +243,140 @@ public class MatrixBinaryOperationTest {
     assertEquals(0, result.get(42, 42), TEST_PRECISION);
   }
 
+  @Test
+  void testTimesFlatFullMatrices() {
+    final var l = DoubleMatrixFactory.full(matrix(2, 3), 1, 2, 3, 4, 5, 6);
+    final var r = DoubleMatrixFactory.full(matrix(3, 2), 1, 2, 3, 4, 5, 6);
+    final var result = l.times(r).data();
+
+    final var expectedResult = new double[][]{
+      new double[]{22, 28},
+      new double[]{49, 64},
+    };
+
+    assertArrayEqualsWithTestPrecision(expectedResult, result);
+  }
+
+  @Test
+  void testTimesLargeFullMatrices() {
+    final var lData = new double[37][300];
+    final var rData = new double[300][41];
+
+    for (int i = 0; i < 300; i++) {
+      for (int j = 0; j < 37; j++) lData[j][i] = (i * 7 + j * 3) % 11 - 5;
+      for (int j = 0; j < 41; j++) rData[i][j] = (i * 5 + j * 13) % 7 - 3;
+    }
+
+    final var expectedResult = new double[37][41];
+
+    for (int r = 0; r < 37; r++) {
+      for (int c = 0; c < 41; c++) {
+        for (int k = 0; k < 300; k++) expectedResult[r][c] += lData[r][k] * rData[k][c];
+      }
+    }
+
+    final var result = DoubleMatrixFactory.full(lData).times(DoubleMatrixFactory.full(rData)).data();
+
+    assertArrayEqualsWithTestPrecision(expectedResult, result);
+  }
+
+  @Test
+  void testElementwiseLongRows() {
+    final var lData = new double[3][37];
+    final var rData = new double[3][37];
+    final var sum = new double[3][37];
+    final var shifted = new double[3][37];
+    final var scaled = new double[3][37];
+
+    for (int r = 0; r < 3; r++) {
+      for (int c = 0; c < 37; c++) {
+        lData[r][c] = (r * 37 + c * 5) % 11 - 5;
+        rData[r][c] = (r * 13 + c * 3) % 7 - 3;
+        sum[r][c] = lData[r][c] + rData[r][c];
+        shifted[r][c] = lData[r][c] + 0.5;
+        scaled[r][c] = lData[r][c] * -3;
+      }
+    }
+
+    final var l = DoubleMatrixFactory.full(lData);
+    final var r = DoubleMatrixFactory.full(rData);
+
+    assertArrayEqualsWithTestPrecision(sum, l.plus(r).data());
+    assertArrayEqualsWithTestPrecision(shifted, l.plus(0.5).data());
+    assertArrayEqualsWithTestPrecision(scaled, l.times(-3).data());
+  }
+
+  @Test
+  void testMinusEveryImplementationPair() {
+    final var shape = matrix(3, 3);
+    final var operands = new IDoubleMatrix[]{
+      DoubleMatrixFactory.full(shape, 1, -2, 3, 0, 5, -6, 7, 8, 0),
+      DoubleMatrixFactory.sparse(shape, cell(0, 1, 2), cell(2, 0, -1)),
+      DoubleMatrixFactory.sparseColumns(shape, cell(1, 1, 4), cell(2, 2, 3)),
+      DoubleMatrixFactory.diagonal(1, 0, -2),
+      DoubleMatrixFactory.antiDiagonal(3, 4, 5),
+      DoubleMatrixFactory.identity(3),
+      DoubleMatrixFactory.vector(1, 2, 3)
+        .times(DoubleMatrixFactory.full(matrix(1, 3), 1, 0, 2)),
+      zero(shape),
+    };
+
+    for (final var l : operands) {
+      for (final var r : operands) {
+        final var lData = l.data();
+        final var rData = r.data();
+        final var expected = new double[3][3];
+
+        for (int i = 0; i < 3; i++) {
+          for (int j = 0; j < 3; j++) {
+            expected[i][j] = lData[i][j] - rData[i][j];
+          }
+        }
+
+        assertArrayEqualsWithTestPrecision(expected, l.minus(r).data());
+      }
+    }
+  }
+
+  @Test
+  void testMinusStructuredMatricesStaysSparse() {
+    final var size = 100;
+    final var identity = DoubleMatrixFactory.identity(size);
+    final var sparse = DoubleMatrixFactory.sparse(
+      matrix(size, size),
+      cell(0, 99, 2),
+      cell(50, 50, 1)
+    );
+    final var antiDiagonal = DoubleMatrixFactory.antiDiagonal(3, 4, 5);
+    final var vector = DoubleMatrixFactory.vector(1, 0, 3);
+
+    final var difference = identity.minus(sparse);
+    final var reversed = sparse.minus(identity);
+
+    assertTrue(difference instanceof CSR);
+    assertTrue(reversed instanceof CSR);
+    assertEquals(100, ((CSR) difference).nnz);
+    assertEquals(-2, difference.get(0, 99), TEST_PRECISION);
+    assertEquals(0, difference.get(50, 50), TEST_PRECISION);
+    assertEquals(1, difference.get(7, 7), TEST_PRECISION);
+    assertEquals(-1, reversed.get(7, 7), TEST_PRECISION);
+    assertEquals(2, reversed.get(0, 99), TEST_PRECISION);
+
+    final var negated = antiDiagonal.minus(antiDiagonal.times(2));
+
+    assertTrue(negated instanceof AntiDiagonal);
+    assertArrayEqualsWithTestPrecision(
+      antiDiagonal.times(-1).data(),
+      negated.data()
+    );
+    assertTrue(vector.minus(VECTOR_3) instanceof Vector);
+    assertArrayEqualsWithTestPrecision(
+      new double[][]{ {-14}, {-16}, {-14} },
+      vector.minus(VECTOR_3).data()
+    );
+    assertTrue(DIAGONAL_3X3.minus(DIAGONAL_3X3) instanceof Zero);
+  }
+
   @ParameterizedTest
   @ArgumentsSource(TestMatrixSameArgumentProvider.class)
   void testZeroMatrixTimes(IDoubleMatrix l, IDoubleMatrix r) {
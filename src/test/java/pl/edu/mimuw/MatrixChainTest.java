@@ -0,0 +1,108 @@
+package pl.edu.mimuw;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.implementations.MatrixChain;
+import pl.edu.mimuw.matrix.implementations.Zero;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.diagonal;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.full;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.lazy;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.vector;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+public class MatrixChainTest {
+
+  private static IDoubleMatrix square(int size, double seed) {
+    final var values = new double[size * size];
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = Math.sin(seed + i);
+    }
+
+    return full(matrix(size, size), values);
+  }
+
+  @Test
+  void testMatchesLeftToRight() {
+    final var operands = List.of(
+      FULL_2X3,
+      SPARSE_3X2,
+      FULL_2X3,
+      DIAGONAL_3X3,
+      SPARSE_COLUMNS_3X2,
+      VECTOR_2
+    );
+    var expected = operands.get(0);
+
+    for (int i = 1; i < operands.size(); i++) {
+      expected = expected.times(operands.get(i));
+    }
+
+    assertArrayEqualsWithTestPrecision(
+      expected.data(),
+      MatrixChain.multiply(operands).data()
+    );
+  }
+
+  @Test
+  void testVectorAtTheEndIsMultipliedFirst() {
+    final var a = square(40, 1);
+    final var b = square(40, 2);
+    final var c = square(40, 3);
+    final var v = vector(square(40, 4).data()[0]);
+
+    assertEquals(
+      3 * 40 * 40,
+      MatrixChain.estimatedCost(List.of(a, b, c, v)),
+      TEST_PRECISION
+    );
+    assertArrayEqualsWithTestPrecision(
+      a.times(b).times(c).times(v).data(),
+      MatrixChain.multiply(a, b, c, v).data()
+    );
+  }
+
+  @Test
+  void testStructureIsPartOfTheCost() {
+    final var a = square(30, 1);
+    final var d = diagonal(square(30, 2).data()[0]);
+    final var v = vector(square(30, 3).data()[0]);
+
+    // d * v takes 30 multiply-adds and a * (d * v) another 900
+    assertEquals(930, MatrixChain.estimatedCost(List.of(a, d, v)), TEST_PRECISION);
+    assertArrayEqualsWithTestPrecision(
+      a.times(d).times(v).data(),
+      MatrixChain.multiply(a, d, v).data()
+    );
+  }
+
+  @Test
+  void testIdentityAndZero() {
+    assertSame(FULL_2X3, MatrixChain.multiply(ID_2, FULL_2X3, ID_3));
+    assertTrue(MatrixChain.multiply(FULL_2X3, ZERO_3X2, FULL_2X3) instanceof Zero);
+    assertEquals(
+      matrix(2, 3),
+      MatrixChain.multiply(FULL_2X3, ZERO_3X2, FULL_2X3).shape()
+    );
+  }
+
+  @Test
+  void testLazyProductsFormOneChain() {
+    final var a = square(20, 1);
+    final var b = square(20, 2);
+    final var v = vector(square(20, 3).data()[0]);
+    final var result = lazy(a).times(b).times(2).times(a).times(v);
+
+    assertArrayEqualsWithTestPrecision(
+      a.times(b).times(a).times(v).times(2).data(),
+      result.data()
+    );
+  }
+}
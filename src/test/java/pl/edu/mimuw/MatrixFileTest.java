@@ -0,0 +1,145 @@
+package pl.edu.mimuw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.implementations.LazyMatrix;
+import pl.edu.mimuw.matrix.implementations.MappedCSR;
+import pl.edu.mimuw.matrix.implementations.MatrixFile;
+import pl.edu.mimuw.matrix.implementations.OffHeapArena;
+import pl.edu.mimuw.matrix.implementations.OffHeapFull;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.lazy;
+
+public class MatrixFileTest {
+
+  private static final IDoubleMatrix[] MATRICES = {
+    FULL_2X3,
+    DIAGONAL_3X3,
+    ANTI_DIAGONAL_3X3,
+    SPARSE_2X3,
+    SPARSE_COLUMNS_3X2,
+    VECTOR_3,
+    ID_3,
+    ZERO_3X2,
+    ROW_3X2,
+    COLUMN_3X2,
+    lazy(FULL_2X3).times(SPARSE_3X2).plus(1),
+  };
+
+  @Test
+  void testReadKeepsTheType() throws IOException {
+    final Path file = Files.createTempFile("matrix", ".bin");
+
+    try {
+      for (final var m : MATRICES) {
+        MatrixFile.write(file, m);
+
+        final var read = MatrixFile.read(file);
+
+        assertEquals(m.shape(), read.shape());
+        assertArrayEqualsWithTestPrecision(m.data(), read.data());
+
+        if (!(m instanceof LazyMatrix)) {
+          assertEquals(m.getClass(), read.getClass());
+        }
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void testMapDoesNotCopyLargeArrays() throws IOException {
+    final Path file = Files.createTempFile("matrix", ".bin");
+
+    try (final var arena = new OffHeapArena()) {
+      for (final var m : MATRICES) {
+        try (
+          final var channel = FileChannel.open(
+            file,
+            StandardOpenOption.WRITE
+          )
+        ) {
+          MatrixFile.write(channel, m);
+        }
+
+        final var mapped = MatrixFile.map(file, arena);
+
+        assertArrayEqualsWithTestPrecision(m.data(), mapped.data());
+        assertEquals(m.normOne(), mapped.normOne(), TEST_PRECISION);
+      }
+
+      MatrixFile.write(file, SPARSE_2X3);
+      assertTrue(MatrixFile.map(file, arena) instanceof MappedCSR);
+
+      MatrixFile.write(file, FULL_2X3);
+      assertTrue(MatrixFile.map(file, arena) instanceof OffHeapFull);
+
+      // Any matrix written by the mapped types reads back
+      MappedCSR.write(file, FULL_2X3);
+      assertArrayEqualsWithTestPrecision(
+        FULL_2X3.data(),
+        MatrixFile.read(file).data()
+      );
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static void overwrite(Path file, long position, int value)
+    throws IOException {
+    final var bytes = ByteBuffer.allocate(Integer.BYTES);
+
+    bytes.order(ByteOrder.LITTLE_ENDIAN).putInt(value).flip();
+
+    try (
+      final var channel = FileChannel.open(file, StandardOpenOption.WRITE)
+    ) {
+      channel.write(bytes, position);
+    }
+  }
+
+  @Test
+  void testMalformedFilesThrow() throws IOException {
+    final Path file = Files.createTempFile("matrix", ".bin");
+
+    try (final var arena = new OffHeapArena()) {
+      // Magic number, type tag, value count
+      final var fields = new int[][]{ {0, 0}, {4, 42}, {16, 1000} };
+
+      for (final var field : fields) {
+        MatrixFile.write(file, SPARSE_2X3);
+        overwrite(file, field[0], field[1]);
+
+        assertThrows(IOException.class, () -> MatrixFile.read(file));
+        assertThrows(IOException.class, () -> MatrixFile.map(file, arena));
+      }
+
+      MatrixFile.write(file, DIAGONAL_3X3);
+
+      try (
+        final var channel = FileChannel.open(file, StandardOpenOption.WRITE)
+      ) {
+        channel.truncate(channel.size() - Double.BYTES);
+      }
+
+      assertThrows(IOException.class, () -> MatrixFile.read(file));
+
+      Files.write(file, new byte[]{ 1, 2, 3 });
+      assertThrows(IOException.class, () -> MatrixFile.read(file));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
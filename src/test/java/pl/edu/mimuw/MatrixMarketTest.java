@@ -0,0 +1,163 @@
+package pl.edu.mimuw;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.implementations.MatrixMarket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.full;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.sparse;
+import static pl.edu.mimuw.matrix.MatrixCellValue.cell;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+public class MatrixMarketTest {
+
+  private static IDoubleMatrix read(String text) throws IOException {
+    final Path file = Files.createTempFile("matrix", ".mtx");
+
+    try {
+      Files.writeString(file, text);
+
+      return MatrixMarket.read(file);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void testReadGeneral() throws IOException {
+    // Unsorted rows, a repeated cell and a cell that sums to zero
+    final var m = read(
+      "%%MatrixMarket matrix coordinate real general\n" +
+      "% a comment\n" +
+      "%\n" +
+      "3 4 7\n" +
+      "1 4 -2.5e1\n" +
+      "1 2 .5\n" +
+      "3 1 1E-3\n" +
+      "1 2 1.25\n" +
+      "2 3 4\n" +
+      "2 3 -4\n" +
+      "3 3 -0.000123456789012345678\n"
+    );
+
+    assertArrayEqualsWithTestPrecision(
+      new double[][]{
+        { 0, 1.75, 0, -25 },
+        { 0, 0, 0, 0 },
+        { 0.001, 0, -0.000123456789012345678, 0 },
+      },
+      m.data()
+    );
+    assertEquals(1e-3, m.get(2, 0), 0);
+    assertEquals(-0.000123456789012345678, m.get(2, 2), 0);
+  }
+
+  @Test
+  void testReadSymmetricAndPattern() throws IOException {
+    final var symmetric = read(
+      "%%MatrixMarket matrix coordinate integer symmetric\n" +
+      "3 3 3\n" +
+      "1 1 2\n" +
+      "3 1 -7\n" +
+      "3 2 5\n"
+    );
+
+    assertArrayEqualsWithTestPrecision(
+      new double[][]{ { 2, 0, -7 }, { 0, 0, 5 }, { -7, 5, 0 } },
+      symmetric.data()
+    );
+
+    final var skew = read(
+      "%%MatrixMarket matrix coordinate pattern skew-symmetric\n" +
+      "2 2 1\n" +
+      "2 1\n"
+    );
+
+    assertArrayEqualsWithTestPrecision(
+      new double[][]{ { 0, -1 }, { 1, 0 } },
+      skew.data()
+    );
+  }
+
+  @Test
+  void testReadMatrixSums() throws IOException {
+    // A single non-empty row, followed by an empty one
+    final var m = read(
+      "%%MatrixMarket matrix coordinate real general\n" +
+      "3 3 1\n" +
+      "2 3 1.5\n"
+    );
+    final var other = sparse(matrix(3, 3), cell(0, 0, 4), cell(2, 2, 1));
+    final var expected = full(
+      new double[][]{ { 0, 0, 0 }, { 0, 0, 1.5 }, { 0, 0, 0 } }
+    );
+
+    assertArrayEqualsWithTestPrecision(
+      expected.plus(other).data(),
+      m.plus(other).data()
+    );
+    assertArrayEqualsWithTestPrecision(
+      other.minus(expected).data(),
+      other.minus(m).data()
+    );
+    assertArrayEqualsWithTestPrecision(
+      expected.minus(other).data(),
+      m.minus(other).data()
+    );
+  }
+
+  @Test
+  void testWriteReadsBack() throws IOException {
+    final Path file = Files.createTempFile("matrix", ".mtx");
+    final IDoubleMatrix[] matrices = {
+      SPARSE_2X3,
+      FULL_2X3.times(Math.PI),
+      DIAGONAL_3X3.times(-1e-300),
+      SPARSE_COLUMNS_3X2,
+    };
+
+    try {
+      for (final var m : matrices) {
+        MatrixMarket.write(file, m);
+
+        final var read = MatrixMarket.read(file);
+
+        assertEquals(m.shape(), read.shape());
+
+        for (int r = 0; r < m.shape().rows; r++) {
+          for (int c = 0; c < m.shape().columns; c++) {
+            assertEquals(m.get(r, c), read.get(r, c), 0);
+          }
+        }
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void testMalformedFilesThrow() {
+    final var banner = "%%MatrixMarket matrix coordinate real general\n";
+    final var files = new String[]{
+      "%%MatrixMarket matrix array real general\n2 2\n1\n2\n3\n4\n",
+      "%%MatrixMarket matrix coordinate complex general\n1 1 1\n1 1 1 0\n",
+      "%%MatrixMarket matrix coordinate real hermitian\n1 1 1\n1 1 1\n",
+      "%%MatrixMarket matrix coordinate\n1 1 1\n1 1 1\n",
+      banner + "2 2 1\n0 1 1\n",
+      banner + "2 2 1\n1 3 1\n",
+      banner + "2 2 2\n1 1 1\n",
+      banner + "2 2 1\n1 1 one\n",
+      banner + "2 x 1\n",
+    };
+
+    for (final var text : files) {
+      assertThrows(IOException.class, () -> read(text), text);
+    }
+  }
+}
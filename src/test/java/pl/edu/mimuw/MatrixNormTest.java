@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import pl.edu.mimuw.matrix.IDoubleMatrix;
 
+import java.util.Arrays;
 import java.util.function.Function;
 import java.util.stream.IntStream;
 
@@ -18,6 +19,11 @@ public class MatrixNormTest {
 
   private static final double FROBENIUS_NORM = sqrt(IntStream.range(1, 7).mapToDouble(it -> it * it).sum());
 
+  // Rows longer than any vector register, with a ragged tail
+  private static final double[][] LONG_ROWS = IntStream.range(0, 3)
+    .mapToObj(r -> IntStream.range(0, 37).mapToDouble(c -> (r * 37 + c * 5) % 11 - 5).toArray())
+    .toArray(double[][]::new);
+
   @Nested
   public class FrobeniusNormTest {
 
@@ -34,6 +40,15 @@ public class MatrixNormTest {
       );
     }
 
+    @Test
+    void testFullMatricesWithLongRows() {
+      testMatrixNorm(
+        full(LONG_ROWS),
+        IDoubleMatrix::frobeniusNorm,
+        sqrt(Arrays.stream(LONG_ROWS).flatMapToDouble(Arrays::stream).map(it -> it * it).sum())
+      );
+    }
+
     @Test
     void testSparseMatrices() {
       testMatrixNorm(
@@ -95,6 +110,15 @@ public class MatrixNormTest {
       );
     }
 
+    @Test
+    void testFullMatricesWithLongRows() {
+      testMatrixNorm(
+        full(LONG_ROWS),
+        IDoubleMatrix::normOne,
+        IntStream.range(0, 37).mapToDouble(c -> Arrays.stream(LONG_ROWS).mapToDouble(row -> Math.abs(row[c])).sum()).max().orElseThrow()
+      );
+    }
+
     @Test
     void testSparseMatrices() {
       testMatrixNorm(
@@ -156,6 +180,15 @@ public class MatrixNormTest {
       );
     }
 
+    @Test
+    void testFullMatricesWithLongRows() {
+      testMatrixNorm(
+        full(LONG_ROWS),
+        IDoubleMatrix::normInfinity,
+        Arrays.stream(LONG_ROWS).mapToDouble(row -> Arrays.stream(row).map(Math::abs).sum()).max().orElseThrow()
+      );
+    }
+
     @Test
     void testSparseMatrices() {
       testMatrixNorm(
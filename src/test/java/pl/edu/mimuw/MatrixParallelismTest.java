@@ -0,0 +1,105 @@
+package pl.edu.mimuw;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Isolated;
+import pl.edu.mimuw.matrix.DoubleMatrixFactory;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.MatrixCellValue;
+import pl.edu.mimuw.matrix.implementations.CSR;
+import pl.edu.mimuw.matrix.implementations.MatrixParallelism;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static pl.edu.mimuw.TestMatrixData.TEST_PRECISION;
+import static pl.edu.mimuw.TestMatrixData.assertArrayEqualsWithTestPrecision;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.sparse;
+import static pl.edu.mimuw.matrix.MatrixCellValue.cell;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+// These tests replace the global pool and threshold, so no other test may
+// run products at the same time
+@Isolated
+public class MatrixParallelismTest {
+
+  @Test
+  void testTimesParallelMatchesSequential() {
+    final var dense = new double[64][48];
+    final var cells = new ArrayList<MatrixCellValue>();
+    final var transposedCells = new ArrayList<MatrixCellValue>();
+
+    for (int r = 0; r < 64; r++) {
+      for (int c = 0; c < 48; c++) {
+        dense[r][c] = (r * 7 + c * 3) % 11 - 5;
+        if ((r + 2 * c) % 5 == 0) {
+          cells.add(cell(c, r, r - c));
+          transposedCells.add(cell(r, c, r + c));
+        }
+      }
+    }
+
+    final var full = DoubleMatrixFactory.full(dense);
+    final var sparse = DoubleMatrixFactory.sparse(matrix(48, 64), cells.toArray(new MatrixCellValue[0]));
+    final var transposed = DoubleMatrixFactory.sparse(matrix(64, 48), transposedCells.toArray(new MatrixCellValue[0]));
+    final var products = new IDoubleMatrix[][]{
+      {full, sparse},
+      {sparse, full},
+      {sparse, transposed},
+      {full, DoubleMatrixFactory.full(sparse.data())},
+    };
+
+    final var threshold = MatrixParallelism.threshold();
+    final var pool = MatrixParallelism.pool();
+    final var testPool = new ForkJoinPool(4);
+
+    try {
+      MatrixParallelism.setPool(testPool);
+
+      for (final var product : products) {
+        MatrixParallelism.setThreshold(Long.MAX_VALUE);
+        final var expectedResult = product[0].times(product[1]).data();
+
+        MatrixParallelism.setThreshold(0);
+        assertArrayEqualsWithTestPrecision(expectedResult, product[0].times(product[1]).data());
+      }
+    } finally {
+      MatrixParallelism.setThreshold(threshold);
+      MatrixParallelism.setPool(pool);
+      testPool.shutdown();
+    }
+  }
+
+  @Test
+  void testMultiplyIntoParallel() {
+    final var cells = new ArrayList<MatrixCellValue>();
+
+    for (int r = 0; r < 300; r++) {
+      for (int c = r % 7; c < 200; c += 1 + r % 13) {
+        cells.add(cell(r, c, (r * 3 + c) % 9 - 4));
+      }
+    }
+
+    final var m = (CSR) sparse(matrix(300, 200), cells.toArray(new MatrixCellValue[0]));
+    final var x = IntStream.range(0, 200).mapToDouble(i -> i % 5 - 2).toArray();
+    final var expected = new double[300];
+    final var actual = new double[300];
+    final var threshold = MatrixParallelism.threshold();
+    final var pool = MatrixParallelism.pool();
+    final var testPool = new ForkJoinPool(4);
+
+    m.multiplyInto(x, expected);
+
+    try {
+      MatrixParallelism.setPool(testPool);
+      MatrixParallelism.setThreshold(0);
+      m.multiplyIntoParallel(x, actual);
+    } finally {
+      MatrixParallelism.setThreshold(threshold);
+      MatrixParallelism.setPool(pool);
+      testPool.shutdown();
+    }
+
+    assertArrayEquals(expected, actual, TEST_PRECISION);
+  }
+}
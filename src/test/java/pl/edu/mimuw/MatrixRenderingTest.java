@@ -0,0 +1,75 @@
+package pl.edu.mimuw;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.jupiter.api.Test;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.*;
+import static pl.edu.mimuw.matrix.MatrixCellValue.cell;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+public class MatrixRenderingTest {
+
+  @Test
+  void testWriteToMatchesToString() throws IOException {
+    final IDoubleMatrix[] matrices = {
+      FULL_2X3,
+      DIAGONAL_3X3,
+      ANTI_DIAGONAL_3X3,
+      SPARSE_2X3,
+      SPARSE_COLUMNS_3X2,
+      VECTOR_3,
+      ID_3,
+      ZERO_3X2,
+      ROW_3X2,
+      COLUMN_3X2,
+      lazy(FULL_2X3).plus(1),
+    };
+
+    for (final var m : matrices) {
+      final var out = new StringWriter();
+
+      m.writeTo(out);
+
+      assertEquals(m.toString(), out.toString());
+    }
+
+    assertEquals(
+      "Dimensions: 2 x 3\n1.0 2.0 3.0\n4.0 5.0 6.0\n",
+      FULL_2X3.toString()
+    );
+  }
+
+  @Test
+  void testPreview() {
+    final var m = full(matrix(5, 6), new double[30])
+      .plus(1)
+      .plus(sparse(matrix(5, 6), cell(4, 5, 8)));
+
+    assertEquals(
+      "Dimensions: 5 x 6\n" +
+      "1.0 1.0 ... 1.0 1.0\n" +
+      "1.0 1.0 ... 1.0 1.0\n" +
+      "...\n" +
+      "1.0 1.0 ... 1.0 1.0\n" +
+      "1.0 1.0 ... 1.0 9.0\n",
+      m.preview(2)
+    );
+    assertEquals(m.toString(), m.preview(3));
+  }
+
+  @Test
+  void testPreviewOfHugeMatrixStaysSmall() {
+    final var m = identity(100_000).times(2);
+
+    assertTrue(m.preview(3).length() < 1024);
+
+    final var sparse = sparse(matrix(1 << 20, 1 << 20), cell(7, 7, 1));
+
+    assertTrue(sparse.preview(4).length() < 1024);
+  }
+}
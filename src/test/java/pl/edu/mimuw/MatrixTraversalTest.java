@@ -0,0 +1,69 @@
+package pl.edu.mimuw;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.assertArrayEqualsWithTestPrecision;
+
+public class MatrixTraversalTest {
+
+  @ParameterizedTest
+  @ArgumentsSource(TestMatrixArgumentProvider.class)
+  void testForEachNonZero(IDoubleMatrix m) {
+    final var shape = m.shape();
+    final var result = new double[shape.rows][shape.columns];
+
+    m.forEachNonZero((row, column, value) -> {
+      assertTrue(value != 0);
+      assertEquals(0, result[row][column]);
+      result[row][column] = value;
+    });
+
+    assertArrayEqualsWithTestPrecision(m.data(), result);
+  }
+
+  @ParameterizedTest
+  @ArgumentsSource(TestMatrixArgumentProvider.class)
+  void testForEachInRow(IDoubleMatrix m) {
+    final var shape = m.shape();
+    final var result = new double[shape.rows][shape.columns];
+
+    for (int r = 0; r < shape.rows; r++) {
+      final var row = r;
+      final var lastColumn = new int[]{-1};
+
+      m.forEachInRow(r, (cellRow, column, value) -> {
+        assertEquals(row, cellRow);
+        assertTrue(column > lastColumn[0]);
+        lastColumn[0] = column;
+        result[cellRow][column] = value;
+      });
+    }
+
+    assertArrayEqualsWithTestPrecision(m.data(), result);
+  }
+
+  @ParameterizedTest
+  @ArgumentsSource(TestMatrixArgumentProvider.class)
+  void testForEachInColumn(IDoubleMatrix m) {
+    final var shape = m.shape();
+    final var result = new double[shape.rows][shape.columns];
+
+    for (int c = 0; c < shape.columns; c++) {
+      final var column = c;
+      final var lastRow = new int[]{-1};
+
+      m.forEachInColumn(c, (row, cellColumn, value) -> {
+        assertEquals(column, cellColumn);
+        assertTrue(row > lastRow[0]);
+        lastRow[0] = row;
+        result[row][cellColumn] = value;
+      });
+    }
+
+    assertArrayEqualsWithTestPrecision(m.data(), result);
+  }
+}
@@ -0,0 +1,101 @@
+package pl.edu.mimuw;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.mimuw.matrix.implementations.Full;
+import pl.edu.mimuw.matrix.implementations.MutableFull;
+import pl.edu.mimuw.matrix.implementations.MutableVector;
+import pl.edu.mimuw.matrix.implementations.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.full;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.vector;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+public class MutableMatrixTest {
+
+  @Test
+  void testInPlaceOperations() {
+    final var m = MutableFull.copyOf(FULL_2X3);
+
+    m.scaleInPlace(2)
+      .addInPlace(1)
+      .addInPlace(SPARSE_2X3)
+      .axpy(-3, FULL_2X3);
+
+    assertArrayEqualsWithTestPrecision(
+      FULL_2X3.times(2)
+        .plus(1)
+        .plus(SPARSE_2X3)
+        .minus(FULL_2X3.times(3))
+        .data(),
+      m.toMatrix().data()
+    );
+  }
+
+  @Test
+  void testCopyOnWrite() {
+    final var original = (Full) full(FULL_2X3.data());
+    final var m = original.toMutable();
+
+    m.set(0, 0, 100);
+
+    assertEquals(1, original.get(0, 0), TEST_PRECISION);
+    assertEquals(100, m.get(0, 0), TEST_PRECISION);
+
+    final var snapshot = m.toMatrix();
+
+    m.scaleInPlace(0);
+
+    assertEquals(100, snapshot.get(0, 0), TEST_PRECISION);
+    assertEquals(0, m.get(0, 0), TEST_PRECISION);
+  }
+
+  @Test
+  void testMultiplyInto() {
+    final var a = MutableFull.copyOf(FULL_2X3);
+    final var destination = new MutableFull(matrix(2, 2));
+
+    destination.addInPlace(42);
+    a.multiplyInto(SPARSE_3X2, destination);
+
+    assertArrayEqualsWithTestPrecision(
+      FULL_2X3.times(SPARSE_3X2).data(),
+      destination.toMatrix().data()
+    );
+
+    final var x = new MutableVector(1, 2, 3);
+    final var y = new MutableVector(2);
+
+    a.multiplyInto(x, y);
+
+    assertArrayEqualsWithTestPrecision(
+      FULL_2X3.times(vector(1, 2, 3)).data(),
+      y.toMatrix().data()
+    );
+
+    x.multiplyInto(SPARSE_2X3, y);
+
+    assertArrayEqualsWithTestPrecision(
+      SPARSE_2X3.times(vector(1, 2, 3)).data(),
+      y.toMatrix().data()
+    );
+  }
+
+  @Test
+  void testVectorInPlaceOperations() {
+    final var v = ((Vector) VECTOR_3).toMutable();
+    final var snapshot = v.toMatrix();
+
+    v.scaleInPlace(2)
+      .addInPlace(-1)
+      .axpy(0.5, VECTOR_3)
+      .axpy(2, new MutableVector(1, 1, 1));
+
+    assertArrayEqualsWithTestPrecision(
+      VECTOR_3.times(2.5).plus(1).data(),
+      v.toMatrix().data()
+    );
+    assertArrayEqualsWithTestPrecision(VECTOR_3.data(), snapshot.data());
+  }
+}
@@ -0,0 +1,103 @@
+package pl.edu.mimuw;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.implementations.OffHeapArena;
+import pl.edu.mimuw.matrix.implementations.OffHeapFull;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.full;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.sparseColumns;
+import static pl.edu.mimuw.matrix.MatrixCellValue.cell;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+public class OffHeapMatrixTest {
+
+  private static IDoubleMatrix heap() {
+    final var values = new double[5 * 3];
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (i * 7) % 5 - 2;
+    }
+
+    return full(matrix(5, 3), values);
+  }
+
+  @Test
+  void testCopyAcrossChunks() {
+    // Two rows per chunk, so the last chunk holds a single row
+    try (final var arena = new OffHeapArena(7)) {
+      final var m = arena.copyOf(heap());
+
+      assertArrayEqualsWithTestPrecision(heap().data(), m.data());
+      assertEquals(heap().get(4, 2), m.get(4, 2), TEST_PRECISION);
+      assertEquals(heap().normOne(), m.normOne(), TEST_PRECISION);
+      assertEquals(heap().normInfinity(), m.normInfinity(), TEST_PRECISION);
+      assertEquals(heap().frobeniusNorm(), m.frobeniusNorm(), TEST_PRECISION);
+    }
+  }
+
+  @Test
+  void testOperationsStayOffHeap() {
+    try (final var arena = new OffHeapArena(7)) {
+      final var m = arena.copyOf(heap());
+      final var h = heap();
+      final var results = new IDoubleMatrix[]{
+        m.times(FULL_3X2),
+        m.times(SPARSE_3X2),
+        m.plus(h),
+        m.minus(h.times(2)),
+        m.times(-3).plus(1),
+        full(matrix(2, 5), new double[10]).plus(1).times(m),
+        h.plus(m),
+        h.minus(m),
+        m.minus(h).plus(1).times(DIAGONAL_3X3),
+        m.times(SPARSE_COLUMNS_3X2),
+        m.minus(sparseColumns(matrix(5, 3), cell(4, 2, 3), cell(1, 0, -1))),
+      };
+      final var expected = new IDoubleMatrix[]{
+        h.times(FULL_3X2),
+        h.times(SPARSE_3X2),
+        h.plus(h),
+        h.minus(h.times(2)),
+        h.times(-3).plus(1),
+        full(matrix(2, 5), new double[10]).plus(1).times(h),
+        h.plus(h),
+        h.minus(h),
+        h.minus(h).plus(1).times(DIAGONAL_3X3),
+        h.times(SPARSE_COLUMNS_3X2),
+        h.minus(sparseColumns(matrix(5, 3), cell(4, 2, 3), cell(1, 0, -1))),
+      };
+
+      for (int i = 0; i < results.length; i++) {
+        assertArrayEqualsWithTestPrecision(
+          expected[i].data(),
+          results[i].data()
+        );
+      }
+
+      assertTrue(results[0] instanceof OffHeapFull);
+      assertTrue(results[5] instanceof OffHeapFull);
+      assertSame(arena, ((OffHeapFull) results[6]).arena());
+      assertTrue(results[9] instanceof OffHeapFull);
+      assertTrue(results[10] instanceof OffHeapFull);
+    }
+  }
+
+  @Test
+  void testCloseReleasesEveryMatrix() {
+    final var arena = new OffHeapArena();
+    final var m = arena.allocate(matrix(2, 2));
+
+    m.set(1, 0, 4);
+
+    assertEquals(8, m.times(2).get(1, 0), TEST_PRECISION);
+
+    arena.close();
+
+    assertTrue(arena.isClosed());
+  }
+}
@@ -0,0 +1,198 @@
+package pl.edu.mimuw;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.implementations.CSR;
+import pl.edu.mimuw.matrix.implementations.Full;
+import pl.edu.mimuw.matrix.implementations.Identity;
+import pl.edu.mimuw.matrix.implementations.Permutation;
+import pl.edu.mimuw.matrix.implementations.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.*;
+import static pl.edu.mimuw.matrix.MatrixCellValue.cell;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+public class PermutationTest {
+
+  private static final IDoubleMatrix SWAP_3 = permutation(1, 0, 2);
+
+  private static final IDoubleMatrix SCALED_3 = permutation(
+    new int[] { 1, 2, 0 },
+    2,
+    -0.5,
+    4
+  );
+
+  private static final IDoubleMatrix SPARSE_3X3 = sparse(
+    matrix(3, 3),
+    cell(0, 2, 1),
+    cell(2, 0, 3),
+    cell(2, 1, -2)
+  );
+
+  @Test
+  void testCellsAndNorms() {
+    final var expected = new double[][] {
+      new double[] { 0, 2, 0 },
+      new double[] { 0, 0, -0.5 },
+      new double[] { 4, 0, 0 },
+    };
+
+    assertArrayEqualsWithTestPrecision(expected, SCALED_3.data());
+    assertEquals(-0.5, SCALED_3.get(1, 2), TEST_PRECISION);
+    assertEquals(4, SCALED_3.normOne(), TEST_PRECISION);
+    assertEquals(4, SCALED_3.normInfinity(), TEST_PRECISION);
+    assertEquals(Math.sqrt(20.25), SCALED_3.frobeniusNorm(), TEST_PRECISION);
+    assertEquals(1, SWAP_3.normOne(), TEST_PRECISION);
+    assertEquals(Math.sqrt(3), SWAP_3.frobeniusNorm(), TEST_PRECISION);
+  }
+
+  @Test
+  void testProductsAreGathers() {
+    final var operands = new IDoubleMatrix[] { SWAP_3, SCALED_3 };
+
+    for (IDoubleMatrix p : operands) {
+      final var expected = dense(p);
+
+      assertTrue(p.times(FULL_3X2) instanceof Full);
+      assertSameCells(expected.times(FULL_3X2), p.times(FULL_3X2));
+      assertTrue(p.times(SPARSE_3X2) instanceof CSR);
+      assertSameCells(expected.times(SPARSE_3X2), p.times(SPARSE_3X2));
+      assertTrue(p.times(VECTOR_3) instanceof Vector);
+      assertSameCells(expected.times(VECTOR_3), p.times(VECTOR_3));
+
+      assertTrue(FULL_2X3.times(p) instanceof Full);
+      assertSameCells(FULL_2X3.times(expected), FULL_2X3.times(p));
+      assertTrue(SPARSE_2X3.times(p) instanceof CSR);
+      assertSameCells(SPARSE_2X3.times(expected), SPARSE_2X3.times(p));
+      assertSameCells(SPARSE_3X3.times(expected), SPARSE_3X3.times(p));
+      assertSameCells(
+        expected.times(SPARSE_COLUMNS_3X2),
+        p.times(SPARSE_COLUMNS_3X2)
+      );
+      assertSameCells(
+        SPARSE_COLUMNS_2X3.times(expected),
+        SPARSE_COLUMNS_2X3.times(p)
+      );
+      assertSameCells(expected.times(ROW_3X2), p.times(ROW_3X2));
+      assertSameCells(expected.times(2), p.times(2));
+    }
+  }
+
+  @Test
+  void testCompositionStaysPermutation() {
+    final var expected = dense(SWAP_3).times(dense(SCALED_3));
+    final var operands = new IDoubleMatrix[] {
+      SWAP_3.times(SCALED_3),
+      SCALED_3.times(SWAP_3),
+      ANTI_DIAGONAL_3X3.times(SWAP_3),
+      SWAP_3.times(ANTI_DIAGONAL_3X3),
+      DIAGONAL_3X3.times(SCALED_3),
+    };
+    final var expectedOperands = new IDoubleMatrix[] {
+      expected,
+      dense(SCALED_3).times(dense(SWAP_3)),
+      dense(ANTI_DIAGONAL_3X3).times(dense(SWAP_3)),
+      dense(SWAP_3).times(dense(ANTI_DIAGONAL_3X3)),
+      dense(DIAGONAL_3X3).times(dense(SCALED_3)),
+    };
+
+    for (int i = 0; i < operands.length; i++) {
+      assertTrue(operands[i] instanceof Permutation);
+      assertSameCells(expectedOperands[i], operands[i]);
+    }
+
+    final var swap = (Permutation) SWAP_3;
+    final var scaled = (Permutation) SCALED_3;
+
+    assertTrue(swap.times(swap.inverse()) instanceof Identity);
+    assertTrue(scaled.inverse().times(scaled) instanceof Identity);
+    assertSameCells(dense(ID_3), scaled.times(scaled.inverse()));
+    assertSameCells(SCALED_3, scaled.transpose().transpose());
+    assertEquals(2, swap.row(swap.column(2)));
+  }
+
+  @Test
+  void testSums() {
+    final var expected = dense(SCALED_3);
+
+    assertSameCells(expected.plus(DIAGONAL_3X3), SCALED_3.plus(DIAGONAL_3X3));
+    assertSameCells(DIAGONAL_3X3.plus(expected), DIAGONAL_3X3.plus(SCALED_3));
+    assertSameCells(expected.minus(SPARSE_3X3), SCALED_3.minus(SPARSE_3X3));
+    assertSameCells(SPARSE_3X3.minus(expected), SPARSE_3X3.minus(SCALED_3));
+    assertSameCells(expected.plus(1.5), SCALED_3.plus(1.5));
+    assertSameCells(
+      dense(SPARSE_3X3).times(expected.plus(1)),
+      SPARSE_3X3.times(SCALED_3.plus(1))
+    );
+  }
+
+  @Test
+  void testReversals() {
+    assertSameCells(
+      dense(ANTI_DIAGONAL_3X3).times(VECTOR_3),
+      ANTI_DIAGONAL_3X3.times(VECTOR_3)
+    );
+    assertSameCells(
+      dense(DIAGONAL_3X3).times(VECTOR_3),
+      DIAGONAL_3X3.times(VECTOR_3)
+    );
+    assertSameCells(
+      dense(ANTI_DIAGONAL_3X3).times(dense(ANTI_DIAGONAL_3X3)),
+      ANTI_DIAGONAL_3X3.times(ANTI_DIAGONAL_3X3)
+    );
+    assertSameCells(
+      dense(ANTI_DIAGONAL_3X3).times(dense(DIAGONAL_3X3)),
+      ANTI_DIAGONAL_3X3.times(DIAGONAL_3X3)
+    );
+    assertSameCells(
+      dense(DIAGONAL_3X3).times(dense(ANTI_DIAGONAL_3X3)),
+      DIAGONAL_3X3.times(ANTI_DIAGONAL_3X3)
+    );
+  }
+
+  @Test
+  void testLargeSymmetricReordering() {
+    final var size = 100_000;
+    final var columns = new int[size];
+    final var rowOffsets = new int[size + 1];
+    final var entries = new int[2 * size];
+    final var values = new double[2 * size];
+
+    // Reverses the odd positions, keeps the even ones
+    for (int i = 0; i < size; i++) {
+      columns[i] = i % 2 == 0 ? i : size - i;
+    }
+
+    for (int r = 0; r < size; r++) {
+      rowOffsets[r + 1] = rowOffsets[r] + (r + 1 < size ? 2 : 1);
+      entries[rowOffsets[r]] = r;
+      values[rowOffsets[r]] = r + 1;
+
+      if (r + 1 < size) {
+        entries[rowOffsets[r] + 1] = r + 1;
+        values[rowOffsets[r] + 1] = -1;
+      }
+    }
+
+    final var p = (Permutation) permutation(columns);
+    final var a = sparse(matrix(size, size), rowOffsets, entries, values);
+    final var reordered = p.times(a).times(p.transpose());
+
+    assertTrue(reordered instanceof CSR);
+    assertEquals(a.frobeniusNorm(), reordered.frobeniusNorm(), TEST_PRECISION);
+
+    for (int i : new int[] { 0, 1, 2, 7, size - 1 }) {
+      for (int j : new int[] { 0, 1, 2, 7, size - 1 }) {
+        assertEquals(
+          a.get(columns[i], columns[j]),
+          reordered.get(i, j),
+          TEST_PRECISION
+        );
+      }
+    }
+  }
+}
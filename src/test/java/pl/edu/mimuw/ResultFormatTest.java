@@ -0,0 +1,169 @@
+package pl.edu.mimuw;
+
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Isolated;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.implementations.CSR;
+import pl.edu.mimuw.matrix.implementations.Diagonal;
+import pl.edu.mimuw.matrix.implementations.Full;
+import pl.edu.mimuw.matrix.implementations.ResultFormat;
+import pl.edu.mimuw.matrix.implementations.ShiftedMatrix;
+import pl.edu.mimuw.matrix.implementations.Zero;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.*;
+import static pl.edu.mimuw.matrix.MatrixCellValue.cell;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+// testThresholdsAreConfigurable changes the global thresholds, which decide
+// the result types asserted by other tests
+@Isolated
+public class ResultFormatTest {
+
+  private static double[] steps(int size) {
+    final var values = new double[size];
+
+    for (int i = 0; i < size; i++) {
+      values[i] = i + 1;
+    }
+
+    return values;
+  }
+
+  private static IDoubleMatrix nudged(int... indices) {
+    final var values = steps(100);
+
+    for (int i : indices) {
+      values[i] += 1;
+    }
+
+    return full(matrix(10, 10), values);
+  }
+
+  private static IDoubleMatrix outerProduct() {
+    final var column = sparse(matrix(4, 1),
+      cell(0, 0, 1),
+      cell(1, 0, 2),
+      cell(2, 0, 3),
+      cell(3, 0, 4)
+    );
+    final var row = sparse(matrix(1, 4),
+      cell(0, 0, 5),
+      cell(0, 1, 6),
+      cell(0, 2, 7),
+      cell(0, 3, 8)
+    );
+
+    return column.times(row);
+  }
+
+  @Test
+  void testMostlyZeroDifferenceIsSparse() {
+    final var result = nudged(3, 47, 90).minus(nudged());
+
+    assertTrue(result instanceof CSR);
+    assertEquals(3, ((CSR) result).nnz);
+    assertEquals(1, result.get(4, 7), TEST_PRECISION);
+    assertEquals(0, result.get(4, 8), TEST_PRECISION);
+  }
+
+  @Test
+  void testDiagonalDifferenceIsDiagonal() {
+    final var result = nudged(0, 22, 99).minus(nudged());
+
+    assertTrue(result instanceof Diagonal);
+    assertEquals(1, result.get(2, 2), TEST_PRECISION);
+    assertEquals(0, result.get(1, 1), TEST_PRECISION);
+  }
+
+  @Test
+  void testHypersparseDiagonalStaysSparse() {
+    final var small = sparse(matrix(10, 10), cell(3, 3, 2), cell(9, 9, 1));
+    final var large = sparse(
+      matrix(100_000, 100_000),
+      cell(3, 3, 2),
+      cell(90_000, 90_000, 1)
+    );
+
+    assertTrue(small.times(small) instanceof Diagonal);
+    assertTrue(large.times(large) instanceof CSR);
+    assertEquals(4, large.times(large).get(3, 3), TEST_PRECISION);
+  }
+
+  @Test
+  void testCancelledProductIsZero() {
+    final var left = full(matrix(2, 2), 1, 1, 1, 1);
+    final var right = full(matrix(2, 2), 1, -1, -1, 1);
+
+    assertTrue(left.times(right) instanceof Zero);
+  }
+
+  @Test
+  void testStructuredProductsFollowThePolicy() {
+    final var dense = full(matrix(10, 10), steps(100));
+    final var oneColumn = sparseColumns(matrix(10, 10), cell(2, 5, 1));
+    final var oneRow = diagonal(0, 0, 0, 2, 0, 0, 0, 0, 0, 0);
+    final var column = vector(0, 0, 3, 0, 0, 0, 0, 0, 0, 0);
+    final var row = full(matrix(1, 10), steps(10));
+
+    assertTrue(dense.times(oneColumn) instanceof CSR);
+    assertEquals(23, dense.times(oneColumn).get(2, 5), TEST_PRECISION);
+    assertTrue(oneRow.times(dense) instanceof CSR);
+    assertEquals(64, oneRow.times(dense).get(3, 1), TEST_PRECISION);
+    assertTrue(column.times(row) instanceof CSR);
+    assertEquals(12, column.times(row).get(2, 3), TEST_PRECISION);
+    assertTrue(diagonal(0, 0, 0).times(SPARSE_3X2) instanceof Zero);
+  }
+
+  @Test
+  void testFilledSparseProductIsDense() {
+    final var result = outerProduct();
+
+    assertTrue(result instanceof Full);
+    assertEquals(32, result.get(3, 3), TEST_PRECISION);
+  }
+
+  @Test
+  void testConstantResults() {
+    final var sum = full(matrix(2, 2), 1, 2, 3, 4)
+      .plus(full(matrix(2, 2), 4, 3, 2, 1));
+    final var shifted = ZERO_3X2.plus(3);
+
+    assertTrue(sum instanceof ShiftedMatrix);
+    assertTrue(shifted instanceof ShiftedMatrix);
+    assertArrayEqualsWithTestPrecision(
+      new double[][] { { 5, 5 }, { 5, 5 } },
+      sum.data()
+    );
+    assertArrayEqualsWithTestPrecision(
+      new double[][] { { 3, 3 }, { 3, 3 }, { 3, 3 } },
+      shifted.data()
+    );
+    assertEquals(9, shifted.normOne(), TEST_PRECISION);
+    assertEquals(Math.sqrt(6 * 9), shifted.frobeniusNorm(), TEST_PRECISION);
+  }
+
+  @Test
+  void testThresholdsAreConfigurable() {
+    final var sparseDensity = ResultFormat.sparseDensity();
+    final var denseDensity = ResultFormat.denseDensity();
+
+    try {
+      ResultFormat.setThresholds(0, 1);
+
+      assertTrue(nudged(3, 47, 90).minus(nudged()) instanceof Full);
+      assertTrue(outerProduct() instanceof CSR);
+
+      ResultFormat.setThresholds(0.5, 0.5);
+
+      final var half = nudged(IntStream.range(0, 50).toArray());
+
+      assertTrue(half.minus(nudged()) instanceof CSR);
+    } finally {
+      ResultFormat.setThresholds(sparseDensity, denseDensity);
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package pl.edu.mimuw;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+import pl.edu.mimuw.matrix.IDoubleMatrix;
+import pl.edu.mimuw.matrix.Shape;
+import pl.edu.mimuw.matrix.implementations.ShiftedMatrix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.edu.mimuw.TestMatrixData.*;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.*;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+public class ShiftedMatrixTest {
+
+  private static final double SHIFT = 2.5;
+
+  private static IDoubleMatrix steps(Shape shape) {
+    final var values = new double[shape.rows * shape.columns];
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 4 - 1.5;
+    }
+
+    return full(shape, values);
+  }
+
+  @ParameterizedTest
+  @ArgumentsSource(TestMatrixArgumentProvider.class)
+  void testCellsAndNorms(IDoubleMatrix m) {
+    final var shifted = m.plus(SHIFT);
+    final var expected = dense(m).plus(SHIFT);
+    final var sum = new double[1];
+
+    shifted.forEachNonZero((row, column, value) -> sum[0] += value);
+
+    assertSameCells(expected, shifted);
+    assertEquals(expected.get(1, 0), shifted.get(1, 0), TEST_PRECISION);
+    assertEquals(expected.normOne(), shifted.normOne(), TEST_PRECISION);
+    assertEquals(
+      expected.normInfinity(),
+      shifted.normInfinity(),
+      TEST_PRECISION
+    );
+    assertEquals(
+      expected.frobeniusNorm(),
+      shifted.frobeniusNorm(),
+      TEST_PRECISION
+    );
+    assertEquals(sum(expected.data()), sum[0], TEST_PRECISION);
+  }
+
+  private static double sum(double[][] data) {
+    double sum = 0;
+
+    for (double[] row : data) {
+      for (double v : row) {
+        sum += v;
+      }
+    }
+
+    return sum;
+  }
+
+  @ParameterizedTest
+  @ArgumentsSource(TestMatrixArgumentProvider.class)
+  void testProducts(IDoubleMatrix m) {
+    final var shape = m.shape();
+    final var shifted = m.plus(SHIFT);
+    final var expected = dense(m).plus(SHIFT);
+    final var right = steps(matrix(shape.columns, 2));
+    final var left = steps(matrix(2, shape.rows));
+    final var ones = zero(matrix(shape.columns, 2)).plus(1);
+
+    assertSameCells(expected.times(right), shifted.times(right));
+    assertSameCells(left.times(expected), left.times(shifted));
+    assertSameCells(expected.times(dense(ones)), shifted.times(ones));
+  }
+
+  @ParameterizedTest
+  @ArgumentsSource(TestMatrixSameArgumentProvider.class)
+  void testSums(IDoubleMatrix l, IDoubleMatrix r) {
+    final var expected = dense(l).plus(SHIFT);
+
+    assertSameCells(expected.plus(r), l.plus(SHIFT).plus(r));
+    assertSameCells(r.plus(expected), r.plus(l.plus(SHIFT)));
+    assertSameCells(expected.minus(r.plus(1)), l.plus(SHIFT).minus(r.plus(1)));
+    assertSameCells(
+      r.minus(expected).times(3),
+      r.minus(l.plus(SHIFT)).times(3)
+    );
+  }
+
+  @Test
+  void testStructureIsKept() {
+    final var size = 100_000;
+    final var shifted = identity(size).plus(1);
+
+    assertTrue(shifted instanceof ShiftedMatrix);
+    assertEquals(size + 1, shifted.normOne(), TEST_PRECISION);
+    assertEquals(2, shifted.get(7, 7), TEST_PRECISION);
+    assertEquals(1, shifted.get(7, 8), TEST_PRECISION);
+
+    // Every column of the identity sums to 1, so the update is constant
+    final var product = shifted.times(identity(size));
+
+    assertTrue(product instanceof ShiftedMatrix);
+    assertEquals(2, product.get(3, 3), TEST_PRECISION);
+    assertEquals(1, product.get(3, 4), TEST_PRECISION);
+    assertSame(ZERO_3X2, ZERO_3X2.plus(1).minus(1));
+  }
+}
@@ -0,0 +1,129 @@
+package pl.edu.mimuw;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.mimuw.matrix.implementations.CSC;
+import pl.edu.mimuw.matrix.implementations.CSR;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static pl.edu.mimuw.TestMatrixData.TEST_PRECISION;
+import static pl.edu.mimuw.TestMatrixData.assertArrayEqualsWithTestPrecision;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.full;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.sparse;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.sparseColumns;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.vector;
+import static pl.edu.mimuw.matrix.MatrixCellValue.cell;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+public class SparseColumnMatrixTest {
+
+  private static final double[][] A = new double[][]{
+    new double[]{1, 0, 2, 0},
+    new double[]{0, 0, 0, 0},
+    new double[]{0, 3, 0, -1},
+  };
+
+  private static final double[][] A_TRANSPOSED = new double[][]{
+    new double[]{1, 0, 0},
+    new double[]{0, 0, 3},
+    new double[]{2, 0, 0},
+    new double[]{0, 0, -1},
+  };
+
+  private static CSR a() {
+    return (CSR) sparse(matrix(3, 4),
+      cell(2, 3, -1),
+      cell(0, 0, 1),
+      cell(2, 1, 3),
+      cell(0, 2, 2)
+    );
+  }
+
+  @Test
+  void testSparseColumnsGetAndData() {
+    final var m = sparseColumns(matrix(3, 4),
+      cell(2, 3, -1),
+      cell(0, 0, 1),
+      cell(2, 1, 3),
+      cell(0, 2, 2)
+    );
+
+    assertArrayEqualsWithTestPrecision(A, m.data());
+    assertEquals(3, m.get(2, 1), TEST_PRECISION);
+    assertEquals(0, m.get(1, 1), TEST_PRECISION);
+    assertEquals(3, m.normOne(), TEST_PRECISION);
+    assertEquals(4, m.normInfinity(), TEST_PRECISION);
+  }
+
+  @Test
+  void testTransposeView() {
+    final var t = a().transpose();
+
+    assertEquals(matrix(4, 3), t.shape());
+    assertArrayEqualsWithTestPrecision(A_TRANSPOSED, t.data());
+    assertArrayEqualsWithTestPrecision(A, t.transpose().data());
+  }
+
+  @Test
+  void testConversions() {
+    final var csc = a().toCSC();
+
+    assertArrayEqualsWithTestPrecision(A, csc.data());
+    assertArrayEqualsWithTestPrecision(A, csc.toCSR().data());
+  }
+
+  @Test
+  void testConversionsOfHypersparseMatrices() {
+    final var m = (CSR) sparse(matrix(1_000_000, 1_000_000),
+      cell(999_999, 0, 1),
+      cell(5, 999_999, 2),
+      cell(5, 7, 3),
+      cell(424_242, 7, 4)
+    );
+    final CSC csc = m.toCSC();
+
+    assertEquals(3, csc.nec);
+    assertEquals(7, csc.normOne(), TEST_PRECISION);
+    assertEquals(2, csc.get(5, 999_999), TEST_PRECISION);
+    assertEquals(4, csc.toCSR().get(424_242, 7), TEST_PRECISION);
+    assertEquals(1, m.transpose().get(0, 999_999), TEST_PRECISION);
+  }
+
+  @Test
+  void testTransposeTimesVector() {
+    final var result = a().transpose().times(vector(1, 2, 3)).data();
+
+    assertArrayEqualsWithTestPrecision(new double[][]{
+      new double[]{1},
+      new double[]{9},
+      new double[]{2},
+      new double[]{-3},
+    }, result);
+  }
+
+  @Test
+  void testTransposeTimesMatrix() {
+    final var m = a();
+    final var result = m.transpose().times(m).data();
+    final var expected = full(A_TRANSPOSED).times(full(A)).data();
+
+    assertArrayEqualsWithTestPrecision(expected, result);
+    assertArrayEqualsWithTestPrecision(
+      full(A).times(full(A_TRANSPOSED)).data(),
+      m.times(m.transpose()).data()
+    );
+  }
+
+  @Test
+  void testSparseColumnsPlusSparseColumns() {
+    final var m = a().toCSC();
+
+    assertArrayEqualsWithTestPrecision(
+      full(A).times(2).data(),
+      m.plus(m).data()
+    );
+    assertArrayEqualsWithTestPrecision(
+      new double[3][4],
+      m.minus(m).data()
+    );
+  }
+}
@@ -0,0 +1,157 @@
+package pl.edu.mimuw;
+
+import org.junit.jupiter.api.Test;
+import pl.edu.mimuw.matrix.implementations.CSR;
+import pl.edu.mimuw.matrix.implementations.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static pl.edu.mimuw.TestMatrixData.TEST_PRECISION;
+import static pl.edu.mimuw.TestMatrixData.assertArrayEqualsWithTestPrecision;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.antiDiagonal;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.diagonal;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.sparse;
+import static pl.edu.mimuw.matrix.DoubleMatrixFactory.vector;
+import static pl.edu.mimuw.matrix.MatrixCellValue.cell;
+import static pl.edu.mimuw.matrix.Shape.matrix;
+
+public class SparseMatrixTest {
+
+  @Test
+  void testGetOnDenseRows() {
+    final var m = sparse(matrix(3, 3),
+      cell(2, 2, 3),
+      cell(0, 0, 1),
+      cell(1, 1, 0),
+      cell(0, 2, 2)
+    );
+
+    assertArrayEqualsWithTestPrecision(new double[][]{
+      new double[]{1, 0, 2},
+      new double[]{0, 0, 0},
+      new double[]{0, 0, 3},
+    }, m.data());
+  }
+
+  @Test
+  void testGetOnHypersparseRows() {
+    final var m = sparse(matrix(1_000_000, 1_000),
+      cell(999_999, 999, 3),
+      cell(0, 0, 1),
+      cell(500_000, 7, 2)
+    );
+
+    assertEquals(1, m.get(0, 0), TEST_PRECISION);
+    assertEquals(2, m.get(500_000, 7), TEST_PRECISION);
+    assertEquals(3, m.get(999_999, 999), TEST_PRECISION);
+    assertEquals(0, m.get(500_001, 7), TEST_PRECISION);
+    assertEquals(0, m.get(499_999, 7), TEST_PRECISION);
+  }
+
+  @Test
+  void testTimesSparseDropsCancelledEntries() {
+    final var l = sparse(matrix(3, 2),
+      cell(0, 0, 1),
+      cell(0, 1, 1),
+      cell(2, 1, 2)
+    );
+    final var r = sparse(matrix(2, 3),
+      cell(0, 0, 1),
+      cell(0, 2, 5),
+      cell(1, 0, -1),
+      cell(1, 1, 3)
+    );
+
+    assertArrayEqualsWithTestPrecision(new double[][]{
+      new double[]{0, 3, 5},
+      new double[]{0, 0, 0},
+      new double[]{-2, 6, 0},
+    }, l.times(r).data());
+  }
+
+  @Test
+  void testSparseFromCompressedRows() {
+    final var m = sparse(matrix(3, 3),
+      new int[]{0, 2, 2, 3},
+      new int[]{0, 2, 1},
+      new double[]{1, 2, 3}
+    );
+
+    assertArrayEqualsWithTestPrecision(new double[][]{
+      new double[]{1, 0, 2},
+      new double[]{0, 0, 0},
+      new double[]{0, 3, 0},
+    }, m.data());
+  }
+
+  @Test
+  void testSparsePlusDiagonalKeepsColumnsSorted() {
+    final var m = sparse(matrix(3, 3),
+      cell(0, 2, 1),
+      cell(1, 0, 2),
+      cell(2, 1, 3)
+    );
+
+    assertArrayEqualsWithTestPrecision(new double[][]{
+      new double[]{4, 0, 1},
+      new double[]{2, 5, 0},
+      new double[]{0, 3, 6},
+    }, m.plus(diagonal(4, 5, 6)).data());
+    assertArrayEqualsWithTestPrecision(new double[][]{
+      new double[]{0, 0, 5},
+      new double[]{2, 5, 0},
+      new double[]{6, 3, 0},
+    }, m.plus(antiDiagonal(4, 5, 6)).data());
+  }
+
+  @Test
+  void testTimesVectorOnRectangularMatrix() {
+    final var m = sparse(matrix(2, 4),
+      cell(0, 1, 2),
+      cell(0, 3, 1),
+      cell(1, 2, -1)
+    );
+
+    assertArrayEqualsWithTestPrecision(new double[][]{
+      new double[]{7},
+      new double[]{-5},
+    }, m.times(vector(1, 2, 5, 3)).data());
+  }
+
+  @Test
+  void testMultiplyInto() {
+    final var m = (CSR) sparse(matrix(4, 3),
+      cell(0, 0, 1),
+      cell(0, 2, 2),
+      cell(3, 1, -3)
+    );
+    final var y = new double[]{9, 9, 9, 9};
+
+    m.multiplyInto(new double[]{1, 2, 3}, y);
+    assertArrayEquals(new double[]{7, 0, 0, -6}, y, TEST_PRECISION);
+
+    m.multiplyInto((Vector) vector(0, 1, 0), y);
+    assertArrayEquals(new double[]{0, 0, 0, -3}, y, TEST_PRECISION);
+  }
+
+  @Test
+  void testMultiplyIntoSparseVector() {
+    final var m = (CSR) sparse(matrix(4, 8),
+      cell(0, 0, 1),
+      cell(0, 3, 2),
+      cell(0, 7, 4),
+      cell(1, 2, -1),
+      cell(1, 5, 3),
+      cell(3, 6, 5),
+      cell(3, 7, -2)
+    );
+    final var x = new double[]{0, 0, 2, 1, 0, 0, 0, 3};
+    final var expected = new double[4];
+    final var y = new double[]{9, 9, 9, 9};
+
+    m.multiplyInto(x, expected);
+    m.multiplyInto((Vector) vector(x), y);
+    assertArrayEquals(expected, y, TEST_PRECISION);
+    assertArrayEquals(new double[]{14, -2, 0, -6}, y, TEST_PRECISION);
+  }
+}
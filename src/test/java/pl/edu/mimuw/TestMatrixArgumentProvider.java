@@ -20,6 +20,8 @@ public class TestMatrixArgumentProvider implements ArgumentsProvider {
       of(ANTI_DIAGONAL_3X3),
       of(SPARSE_2X3),
       of(SPARSE_3X2),
+      of(SPARSE_COLUMNS_2X3),
+      of(SPARSE_COLUMNS_3X2),
       of(VECTOR_2),
       of(VECTOR_3),
       of(ID_2),
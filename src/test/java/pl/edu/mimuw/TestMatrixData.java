@@ -19,6 +19,15 @@ public class TestMatrixData {
     for (int i = 0; i < expected.length; i++) assertArrayEquals(expected[i], actual[i], TEST_PRECISION);
   }
 
+  public static void assertSameCells(IDoubleMatrix expected, IDoubleMatrix actual) {
+    assertArrayEqualsWithTestPrecision(expected.data(), actual.data());
+  }
+
+  // The cells of m as a Full, to compare structured results against
+  public static IDoubleMatrix dense(IDoubleMatrix m) {
+    return full(m.data());
+  }
+
   private TestMatrixData() {
   }
 
@@ -55,6 +64,24 @@ public class TestMatrixData {
     cell(2, 1, 6)
   );
 
+  public static final IDoubleMatrix SPARSE_COLUMNS_2X3 = sparseColumns(matrix(2, 3),
+    cell(0, 0, 1),
+    cell(0, 1, 2),
+    cell(0, 2, 3),
+    cell(1, 0, 4),
+    cell(1, 1, 5),
+    cell(1, 2, 6)
+  );
+
+  public static final IDoubleMatrix SPARSE_COLUMNS_3X2 = sparseColumns(matrix(3, 2),
+    cell(0, 0, 1),
+    cell(0, 1, 2),
+    cell(1, 0, 3),
+    cell(1, 1, 4),
+    cell(2, 0, 5),
+    cell(2, 1, 6)
+  );
+
   public static final IDoubleMatrix VECTOR_3 = vector(15, 16, 17);
 
   public static final IDoubleMatrix VECTOR_2 = vector(18, 19);
@@ -17,7 +17,10 @@ public class TestMatrixSameArgumentProvider implements ArgumentsProvider {
       of(FULL_2X3, FULL_2X3),
       of(FULL_2X3, SPARSE_2X3),
       of(SPARSE_2X3, FULL_2X3),
-      of(SPARSE_2X3, SPARSE_2X3)
+      of(SPARSE_2X3, SPARSE_2X3),
+      of(FULL_2X3, SPARSE_COLUMNS_2X3),
+      of(SPARSE_COLUMNS_2X3, SPARSE_2X3),
+      of(SPARSE_COLUMNS_2X3, SPARSE_COLUMNS_2X3)
     );
   }
 }
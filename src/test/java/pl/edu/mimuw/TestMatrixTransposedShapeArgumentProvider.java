@@ -17,7 +17,12 @@ public class TestMatrixTransposedShapeArgumentProvider implements ArgumentsProvi
       of(FULL_2X3, FULL_3X2),
       of(FULL_2X3, SPARSE_3X2),
       of(SPARSE_2X3, FULL_3X2),
-      of(SPARSE_2X3, SPARSE_3X2)
+      of(SPARSE_2X3, SPARSE_3X2),
+      of(FULL_2X3, SPARSE_COLUMNS_3X2),
+      of(SPARSE_COLUMNS_2X3, FULL_3X2),
+      of(SPARSE_COLUMNS_2X3, SPARSE_3X2),
+      of(SPARSE_2X3, SPARSE_COLUMNS_3X2),
+      of(SPARSE_COLUMNS_2X3, SPARSE_COLUMNS_3X2)
     );
   }
 }